@@ -0,0 +1,107 @@
+package padroes;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Pesquisa case-insensitive em bytes com a Vector API (jdk.incubator.vector).
+ *
+ * Para cada bloco de posições candidatas, compara de uma só vez o primeiro e o último
+ * byte do padrão com todas as lanes (nas duas caixas, maiúscula e minúscula) e só as
+ * posições em que ambos coincidem são confirmadas byte a byte com CaseFolding.
+ * Em textos reais quase nenhuma posição passa o filtro, e o ciclo fica limitado pela
+ * leitura da memória.
+ *
+ * Esta classe fica fora de src para que a compilação normal não dependa do módulo
+ * incubado. É compilada à parte, sobre as classes de src, e só pode ser carregada com o
+ * módulo presente (--add-modules jdk.incubator.vector); use ByteMatchers, que recorre a
+ * uma versão escalar quando a classe ou o módulo não estão disponíveis.
+ */
+public final class VectorSearch {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    private VectorSearch() {}
+
+    /**
+     * Padrão compilado: em bytes usa a Vector API; em texto (CharSequence) delega no
+     * algoritmo escolhido por Matchers.
+     */
+    private static final class Compiled implements CompiledPattern {
+        private final CompiledPattern chars;
+        private final byte[] bytes;
+        private final byte first, firstUpper, last, lastUpper;
+        private final ByteVector firstV, firstUpperV, lastV, lastUpperV;
+
+        Compiled(String padrao) {
+            this.chars = Matchers.compile(padrao);
+            this.bytes = CaseFolding.foldedUtf8(padrao);
+            this.first = bytes[0];
+            this.firstUpper = ByteMatchers.upperVariant(first);
+            this.last = bytes[bytes.length - 1];
+            this.lastUpper = ByteMatchers.upperVariant(last);
+            this.firstV = ByteVector.broadcast(SPECIES, first);
+            this.firstUpperV = ByteVector.broadcast(SPECIES, firstUpper);
+            this.lastV = ByteVector.broadcast(SPECIES, last);
+            this.lastUpperV = ByteVector.broadcast(SPECIES, lastUpper);
+        }
+
+        @Override
+        public String pattern() {
+            return chars.pattern();
+        }
+
+        @Override
+        public int indexOf(CharSequence texto, int inicio) {
+            return chars.indexOf(texto, inicio);
+        }
+
+        @Override
+        public int indexOf(byte[] texto, int inicio, int fim) {
+            int m = bytes.length;
+            int lanes = SPECIES.length();
+            int i = inicio;
+
+            // A janela do último byte começa m - 1 posições depois e não pode passar de fim
+            int limiteVetorial = fim - m + 1 - lanes;
+            for (; i <= limiteVetorial; i += lanes) {
+                ByteVector inicios = ByteVector.fromArray(SPECIES, texto, i);
+                ByteVector finais = ByteVector.fromArray(SPECIES, texto, i + m - 1);
+                VectorMask<Byte> candidatos = inicios.eq(firstV).or(inicios.eq(firstUpperV))
+                        .and(finais.eq(lastV).or(finais.eq(lastUpperV)));
+                if (!candidatos.anyTrue()) continue;
+
+                long bits = candidatos.toLong();
+                while (bits != 0) {
+                    int s = i + Long.numberOfTrailingZeros(bits);
+                    if (ByteMatchers.verify(texto, s, inicio, bytes)) return s;
+                    bits &= bits - 1;
+                }
+            }
+
+            // Cauda que não enche um vetor inteiro
+            for (; i <= fim - m; i++) {
+                byte b = texto[i];
+                if ((b == first || b == firstUpper) && ByteMatchers.verify(texto, i, inicio, bytes)) return i;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Pré-processa o padrão para pesquisas vetorizadas.
+     * @param padrao O termo a ser pesquisado (não vazio).
+     * @return O padrão compilado, imutável e seguro para uso entre threads.
+     */
+    public static CompiledPattern compile(String padrao) {
+        return new Compiled(padrao);
+    }
+
+    /**
+     * @return O número de bytes comparados por instrução nesta máquina.
+     */
+    public static int lanes() {
+        return SPECIES.length();
+    }
+}
@@ -1,18 +1,35 @@
 package app;
 
 import compressao.BackupManager;
+import compressao.Snapshot;
 import dao.DAO;
+import indices.InvertedIndex;
+import indices.PrefixIndex;
 import model.Cardapio;
 import model.Categoria;
 import model.Empresa;
 import model.Produto;
 import model.ProdutoCardapio;
+import model.Register;
+import padroes.AhoCorasick;
 import padroes.BoyerMoore;
+import padroes.ByteMatchers;
+import padroes.CompiledPattern;
+import padroes.Horspool;
 import padroes.KMP;
+import padroes.Matchers;
+import padroes.Myers;
+import padroes.Sunday;
+import seguranca.KeyRing;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.TreeMap;
 
 public class Main {
 
@@ -23,6 +40,8 @@ public class Main {
     private static DAO<Categoria> categoriaDAO;
     private static DAO<ProdutoCardapio> produtoCardapioDAO;
 
+    private static final int MAX_SUGESTOES = 10; // Resultados mostrados no autocompletar
+
     public static void main(String[] args) {
         try {
             inicializarDAOs();
@@ -36,8 +55,11 @@ public class Main {
                 System.out.println("4) Gerenciar Produtos");
                 System.out.println("5) Gerenciar Relações (Produto-Cardápio)");
                 System.out.println("6) Realizar Backup Completo (Compressão)");
-                System.out.println("7) Pesquisar Produtos por Padrão (KMP/BM)"); // NOVA OPÇÃO
+                System.out.println("7) Pesquisar Produtos por Padrão (exata, múltipla ou aproximada)"); // NOVA OPÇÃO
+                System.out.println("8) Realizar Backup Incremental (apenas páginas alteradas)");
                 System.out.println("9) Apagar TODOS os dados (Resetar)");
+                System.out.println("10) Restaurar Backup");
+                System.out.println("11) Realizar Backup Online (sem interromper o sistema)");
                 System.out.println("0) Sair");
                 System.out.print("Opção: ");
 
@@ -70,7 +92,25 @@ public class Main {
                         menuPesquisaPadrao(console);
                         break;
 
+                    case 8:
+                        System.out.print("Digite a versão do backup incremental (ex: 2): ");
+                        int versaoIncremental = console.nextInt();
+                        console.nextLine();
+                        System.out.println("Fechando conexões para garantir integridade...");
+                        fecharDAOs();
+                        BackupManager.createIncrementalBackup(versaoIncremental);
+                        System.out.println("Reabrindo conexões...");
+                        inicializarDAOs();
+                        break;
+
                     case 9: confirmarEApagarDados(console); break;
+                    case 10: restaurarBackup(console); break;
+                    case 11:
+                        System.out.print("Digite a versão do backup (ex: 1): ");
+                        int versaoOnline = console.nextInt();
+                        console.nextLine();
+                        iniciarBackupOnline(versaoOnline);
+                        break;
                     case 0: System.out.println("Saindo do sistema..."); break;
                     default: System.out.println("Opção inválida!");
                 }
@@ -85,23 +125,132 @@ public class Main {
 
     // --- MÉTODOS DE MENU E UTILITÁRIOS ---
 
-    public static void inicializarDAOs() throws Exception {
-        empresaDAO = new DAO<>("empresas.db", Empresa.class, true);
-        cardapioDAO = new DAO<>("cardapios.db", Cardapio.class, true);
-        produtoDAO = new DAO<>("produtos.db", Produto.class, true);
-        categoriaDAO = new DAO<>("categorias.db", Categoria.class, false);
-        produtoCardapioDAO = new DAO<>("produtocardapio.db", ProdutoCardapio.class, true);
+    /**
+     * Prepara o arranque: os DAOs são abertos só quando forem usados pela primeira vez
+     * (ver empresaDAO() e seguintes), e as chaves começam a ser carregadas em segundo plano.
+     */
+    public static void inicializarDAOs() {
+        KeyRing.start();
+    }
+
+    private static DAO<Empresa> empresaDAO() throws Exception {
+        if (empresaDAO == null) {
+            empresaDAO = new DAO<>("empresas.db", Empresa.class, true);
+            empresaDAO.enablePrefixIndex();
+            empresaDAO.enableBlindIndex();
+        }
+        return empresaDAO;
+    }
+
+    // Produtos e cardápios são ricos em texto: os dados ficam em páginas comprimidas
+    private static DAO<Cardapio> cardapioDAO() throws Exception {
+        if (cardapioDAO == null) {
+            cardapioDAO = new DAO<>("cardapios.db", Cardapio.class, true, true);
+            cardapioDAO.enablePrefixIndex();
+        }
+        return cardapioDAO;
+    }
+
+    private static DAO<Produto> produtoDAO() throws Exception {
+        if (produtoDAO == null) {
+            produtoDAO = new DAO<>("produtos.db", Produto.class, true, true);
+            produtoDAO.enablePrefixIndex();
+            produtoDAO.enableTrigramIndex();
+            produtoDAO.enableFullTextIndex();
+        }
+        return produtoDAO;
+    }
+
+    private static DAO<Categoria> categoriaDAO() throws Exception {
+        if (categoriaDAO == null) {
+            categoriaDAO = new DAO<>("categorias.db", Categoria.class, false);
+        }
+        return categoriaDAO;
+    }
+
+    private static DAO<ProdutoCardapio> produtoCardapioDAO() throws Exception {
+        if (produtoCardapioDAO == null) {
+            produtoCardapioDAO = new DAO<>("produtocardapio.db", ProdutoCardapio.class, true);
+        }
+        return produtoCardapioDAO;
     }
 
+    /**
+     * Fecha os DAOs abertos e esquece as chaves carregadas, para que sejam lidas de novo
+     * se os ficheiros forem substituídos (reposição de backup, reset).
+     */
     public static void fecharDAOs() throws Exception {
         if(empresaDAO != null) empresaDAO.close();
         if(cardapioDAO != null) cardapioDAO.close();
         if(produtoDAO != null) produtoDAO.close();
         if(categoriaDAO != null) categoriaDAO.close();
         if(produtoCardapioDAO != null) produtoCardapioDAO.close();
+        empresaDAO = null;
+        cardapioDAO = null;
+        produtoDAO = null;
+        categoriaDAO = null;
+        produtoCardapioDAO = null;
+        KeyRing.stop();
+    }
+
+    /**
+     * Tira a fotografia dos ficheiros e comprime-a numa thread à parte, sem fechar os DAOs.
+     * A fotografia é tirada aqui, entre duas operações do menu, por isso nenhuma escrita
+     * está a meio; o checkpoint grava antes as páginas comprimidas pendentes.
+     */
+    public static void iniciarBackupOnline(int versao) throws Exception {
+        if (Snapshot.isActive()) {
+            System.out.println("Já existe um backup online em curso.");
+            return;
+        }
+        if (empresaDAO != null) empresaDAO.checkpoint();
+        if (cardapioDAO != null) cardapioDAO.checkpoint();
+        if (produtoDAO != null) produtoDAO.checkpoint();
+        if (categoriaDAO != null) categoriaDAO.checkpoint();
+        if (produtoCardapioDAO != null) produtoCardapioDAO.checkpoint();
+        Snapshot snapshot = BackupManager.takeSnapshot();
+
+        // Não é daemon: ao sair do sistema, o backup em curso termina antes de a JVM fechar
+        new Thread(() -> BackupManager.createOnlineBackup(versao, snapshot), "backup-online").start();
+        System.out.println("Backup online iniciado; pode continuar a usar o sistema.");
+    }
+
+    public static void restaurarBackup(Scanner console) throws Exception {
+        System.out.println("\n--- RESTAURAR BACKUP ---");
+        System.out.println("1) Backup completo");
+        System.out.println("2) Backup incremental");
+        System.out.println("3) Backup completo antigo (LZW)");
+        System.out.println("4) Backup completo antigo (Huffman)");
+        System.out.print("Tipo: ");
+        int tipo = console.nextInt();
+        System.out.print("Versão: ");
+        int versao = console.nextInt();
+        console.nextLine();
+
+        String extensao;
+        switch (tipo) {
+            case 1: extensao = ".blk"; break;
+            case 2: extensao = ".manifest"; break;
+            case 3: extensao = ".lzw"; break;
+            case 4: extensao = ".huff"; break;
+            default: System.out.println("Tipo inválido!"); return;
+        }
+        System.out.print("Ficheiro a restaurar (ex: produtos.db; Enter para todos): ");
+        String ficheiro = console.nextLine().trim();
+
+        System.out.println("Fechando conexões para garantir integridade...");
+        fecharDAOs();
+        BackupManager.restoreBackup("backup_v" + versao + extensao, ficheiro.isEmpty() ? null : ficheiro);
+        System.out.println("Reabrindo conexões...");
+        inicializarDAOs();
     }
 
     public static void confirmarEApagarDados(Scanner console) throws Exception {
+        // O backup online ainda lê os ficheiros originais pelos mesmos caminhos
+        if (Snapshot.isActive()) {
+            System.out.println("Há um backup online em curso; aguarde que termine antes de apagar os dados.");
+            return;
+        }
         System.out.println("\n--- ATENÇÃO! ---");
         System.out.println("Esta ação irá apagar permanentemente TODOS os ficheiros da base de dados.");
         System.out.print("Tem a certeza que deseja continuar? (S/N): ");
@@ -112,15 +261,16 @@ public class Main {
             fecharDAOs();
             System.out.println("A apagar ficheiros...");
             // Dados
-            new File("empresas.db").delete(); new File("empresas.hash.dir").delete(); new File("empresas.hash.bkt").delete(); new File("empresas.bptree.idx").delete();
-            new File("cardapios.db").delete(); new File("cardapios.hash.dir").delete(); new File("cardapios.hash.bkt").delete(); new File("cardapios.bptree.idx").delete();
-            new File("produtos.db").delete(); new File("produtos.hash.dir").delete(); new File("produtos.hash.bkt").delete(); new File("produtos.bptree.idx").delete();
+            new File("empresas.db").delete(); new File("empresas.hash.dir").delete(); new File("empresas.hash.bkt").delete(); new File("empresas.bptree.idx").delete(); PrefixIndex.deleteFiles("empresas.prefix"); new File("empresas.blind.stamp").delete(); new File("empresas.blind.dir").delete(); new File("empresas.blind.bkt").delete();
+            new File("cardapios.db").delete(); new File("cardapios.hash.dir").delete(); new File("cardapios.hash.bkt").delete(); new File("cardapios.bptree.idx").delete(); new File("cardapios.pagemap").delete(); PrefixIndex.deleteFiles("cardapios.prefix");
+            new File("produtos.db").delete(); new File("produtos.hash.dir").delete(); new File("produtos.hash.bkt").delete(); new File("produtos.bptree.idx").delete(); new File("produtos.pagemap").delete(); new File("produtos.trigram.idx").delete(); new File("produtos.fts.dict").delete(); new File("produtos.fts.post").delete(); PrefixIndex.deleteFiles("produtos.prefix");
             new File("categorias.db").delete(); new File("categorias.hash.dir").delete(); new File("categorias.hash.bkt").delete();
             new File("produtocardapio.db").delete(); new File("produtocardapio.hash.dir").delete(); new File("produtocardapio.hash.bkt").delete(); new File("produtocardapio.bptree.idx").delete();
 
             // Chaves (Opcional)
             new File("public.key").delete();
             new File("private.key").delete();
+            new File("data.key").delete(); // Cifrada com o par RSA apagado, deixaria de servir
 
             System.out.println("Base de dados resetada. A reiniciar conexões...");
             inicializarDAOs();
@@ -137,34 +287,68 @@ public class Main {
         System.out.println("Algoritmos disponíveis:");
         System.out.println("1) KMP (Knuth-Morris-Pratt)");
         System.out.println("2) Boyer-Moore");
+        System.out.println("3) Aho-Corasick (vários termos de uma vez)");
+        System.out.println("4) KMP direto nos bytes dos registos (sem deserializar)");
+        System.out.println("5) Horspool");
+        System.out.println("6) Sunday");
+        System.out.println("7) Automático (escolhe pelo tamanho do termo)");
+        System.out.println("8) Aproximada, tolerante a erros de digitação (Myers)");
+        System.out.println("9) Textual ranqueada em nome e descrição (BM25)");
+        System.out.println("10) Vetorizada direto nos bytes dos registos (SIMD)");
         System.out.print("Escolha o algoritmo: ");
         int alg = console.nextInt();
         console.nextLine(); // limpar buffer
 
-        if (alg != 1 && alg != 2) {
+        if (alg == 3) {
+            pesquisarVariosTermos(console);
+            return;
+        }
+        if (alg == 4 || alg == 10) {
+            pesquisarNosBytes(console, alg == 10);
+            return;
+        }
+        if (alg == 8) {
+            pesquisarAproximado(console);
+            return;
+        }
+        if (alg == 9) {
+            pesquisarTextual(console);
+            return;
+        }
+        if (alg < 1 || alg > 7) {
             System.out.println("Algoritmo inválido.");
             return;
         }
 
         System.out.print("Digite o termo a pesquisar (ex: 'cola', 'queijo'): ");
         String padrao = console.nextLine();
+        if (padrao.isEmpty()) {
+            System.out.println("Termo inválido.");
+            return;
+        }
 
         System.out.println("\nPesquisando...");
         long inicio = System.nanoTime();
 
-        List<Produto> todosProdutos = produtoDAO.listAll(); // Carrega produtos para memória
+        // As tabelas do algoritmo são calculadas uma única vez para todos os produtos
+        CompiledPattern matcher;
+        switch (alg) {
+            case 1: matcher = KMP.compile(padrao); break;
+            case 2: matcher = BoyerMoore.compile(padrao); break;
+            case 5: matcher = Horspool.compile(padrao); break;
+            case 6: matcher = Sunday.compile(padrao); break;
+            default:
+                matcher = Matchers.compile(padrao);
+                System.out.println("Algoritmo escolhido: " + Matchers.algorithmFor(padrao.length()));
+        }
+
+        // O índice de trigramas reduz a lista aos candidatos; KMP/BM confirmam cada um
+        List<Produto> todosProdutos = produtoDAO().listAllBySecondaryKeySubstring(padrao);
         int encontrados = 0;
 
         System.out.println("\nResultados encontrados:");
         for (Produto p : todosProdutos) {
-            boolean match = false;
-            if (alg == 1) {
-                match = KMP.search(p.getNome(), padrao);
-            } else {
-                match = BoyerMoore.search(p.getNome(), padrao);
-            }
-
-            if (match) {
+            if (matcher.matches(p.getNome())) {
                 System.out.println("- [" + p.getID() + "] " + p.getNome() + " (Preço: R$ " + p.getPreco() + ")");
                 encontrados++;
             }
@@ -179,6 +363,203 @@ public class Main {
         System.out.println("\nTempo total de busca: " + (fim - inicio) / 1000000.0 + " ms");
     }
 
+    private static void autocompletar(Scanner console, DAO<? extends Register> dao) throws Exception {
+        System.out.print("Início do nome: ");
+        String prefixo = console.nextLine();
+
+        long inicio = System.nanoTime();
+        // O índice de prefixos devolve só as primeiras sugestões, sem percorrer a Árvore B+
+        List<? extends Register> sugestoes = dao.completeBySecondaryKey(prefixo, MAX_SUGESTOES);
+        long fim = System.nanoTime();
+
+        if (sugestoes.isEmpty()) {
+            System.out.println("Nenhum registo começa por '" + prefixo + "'.");
+        } else {
+            sugestoes.forEach(System.out::println);
+        }
+        System.out.println("\nTempo de busca: " + (fim - inicio) / 1000000.0 + " ms");
+    }
+
+    private static void pesquisarNosBytes(Scanner console, boolean vetorizada) throws Exception {
+        System.out.print("Digite o termo a pesquisar (ex: 'cola', 'queijo'): ");
+        String padrao = console.nextLine();
+        if (padrao.isEmpty()) {
+            System.out.println("Termo inválido.");
+            return;
+        }
+
+        System.out.println("\nPesquisando...");
+        long inicio = System.nanoTime();
+
+        // O padrão é preparado uma única vez para toda a varredura
+        CompiledPattern matcher;
+        if (vetorizada) {
+            matcher = ByteMatchers.compile(padrao);
+            System.out.println("Motor: " + ByteMatchers.engine());
+        } else {
+            matcher = KMP.compile(padrao);
+        }
+
+        // Só os registos cujo nome casa são deserializados
+        List<Produto> produtos = produtoDAO().listAllMatching((buf, off, len) -> {
+            int campo = off + Produto.NOME_FIELD_OFFSET;
+            int tamanhoNome = ((buf[campo] & 0xFF) << 8) | (buf[campo + 1] & 0xFF);
+            return matcher.matches(buf, campo + 2, campo + 2 + tamanhoNome);
+        });
+
+        System.out.println("\nResultados encontrados:");
+        for (Produto p : produtos) {
+            System.out.println("- [" + p.getID() + "] " + p.getNome() + " (Preço: R$ " + p.getPreco() + ")");
+        }
+
+        long fim = System.nanoTime();
+
+        if (produtos.isEmpty()) {
+            System.out.println("Nenhum produto encontrado com o termo '" + padrao + "'.");
+        }
+
+        System.out.println("\nTempo total de busca: " + (fim - inicio) / 1000000.0 + " ms");
+    }
+
+    private static void pesquisarAproximado(Scanner console) throws Exception {
+        System.out.print("Digite o termo a pesquisar (ex: 'fejoada', 'mussarela'): ");
+        String padrao = console.nextLine();
+        if (padrao.isEmpty()) {
+            System.out.println("Termo inválido.");
+            return;
+        }
+        System.out.print("Número máximo de erros (ex: 1 ou 2): ");
+        int maxErros = console.nextInt();
+        console.nextLine();
+        if (maxErros < 0) {
+            System.out.println("Número de erros inválido.");
+            return;
+        }
+
+        System.out.println("\nPesquisando...");
+        long inicio = System.nanoTime();
+
+        Myers.Compiled matcher = Myers.compile(padrao, maxErros);
+
+        // O índice de trigramas descarta os produtos que não partilham trigramas suficientes
+        List<Produto> candidatos = produtoDAO().listAllBySecondaryKeySimilar(padrao, maxErros);
+        List<Produto> encontrados = new ArrayList<>();
+        Map<Integer, Integer> distancias = new HashMap<>();
+        for (Produto p : candidatos) {
+            int distancia = matcher.distance(p.getNome());
+            if (distancia <= maxErros) {
+                encontrados.add(p);
+                distancias.put(p.getID(), distancia);
+            }
+        }
+        // Ordena pela distância (menos erros primeiro) e depois pelo nome
+        encontrados.sort(Comparator.comparingInt((Produto p) -> distancias.get(p.getID()))
+                .thenComparing(Produto::getNome));
+
+        long fim = System.nanoTime();
+
+        System.out.println("\nResultados encontrados:");
+        for (Produto p : encontrados) {
+            System.out.println("- [" + p.getID() + "] " + p.getNome() + " (Preço: R$ " + p.getPreco() + ") - "
+                    + distancias.get(p.getID()) + " erro(s)");
+        }
+        if (encontrados.isEmpty()) {
+            System.out.println("Nenhum produto encontrado próximo de '" + padrao + "'.");
+        }
+
+        System.out.println("\nTempo total de busca: " + (fim - inicio) / 1000000.0 + " ms");
+    }
+
+    private static void pesquisarTextual(Scanner console) throws Exception {
+        System.out.print("Digite a consulta (ex: 'queijo gratinado'): ");
+        String consulta = console.nextLine();
+        if (InvertedIndex.tokenize(consulta).isEmpty()) {
+            System.out.println("Consulta inválida.");
+            return;
+        }
+        System.out.print("Número máximo de resultados: ");
+        int k = console.nextInt();
+        console.nextLine();
+        if (k <= 0) {
+            System.out.println("Número de resultados inválido.");
+            return;
+        }
+
+        System.out.println("\nPesquisando...");
+        long inicio = System.nanoTime();
+
+        // O índice invertido devolve os produtos já ordenados por relevância
+        List<Produto> produtos = produtoDAO().searchFullText(consulta, k);
+
+        long fim = System.nanoTime();
+
+        System.out.println("\nResultados encontrados (mais relevantes primeiro):");
+        int posicao = 1;
+        for (Produto p : produtos) {
+            System.out.println(posicao++ + ". [" + p.getID() + "] " + p.getNome() + " - " + p.getDescricao()
+                    + " (Preço: R$ " + p.getPreco() + ")");
+        }
+        if (produtos.isEmpty()) {
+            System.out.println("Nenhum produto encontrado para '" + consulta + "'.");
+        }
+
+        System.out.println("\nTempo total de busca: " + (fim - inicio) / 1000000.0 + " ms");
+    }
+
+    private static void pesquisarVariosTermos(Scanner console) throws Exception {
+        System.out.print("Digite os termos separados por '|' (ex: 'queijo|presunto|bacon'): ");
+        // "queijo | presunto" e "queijo||" não podem gerar termos com espaços nem vazios:
+        // um termo vazio casaria com todos os produtos
+        List<String> lidos = new ArrayList<>();
+        for (String termo : console.nextLine().split("\\|")) {
+            termo = termo.trim();
+            if (!termo.isEmpty()) lidos.add(termo);
+        }
+        if (lidos.isEmpty()) {
+            System.out.println("Nenhum termo informado.");
+            return;
+        }
+        String[] termos = lidos.toArray(new String[0]);
+
+        System.out.println("\nPesquisando...");
+        long inicio = System.nanoTime();
+
+        AhoCorasick automato = new AhoCorasick(termos);
+
+        // Junta os candidatos do índice de trigramas de cada termo (sem repetições, por ID)
+        Map<Integer, Produto> candidatos = new TreeMap<>();
+        for (String termo : termos) {
+            for (Produto p : produtoDAO().listAllBySecondaryKeySubstring(termo)) {
+                candidatos.put(p.getID(), p);
+            }
+        }
+
+        int encontrados = 0;
+        System.out.println("\nResultados encontrados:");
+        for (Produto p : candidatos.values()) {
+            boolean[] casados = automato.matchedPatterns(p.getNome());
+            StringBuilder termosCasados = new StringBuilder();
+            for (int i = 0; i < casados.length; i++) {
+                if (casados[i]) {
+                    if (termosCasados.length() > 0) termosCasados.append(", ");
+                    termosCasados.append(termos[i]);
+                }
+            }
+            if (termosCasados.length() > 0) {
+                System.out.println("- [" + p.getID() + "] " + p.getNome() + " (Preço: R$ " + p.getPreco() + ") -> " + termosCasados);
+                encontrados++;
+            }
+        }
+
+        long fim = System.nanoTime();
+
+        if (encontrados == 0) {
+            System.out.println("Nenhum produto encontrado com os termos informados.");
+        }
+
+        System.out.println("\nTempo total de busca: " + (fim - inicio) / 1000000.0 + " ms");
+    }
+
     // --- MENUS DE ENTIDADES ---
     // (Mantêm-se iguais aos anteriores: menuEmpresas, menuCardapios, menuProdutos, menuCategorias, menuProdutoCardapio)
 
@@ -191,6 +572,8 @@ public class Main {
             System.out.println("3) Buscar empresa por ID");
             System.out.println("4) Atualizar empresa");
             System.out.println("5) Excluir empresa");
+            System.out.println("6) Procurar empresa pelo início do nome (autocompletar)");
+            System.out.println("7) Buscar empresa por CNPJ");
             System.out.println("0) Voltar");
             System.out.print("Opção: ");
 
@@ -212,18 +595,18 @@ public class Main {
                     String[] telefones = telefonesStr.split(";");
 
                     Empresa novaEmpresa = new Empresa(nome, cnpj, telefones);
-                    int id = empresaDAO.create(novaEmpresa);
+                    int id = empresaDAO().create(novaEmpresa);
                     System.out.println("Empresa criada com sucesso! ID: " + id);
                     break;
                 case 2:
-                    List<Empresa> empresas = empresaDAO.listAllSortedBySecondaryKey();
+                    List<Empresa> empresas = empresaDAO().listAllSortedBySecondaryKey();
                     if (empresas.isEmpty()) System.out.println("Nenhuma empresa cadastrada.");
-                    else empresas.forEach(System.out::println);
+                    else empresas.forEach(e -> System.out.println(e.toSummaryString()));
                     break;
                 case 3:
                     System.out.print("ID da empresa: ");
                     int idBusca = console.nextInt();
-                    Empresa empresa = empresaDAO.read(idBusca);
+                    Empresa empresa = empresaDAO().read(idBusca);
                     if (empresa != null) System.out.println(empresa);
                     else System.out.println("Empresa não encontrada.");
                     break;
@@ -231,22 +614,32 @@ public class Main {
                     System.out.print("ID da empresa para atualizar: ");
                     int idUpdate = console.nextInt();
                     console.nextLine();
-                    Empresa empresaAtualizar = empresaDAO.read(idUpdate);
+                    Empresa empresaAtualizar = empresaDAO().read(idUpdate);
                     if (empresaAtualizar != null) {
                         System.out.print("Novo nome (atual: " + empresaAtualizar.getNome() + "): ");
                         String novoNome = console.nextLine();
                         if (!novoNome.isEmpty()) empresaAtualizar.setNome(novoNome);
 
-                        empresaDAO.update(empresaAtualizar);
+                        empresaDAO().update(empresaAtualizar);
                         System.out.println("Empresa atualizada!");
                     } else System.out.println("Empresa não encontrada.");
                     break;
                 case 5:
                     System.out.print("ID da empresa para excluir: ");
                     int idDelete = console.nextInt();
-                    if (empresaDAO.delete(idDelete)) System.out.println("Empresa excluída!");
+                    if (empresaDAO().delete(idDelete)) System.out.println("Empresa excluída!");
                     else System.out.println("Erro ao excluir.");
                     break;
+                case 6:
+                    autocompletar(console, empresaDAO());
+                    break;
+                case 7:
+                    System.out.print("CNPJ: ");
+                    String cnpjBusca = console.nextLine();
+                    List<Empresa> encontradas = empresaDAO().listAllByBlindIndex(Empresa.cnpjToken(cnpjBusca));
+                    if (encontradas.isEmpty()) System.out.println("Empresa não encontrada.");
+                    else encontradas.forEach(System.out::println);
+                    break;
                 case 0: break;
                 default: System.out.println("Opção inválida!");
             }
@@ -262,6 +655,7 @@ public class Main {
             System.out.println("3) Buscar cardápio por ID");
             System.out.println("4) Atualizar cardápio");
             System.out.println("5) Excluir cardápio");
+            System.out.println("6) Procurar cardápio pelo início do nome (autocompletar)");
             System.out.println("0) Voltar");
             System.out.print("Opção: ");
 
@@ -280,18 +674,18 @@ public class Main {
                     String descricao = console.nextLine();
 
                     Cardapio novoCardapio = new Cardapio(nome, descricao, true);
-                    int id = cardapioDAO.create(novoCardapio);
+                    int id = cardapioDAO().create(novoCardapio);
                     System.out.println("Cardápio criado com sucesso! ID: " + id);
                     break;
                 case 2:
-                    List<Cardapio> cardapios = cardapioDAO.listAllSortedBySecondaryKey();
+                    List<Cardapio> cardapios = cardapioDAO().listAllSortedBySecondaryKey();
                     if (cardapios.isEmpty()) System.out.println("Nenhum cardápio cadastrado.");
                     else cardapios.forEach(System.out::println);
                     break;
                 case 3:
                     System.out.print("ID do cardápio: ");
                     int idBusca = console.nextInt();
-                    Cardapio cardapio = cardapioDAO.read(idBusca);
+                    Cardapio cardapio = cardapioDAO().read(idBusca);
                     if (cardapio != null) System.out.println(cardapio);
                     else System.out.println("Cardápio não encontrado.");
                     break;
@@ -299,22 +693,25 @@ public class Main {
                     System.out.print("ID do cardápio para atualizar: ");
                     int idUpdate = console.nextInt();
                     console.nextLine();
-                    Cardapio cardapioAtualizar = cardapioDAO.read(idUpdate);
+                    Cardapio cardapioAtualizar = cardapioDAO().read(idUpdate);
                     if (cardapioAtualizar != null) {
                         System.out.print("Novo nome (atual: " + cardapioAtualizar.getNome() + "): ");
                         String novoNome = console.nextLine();
                         if (!novoNome.isEmpty()) cardapioAtualizar.setNome(novoNome);
 
-                        cardapioDAO.update(cardapioAtualizar);
+                        cardapioDAO().update(cardapioAtualizar);
                         System.out.println("Cardápio atualizado!");
                     } else System.out.println("Cardápio não encontrado.");
                     break;
                 case 5:
                     System.out.print("ID do cardápio para excluir: ");
                     int idDelete = console.nextInt();
-                    if (cardapioDAO.delete(idDelete)) System.out.println("Cardápio excluído!");
+                    if (cardapioDAO().delete(idDelete)) System.out.println("Cardápio excluído!");
                     else System.out.println("Erro ao excluir.");
                     break;
+                case 6:
+                    autocompletar(console, cardapioDAO());
+                    break;
                 case 0: break;
                 default: System.out.println("Opção inválida!");
             }
@@ -330,6 +727,7 @@ public class Main {
             System.out.println("3) Buscar produto por ID");
             System.out.println("4) Atualizar produto");
             System.out.println("5) Excluir produto");
+            System.out.println("6) Procurar produto pelo início do nome (autocompletar)");
             System.out.println("0) Voltar");
             System.out.print("Opção: ");
 
@@ -348,7 +746,7 @@ public class Main {
                     String descricao = console.nextLine();
 
                     System.out.println("Categorias disponíveis:");
-                    List<Categoria> categorias = categoriaDAO.listAll();
+                    List<Categoria> categorias = categoriaDAO().listAll();
                     if (categorias.isEmpty()) {
                         System.out.println("Nenhuma categoria cadastrada. Crie uma categoria primeiro.");
                         break;
@@ -358,18 +756,18 @@ public class Main {
                     int idCategoria = console.nextInt();
 
                     Produto novoProduto = new Produto(nome, descricao, idCategoria);
-                    int id = produtoDAO.create(novoProduto);
+                    int id = produtoDAO().create(novoProduto);
                     System.out.println("Produto criado com sucesso! ID: " + id);
                     break;
                 case 2:
-                    List<Produto> produtos = produtoDAO.listAllSortedBySecondaryKey();
+                    List<Produto> produtos = produtoDAO().listAllSortedBySecondaryKey();
                     if (produtos.isEmpty()) System.out.println("Nenhum produto cadastrado.");
                     else produtos.forEach(System.out::println);
                     break;
                 case 3:
                     System.out.print("ID do produto: ");
                     int idBusca = console.nextInt();
-                    Produto produto = produtoDAO.read(idBusca);
+                    Produto produto = produtoDAO().read(idBusca);
                     if (produto != null) System.out.println(produto);
                     else System.out.println("Produto não encontrado.");
                     break;
@@ -377,22 +775,25 @@ public class Main {
                     System.out.print("ID do produto para atualizar: ");
                     int idUpdate = console.nextInt();
                     console.nextLine();
-                    Produto produtoAtualizar = produtoDAO.read(idUpdate);
+                    Produto produtoAtualizar = produtoDAO().read(idUpdate);
                     if (produtoAtualizar != null) {
                         System.out.print("Novo nome (atual: " + produtoAtualizar.getNome() + "): ");
                         String novoNome = console.nextLine();
                         if (!novoNome.isEmpty()) produtoAtualizar.setNome(novoNome);
 
-                        produtoDAO.update(produtoAtualizar);
+                        produtoDAO().update(produtoAtualizar);
                         System.out.println("Produto atualizado!");
                     } else System.out.println("Produto não encontrado.");
                     break;
                 case 5:
                     System.out.print("ID do produto para excluir: ");
                     int idDelete = console.nextInt();
-                    if (produtoDAO.delete(idDelete)) System.out.println("Produto excluído!");
+                    if (produtoDAO().delete(idDelete)) System.out.println("Produto excluído!");
                     else System.out.println("Erro ao excluir.");
                     break;
+                case 6:
+                    autocompletar(console, produtoDAO());
+                    break;
                 case 0: break;
                 default: System.out.println("Opção inválida!");
             }
@@ -423,18 +824,18 @@ public class Main {
                     System.out.print("Nome da categoria: ");
                     String nome = console.nextLine();
                     Categoria novaCategoria = new Categoria(nome);
-                    int id = categoriaDAO.create(novaCategoria);
+                    int id = categoriaDAO().create(novaCategoria);
                     System.out.println("Categoria criada com sucesso! ID: " + id);
                     break;
                 case 2:
-                    List<Categoria> categorias = categoriaDAO.listAll();
+                    List<Categoria> categorias = categoriaDAO().listAll();
                     if (categorias.isEmpty()) System.out.println("Nenhuma categoria cadastrada.");
                     else categorias.forEach(System.out::println);
                     break;
                 case 3:
                     System.out.print("ID da categoria: ");
                     int idBusca = console.nextInt();
-                    Categoria categoria = categoriaDAO.read(idBusca);
+                    Categoria categoria = categoriaDAO().read(idBusca);
                     if (categoria != null) System.out.println(categoria);
                     else System.out.println("Categoria não encontrada.");
                     break;
@@ -442,19 +843,19 @@ public class Main {
                     System.out.print("ID da categoria para atualizar: ");
                     int idUpdate = console.nextInt();
                     console.nextLine();
-                    Categoria categoriaAtualizar = categoriaDAO.read(idUpdate);
+                    Categoria categoriaAtualizar = categoriaDAO().read(idUpdate);
                     if (categoriaAtualizar != null) {
                         System.out.print("Novo nome (atual: " + categoriaAtualizar.getNome() + "): ");
                         String novoNome = console.nextLine();
                         if (!novoNome.isEmpty()) categoriaAtualizar.setNome(novoNome);
-                        categoriaDAO.update(categoriaAtualizar);
+                        categoriaDAO().update(categoriaAtualizar);
                         System.out.println("Categoria atualizada!");
                     } else System.out.println("Categoria não encontrada.");
                     break;
                 case 5:
                     System.out.print("ID da categoria para excluir: ");
                     int idDelete = console.nextInt();
-                    if (categoriaDAO.delete(idDelete)) System.out.println("Categoria excluída!");
+                    if (categoriaDAO().delete(idDelete)) System.out.println("Categoria excluída!");
                     else System.out.println("Erro ao excluir.");
                     break;
                 case 0: break;
@@ -496,7 +897,7 @@ public class Main {
                     removerProdutoDoCardapio(console);
                     break;
                 case 5:
-                    List<ProdutoCardapio> relacoes = produtoCardapioDAO.listAll();
+                    List<ProdutoCardapio> relacoes = produtoCardapioDAO().listAll();
                     if(relacoes.isEmpty()) System.out.println("Nenhuma relação cadastrada.");
                     else relacoes.forEach(System.out::println);
                     break;
@@ -510,14 +911,14 @@ public class Main {
         System.out.println("\n--- Adicionar Produto ao Cardápio ---");
 
         System.out.println("Cardápios disponíveis:");
-        List<Cardapio> cardapios = cardapioDAO.listAll();
+        List<Cardapio> cardapios = cardapioDAO().listAll();
         if (cardapios.isEmpty()) { System.out.println("Nenhum cardápio cadastrado. Crie um cardápio primeiro."); return; }
         cardapios.forEach(System.out::println);
         System.out.print("ID do Cardápio: ");
         int idCardapio = console.nextInt();
 
         System.out.println("\nProdutos disponíveis:");
-        List<Produto> produtos = produtoDAO.listAll();
+        List<Produto> produtos = produtoDAO().listAll();
         if (produtos.isEmpty()) { System.out.println("Nenhum produto cadastrado. Crie um produto primeiro."); return; }
         produtos.forEach(System.out::println);
         System.out.print("ID do Produto: ");
@@ -527,7 +928,7 @@ public class Main {
         float preco = console.nextFloat();
 
         ProdutoCardapio novaRelacao = new ProdutoCardapio(idProduto, idCardapio, preco);
-        int idRelacao = produtoCardapioDAO.create(novaRelacao);
+        int idRelacao = produtoCardapioDAO().create(novaRelacao);
 
         System.out.println("Produto (ID " + idProduto + ") adicionado ao Cardápio (ID " + idCardapio + ") com sucesso! (ID da Relação: " + idRelacao + ")");
     }
@@ -536,19 +937,19 @@ public class Main {
         System.out.println("\n--- Listar Produtos de um Cardápio (Otimizado) ---");
 
         System.out.println("Cardápios disponíveis:");
-        List<Cardapio> cardapios = cardapioDAO.listAll();
+        List<Cardapio> cardapios = cardapioDAO().listAll();
         if (cardapios.isEmpty()) { System.out.println("Nenhum cardápio cadastrado."); return; }
         cardapios.forEach(System.out::println);
         System.out.print("ID do Cardápio para listar os produtos: ");
         int idCardapio = console.nextInt();
 
-        Cardapio c = cardapioDAO.read(idCardapio);
+        Cardapio c = cardapioDAO().read(idCardapio);
         if (c == null) { System.out.println("Cardápio não encontrado."); return; }
 
         System.out.println("\nProdutos no Cardápio: " + c.getNome());
 
         String prefixo = String.format("%010d-", idCardapio);
-        List<ProdutoCardapio> relacoes = produtoCardapioDAO.listAllBySecondaryKeyPrefix(prefixo);
+        List<ProdutoCardapio> relacoes = produtoCardapioDAO().listAllBySecondaryKeyPrefix(prefixo);
 
         if (relacoes.isEmpty()) {
             System.out.println("Este cardápio não possui produtos associados.");
@@ -556,7 +957,7 @@ public class Main {
         }
 
         for (ProdutoCardapio relacao : relacoes) {
-            Produto p = produtoDAO.read(relacao.getIdProduto());
+            Produto p = produtoDAO().read(relacao.getIdProduto());
             if (p != null) {
                 System.out.println("- " + p.getNome() + " (Preço: R$ " + relacao.getPreco() + ")");
             }
@@ -567,22 +968,22 @@ public class Main {
         System.out.println("\n--- Listar Cardápios que contêm um Produto (Não Otimizado) ---");
 
         System.out.println("Produtos disponíveis:");
-        List<Produto> produtos = produtoDAO.listAll();
+        List<Produto> produtos = produtoDAO().listAll();
         if (produtos.isEmpty()) { System.out.println("Nenhum produto cadastrado."); return; }
         produtos.forEach(System.out::println);
         System.out.print("ID do Produto para buscar cardápios: ");
         int idProduto = console.nextInt();
 
-        Produto p = produtoDAO.read(idProduto);
+        Produto p = produtoDAO().read(idProduto);
         if (p == null) { System.out.println("Produto não encontrado."); return; }
 
         System.out.println("\nCardápios que contêm: " + p.getNome());
 
-        List<ProdutoCardapio> todasRelacoes = produtoCardapioDAO.listAll();
+        List<ProdutoCardapio> todasRelacoes = produtoCardapioDAO().listAll();
         int count = 0;
         for (ProdutoCardapio relacao : todasRelacoes) {
             if (relacao.getIdProduto() == idProduto) {
-                Cardapio c = cardapioDAO.read(relacao.getIdCardapio());
+                Cardapio c = cardapioDAO().read(relacao.getIdCardapio());
                 if (c != null) {
                     System.out.println("- " + c.getNome() + " (Vendido por: R$ " + relacao.getPreco() + ")");
                     count++;
@@ -596,12 +997,12 @@ public class Main {
     private static void removerProdutoDoCardapio(Scanner console) throws Exception {
         System.out.println("\n--- Remover Relação Produto-Cardápio ---");
         System.out.println("Abaixo estão todas as relações ativas:");
-        List<ProdutoCardapio> relacoes = produtoCardapioDAO.listAll();
+        List<ProdutoCardapio> relacoes = produtoCardapioDAO().listAll();
         if(relacoes.isEmpty()) { System.out.println("Nenhuma relação cadastrada."); return; }
 
         for (ProdutoCardapio rel : relacoes) {
-            Produto p = produtoDAO.read(rel.getIdProduto());
-            Cardapio c = cardapioDAO.read(rel.getIdCardapio());
+            Produto p = produtoDAO().read(rel.getIdProduto());
+            Cardapio c = cardapioDAO().read(rel.getIdCardapio());
             if (p != null && c != null) {
                 System.out.println("ID Relação [" + rel.getID() + "]: Produto '" + p.getNome() + "' em Cardápio '" + c.getNome() + "'");
             }
@@ -610,7 +1011,7 @@ public class Main {
         System.out.print("\nDigite o ID da Relação que deseja excluir: ");
         int idRelacao = console.nextInt();
 
-        if (produtoCardapioDAO.delete(idRelacao)) {
+        if (produtoCardapioDAO().delete(idRelacao)) {
             System.out.println("Relação excluída com sucesso!");
         } else {
             System.out.println("Erro ao excluir ou ID da relação não encontrado.");
@@ -0,0 +1,166 @@
+package compressao;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Arquivo do backup, lido do disco sob demanda em vez de montado em memória.
+ *
+ * Formato: [magic "ARQ" + versão] e, para cada ficheiro,
+ * [nome (writeUTF)][tamanho (int)][conteúdo][CRC32C do conteúdo (int)]; um nome vazio
+ * marca o fim. Os arquivos antigos não têm magic, checksums nem marca de fim; como o
+ * nome começa pelo seu comprimento em 2 bytes, nunca começam pelo magic.
+ * Os tamanhos são fixados na criação, para que todas as leituras (a compressão Huffman
+ * lê o arquivo duas vezes) produzam exatamente os mesmos bytes. O conteúdo vem dos
+ * ficheiros ou, no backup online, de um Snapshot.
+ */
+public class BackupArchive implements Huffman.Source {
+
+    static final byte[] MAGIC = {'A', 'R', 'Q', 2};
+
+    private final List<String> names = new ArrayList<>();
+    private final List<Integer> sizes = new ArrayList<>();
+    private final Opener opener;
+    private long originalSize;
+
+    /**
+     * Abre o conteúdo do ficheiro na posição indicada.
+     */
+    private interface Opener {
+        InputStream open(int index) throws IOException;
+    }
+
+    /**
+     * @param fileNames Os ficheiros a arquivar; os que não existem são ignorados.
+     */
+    public BackupArchive(String[] fileNames) {
+        List<File> files = new ArrayList<>();
+        for (String fileName : fileNames) {
+            File f = new File(fileName);
+            if (f.exists()) {
+                files.add(f);
+                add(f.getName(), f.length());
+            }
+        }
+        this.opener = index -> new FileInputStream(files.get(index));
+    }
+
+    /**
+     * Arquivo com o conteúdo dos ficheiros no momento em que o snapshot foi tirado.
+     */
+    public BackupArchive(Snapshot snapshot) {
+        for (int i = 0; i < snapshot.getNames().size(); i++) {
+            add(snapshot.getNames().get(i), snapshot.getSize(i));
+        }
+        this.opener = snapshot::open;
+    }
+
+    private void add(String name, long size) {
+        names.add(name);
+        sizes.add((int) size);
+        originalSize += size;
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    public int getSize(int index) {
+        return sizes.get(index);
+    }
+
+    /**
+     * @return A soma dos tamanhos dos ficheiros arquivados (sem os cabeçalhos).
+     */
+    public long getOriginalSize() {
+        return originalSize;
+    }
+
+    @Override
+    public InputStream open() {
+        return new ArchiveStream();
+    }
+
+    /**
+     * Fluxo que intercala os cabeçalhos e checksums com o conteúdo de cada ficheiro, lido
+     * diretamente para o buffer de quem chama.
+     */
+    private class ArchiveStream extends InputStream {
+        private int nextFile;
+        private byte[] header = MAGIC.clone();
+        private int headerPos;
+        private InputStream current;
+        private long remaining;
+        private final CRC32C crc = new CRC32C();
+        private boolean finished;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return (read(one, 0, 1) < 0) ? -1 : (one[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (true) {
+                if (headerPos < header.length) {
+                    int n = Math.min(len, header.length - headerPos);
+                    System.arraycopy(header, headerPos, b, off, n);
+                    headerPos += n;
+                    return n;
+                }
+                if (remaining > 0) {
+                    int n = current.read(b, off, (int) Math.min(len, remaining));
+                    if (n < 0) {
+                        throw new IOException("O ficheiro " + names.get(nextFile - 1) + " diminuiu durante o backup.");
+                    }
+                    crc.update(b, off, n);
+                    remaining -= n;
+                    return n;
+                }
+                if (finished) return -1;
+                openNext();
+            }
+        }
+
+        /**
+         * Prepara o próximo cabeçalho: o checksum do ficheiro anterior, seguido do nome e
+         * tamanho do próximo, ou da marca de fim.
+         */
+        private void openNext() throws IOException {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(baos);
+            if (current != null) {
+                dos.writeInt((int) crc.getValue());
+            }
+            close();
+
+            if (nextFile == names.size()) {
+                dos.writeUTF("");
+                finished = true;
+            } else {
+                String name = names.get(nextFile);
+                int size = sizes.get(nextFile);
+                current = opener.open(nextFile);
+                nextFile++;
+                dos.writeUTF(name);
+                dos.writeInt(size);
+                remaining = size;
+                crc.reset();
+            }
+            header = baos.toByteArray();
+            headerPos = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+    }
+}
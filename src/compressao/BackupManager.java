@@ -1,76 +1,425 @@
 package compressao;
 
+import indices.PrefixIndex;
+
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
 
 public class BackupManager {
 
     // Lista de todos os arquivos que compõem a base de dados
     private static final String[] FILES_TO_BACKUP = {
             "empresas.db", "empresas.hash.dir", "empresas.hash.bkt", "empresas.bptree.idx",
-            "cardapios.db", "cardapios.hash.dir", "cardapios.hash.bkt", "cardapios.bptree.idx",
-            "produtos.db", "produtos.hash.dir", "produtos.hash.bkt", "produtos.bptree.idx",
+            "cardapios.db", "cardapios.pagemap", "cardapios.hash.dir", "cardapios.hash.bkt", "cardapios.bptree.idx",
+            "produtos.db", "produtos.pagemap", "produtos.hash.dir", "produtos.hash.bkt", "produtos.bptree.idx",
             "categorias.db", "categorias.hash.dir", "categorias.hash.bkt",
             "produtocardapio.db", "produtocardapio.hash.dir", "produtocardapio.hash.bkt", "produtocardapio.bptree.idx",
-            "public.key", "private.key" // Incluir chaves RSA é importante para backup completo
+            "public.key", "private.key", // Incluir chaves RSA é importante para backup completo
+            "data.key" // Chaves de dados dos campos cifrados (cifradas com o RSA)
     };
 
+    // Índices derivados: são reconstruídos a partir do .db, por isso não entram no backup
+    // e têm de ser apagados quando o .db é reposto
+    private static final String[] DERIVED_SUFFIXES = {".trigram.idx", ".fts.dict", ".fts.post",
+            ".blind.stamp", ".blind.dir", ".blind.bkt"};
+
+    // Codecs candidatos: cada bloco do backup é comprimido só com o que melhor comprimir
+    // uma amostra dele, ou guardado sem compressão se nenhum ganhar espaço
+    static final Codec[] CODECS = {Codec.LZW, Codec.HUFFMAN, Codec.LZSS};
+
+    // Tamanho dos buffers de escrita: a memória usada não depende do tamanho da base de dados
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Pastas temporárias da reposição, na mesma pasta dos dados para que as trocas sejam renomeações
+    private static final File STAGING_DIR = new File("restore.staging");
+    private static final File OLD_DIR = new File("restore.old");
+
+    private static final Pattern INCREMENTAL_NAME = Pattern.compile("backup_v(\\d+)\\.manifest");
+
     public static void createBackup(int version) {
         try {
             System.out.println("\n--- INICIANDO PROCESSO DE BACKUP ---");
+            if (Snapshot.isActive()) {
+                System.out.println("Há um backup online em curso; aguarde que termine antes de criar outro.");
+                return;
+            }
 
-            // 1. Juntar todos os arquivos num único array de bytes (formato de arquivamento simples)
-            ByteArrayOutputStream archiveStream = new ByteArrayOutputStream();
-            DataOutputStream archiveDos = new DataOutputStream(archiveStream);
+            // 1. Fixar a lista de ficheiros e os seus tamanhos; o arquivo é lido do disco sob demanda
+            compressArchive(new BackupArchive(FILES_TO_BACKUP), version);
 
-            long totalOriginalSize = 0;
+        } catch (Exception e) {
+            System.out.println("Erro ao criar backup: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
 
-            for (String fileName : FILES_TO_BACKUP) {
-                File f = new File(fileName);
-                if (f.exists()) {
-                    byte[] fileContent = Files.readAllBytes(f.toPath());
-                    // Escreve: [Nome do Arquivo] [Tamanho] [Conteúdo]
-                    archiveDos.writeUTF(fileName);
-                    archiveDos.writeInt(fileContent.length);
-                    archiveDos.write(fileContent);
+    /**
+     * Tira a fotografia dos ficheiros para um backup online. Deve ser chamado entre duas
+     * operações, depois de DAO.checkpoint(); a partir daqui o sistema pode continuar a
+     * ler e escrever enquanto createOnlineBackup comprime a fotografia.
+     */
+    public static Snapshot takeSnapshot() throws IOException {
+        return Snapshot.take(FILES_TO_BACKUP);
+    }
 
-                    totalOriginalSize += fileContent.length;
-                    System.out.println("Arquivado: " + fileName + " (" + fileContent.length + " bytes)");
-                }
+    /**
+     * Comprime uma fotografia tirada com takeSnapshot() e liberta-a no fim. Pode correr
+     * noutra thread, em paralelo com as operações normais.
+     */
+    public static void createOnlineBackup(int version, Snapshot snapshot) {
+        try (snapshot) {
+            System.out.println("\n--- BACKUP ONLINE v" + version + " EM SEGUNDO PLANO ---");
+            compressArchive(new BackupArchive(snapshot), version);
+            System.out.println("Páginas copiadas por escritas durante o backup: " + snapshot.getPreservedPages());
+        } catch (Exception e) {
+            System.out.println("Erro ao criar backup online: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static void compressArchive(BackupArchive archive, int version) throws IOException {
+        for (int i = 0; i < archive.getNames().size(); i++) {
+            System.out.println("Arquivado: " + archive.getNames().get(i) + " (" + archive.getSize(i) + " bytes)");
+        }
+
+        long totalOriginalSize = archive.getOriginalSize();
+        System.out.println("\nTamanho total original: " + totalOriginalSize + " bytes");
+
+        // 2. Comprimir em blocos, em paralelo, numa só passagem: cada bloco usa o codec
+        //    escolhido por amostragem
+        String backupFile = "backup_v" + version + ".blk";
+        CompressionReport report;
+        try (ParallelCompressor compressor = new ParallelCompressor();
+             InputStream in = archive.open();
+             OutputStream out = openOutput(backupFile)) {
+            System.out.println("Comprimindo em blocos de " + (ParallelCompressor.DEFAULT_BLOCK_SIZE / 1024)
+                    + " KiB com " + compressor.getThreads() + " threads...");
+            report = compressor.compress(in, CODECS, out);
+        }
+
+        printStats("Backup " + backupFile, totalOriginalSize, report.getCompressedSize(), report.getElapsedNanos() / 1_000_000);
+        printReport(report);
+    }
+
+    /**
+     * Cria uma versão incremental: só as páginas alteradas desde a versão anterior são guardadas.
+     */
+    public static void createIncrementalBackup(int version) {
+        try {
+            System.out.println("\n--- INICIANDO BACKUP INCREMENTAL ---");
+            if (Snapshot.isActive()) {
+                System.out.println("Há um backup online em curso; aguarde que termine antes de criar outro.");
+                return;
+            }
+
+            long startTime = System.currentTimeMillis();
+            IncrementalBackup.Result result = IncrementalBackup.create(version, FILES_TO_BACKUP);
+            long elapsed = System.currentTimeMillis() - startTime;
+
+            if (result.isFull()) {
+                System.out.println("Sem versão anterior utilizável: todas as páginas foram guardadas.");
+            } else {
+                System.out.println("Base: versão " + result.base);
             }
+            System.out.println("Páginas alteradas: " + result.pagesStored + " de " + result.pagesScanned
+                    + " (" + IncrementalBackup.PAGE_SIZE + " bytes cada)");
+
+            printStats("Incremental", result.originalSize, result.backupSize, elapsed);
+
+        } catch (Exception e) {
+            System.out.println("Erro ao criar backup incremental: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
 
-            byte[] originalData = archiveStream.toByteArray();
-            System.out.println("\nTamanho total original: " + totalOriginalSize + " bytes");
+    // --- RESTAURAÇÃO ---
+
+    /**
+     * Repõe um backup. Os ficheiros são primeiro escritos e verificados numa pasta temporária,
+     * e só depois trocados pelos atuais; se algo falhar antes da troca, nada é alterado.
+     * @param backupFile O backup: backup_vN.blk, backup_vN.manifest ou, dos formatos
+     *                   anteriores, backup_vN.lzw e backup_vN.huff.
+     * @param onlyFile Um ficheiro a repor (ex: produtos.db), ou null para repor tudo. Um .db
+     *                 traz consigo os índices do mesmo backup, para que continuem coerentes.
+     * @return true se a reposição terminou.
+     */
+    public static boolean restoreBackup(String backupFile, String onlyFile) {
+        try {
+            System.out.println("\n--- INICIANDO RESTAURAÇÃO ---");
+            if (Snapshot.isActive()) {
+                System.out.println("Há um backup online em curso; aguarde que termine antes de restaurar.");
+                return false;
+            }
+            File backup = new File(backupFile);
+            if (!backup.exists()) {
+                System.out.println("Backup não encontrado: " + backupFile);
+                return false;
+            }
+            Predicate<String> filter = selection(onlyFile);
 
-            // 2. Comprimir usando LZW
             long startTime = System.currentTimeMillis();
-            byte[] lzwCompressed = LZW.compress(originalData);
-            long lzwTime = System.currentTimeMillis() - startTime;
-            saveFile("backup_v" + version + ".lzw", lzwCompressed);
+            deleteDirectory(STAGING_DIR);
+            if (!STAGING_DIR.mkdirs()) {
+                throw new IOException("Não foi possível criar a pasta " + STAGING_DIR + ".");
+            }
 
-            printStats("LZW", totalOriginalSize, lzwCompressed.length, lzwTime);
+            // 1. Descomprimir e verificar para a pasta temporária
+            List<String> restored;
+            Matcher incremental = INCREMENTAL_NAME.matcher(backup.getName());
+            if (incremental.matches()) {
+                restored = IncrementalBackup.restore(Integer.parseInt(incremental.group(1)), STAGING_DIR, filter);
+            } else {
+                restored = extractArchive(backup, filter, onlyFile != null);
+            }
+            if (restored.isEmpty()) {
+                System.out.println(onlyFile == null
+                        ? "O backup não contém nenhum ficheiro."
+                        : "Nenhum ficheiro do backup corresponde a " + onlyFile + ".");
+                return false;
+            }
+            long totalSize = 0;
+            for (String name : restored) {
+                totalSize += new File(STAGING_DIR, name).length();
+                System.out.println("Verificado: " + name);
+            }
 
-            // 3. Comprimir usando Huffman
-            startTime = System.currentTimeMillis();
-            byte[] huffmanCompressed = Huffman.compress(originalData);
-            long huffmanTime = System.currentTimeMillis() - startTime;
-            saveFile("backup_v" + version + ".huff", huffmanCompressed);
+            // 2. Trocar os ficheiros atuais pelos repostos e invalidar os índices derivados
+            Set<String> replaced = swapIn(restored, filter);
+            deleteDerivedIndexes(replaced);
+            long elapsed = System.currentTimeMillis() - startTime;
 
-            printStats("Huffman", totalOriginalSize, huffmanCompressed.length, huffmanTime);
+            System.out.println("\n--- Resultados da Restauração ---");
+            System.out.println("Ficheiros repostos: " + restored.size());
+            System.out.println("Tamanho reposto: " + totalSize + " bytes");
+            System.out.println("Tempo de Execução: " + elapsed + "ms");
+            System.out.printf("Velocidade: %.1f MB/s\n", totalSize / 1e6 / Math.max(1, elapsed) * 1000);
+            return true;
 
         } catch (Exception e) {
-            System.out.println("Erro ao criar backup: " + e.getMessage());
+            System.out.println("Erro ao restaurar backup: " + e.getMessage());
+            System.out.println("Os ficheiros atuais não foram alterados.");
             e.printStackTrace();
+            return false;
+        } finally {
+            deleteDirectory(STAGING_DIR);
+        }
+    }
+
+    /**
+     * Ficheiros a repor: todos, só o indicado ou, para um .db, ele e os índices da mesma entidade.
+     */
+    private static Predicate<String> selection(String onlyFile) {
+        if (onlyFile == null) return name -> true;
+        if (onlyFile.endsWith(".db")) {
+            String prefix = onlyFile.substring(0, onlyFile.length() - ".db".length()) + ".";
+            return name -> name.startsWith(prefix);
         }
+        return onlyFile::equals;
     }
 
-    private static void saveFile(String fileName, byte[] data) throws IOException {
-        FileOutputStream fos = new FileOutputStream(fileName);
-        fos.write(data);
-        fos.close();
+    /**
+     * Lê o arquivo de um backup completo, escrevendo na pasta temporária os ficheiros
+     * escolhidos e verificando o checksum de cada um.
+     * @param stopEarly Se pode parar de ler depois dos ficheiros escolhidos (o arquivo
+     *                  segue a ordem de FILES_TO_BACKUP, que agrupa os ficheiros de cada entidade).
+     */
+    private static List<String> extractArchive(File backup, Predicate<String> filter, boolean stopEarly) throws IOException {
+        List<String> restored = new ArrayList<>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        CRC32C crc = new CRC32C();
+
+        try (ParallelCompressor compressor = new ParallelCompressor();
+             DataInputStream in = new DataInputStream(new BufferedInputStream(openArchive(backup, compressor), BUFFER_SIZE))) {
+            in.mark(BackupArchive.MAGIC.length);
+            boolean checked = Arrays.equals(in.readNBytes(BackupArchive.MAGIC.length), BackupArchive.MAGIC);
+            if (!checked) {
+                in.reset();
+                System.out.println("Backup no formato antigo: os ficheiros não têm checksum.");
+            }
+
+            while (true) {
+                if (!checked) {
+                    // O formato antigo não tem marca de fim
+                    in.mark(1);
+                    if (in.read() < 0) break;
+                    in.reset();
+                }
+                String name = in.readUTF();
+                if (name.isEmpty()) break;
+                int size = in.readInt();
+
+                boolean wanted = filter.test(name);
+                if (!wanted && stopEarly && !restored.isEmpty()) break;
+                if (name.contains("/") || name.contains("\\") || name.equals("..")) {
+                    throw new IOException("Nome de ficheiro inválido no backup: " + name);
+                }
+
+                crc.reset();
+                try (OutputStream out = wanted ? openOutput(new File(STAGING_DIR, name).getPath()) : OutputStream.nullOutputStream()) {
+                    long remaining = size;
+                    while (remaining > 0) {
+                        int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (n < 0) throw new EOFException("O backup termina a meio de " + name + ".");
+                        if (wanted) crc.update(buffer, 0, n);
+                        out.write(buffer, 0, n);
+                        remaining -= n;
+                    }
+                }
+                if (checked) {
+                    int expected = in.readInt();
+                    if (wanted && expected != (int) crc.getValue()) {
+                        throw new IOException("O ficheiro " + name + " não corresponde ao checksum do backup.");
+                    }
+                }
+                if (wanted) restored.add(name);
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Abre o arquivo descomprimido. Os contentores de blocos são lidos diretamente; os
+     * backups anteriores, num único fluxo LZW ou Huffman, são descomprimidos para um temporário.
+     */
+    private static InputStream openArchive(File backup, ParallelCompressor compressor) throws IOException {
+        if (ParallelCompressor.isContainer(backup)) {
+            return compressor.openStream(backup);
+        }
+        File tmp = new File(STAGING_DIR.getPath() + ".arq");
+        try (InputStream in = new BufferedInputStream(new FileInputStream(backup), BUFFER_SIZE);
+             OutputStream out = openOutput(tmp.getPath())) {
+            if (backup.getName().endsWith(".huff")) {
+                Huffman.decompress(in, out);
+            } else {
+                LZW.decompress(in, out);
+            }
+        } catch (IOException | RuntimeException e) {
+            tmp.delete();
+            throw e;
+        }
+        return new FileInputStream(tmp) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                tmp.delete();
+            }
+        };
+    }
+
+    /**
+     * Troca os ficheiros atuais pelos repostos. Cada troca é uma renomeação atómica; os
+     * atuais são afastados primeiro e, se alguma renomeação falhar, voltam ao lugar.
+     * Os ficheiros escolhidos que não estão no backup também são afastados, para não
+     * ficarem índices antigos ao lado de dados repostos.
+     * @return Os nomes dos ficheiros substituídos.
+     */
+    private static Set<String> swapIn(List<String> restored, Predicate<String> filter) throws IOException {
+        Set<String> replaced = new LinkedHashSet<>(restored);
+        for (String name : FILES_TO_BACKUP) {
+            if (filter.test(name)) replaced.add(name);
+        }
+
+        deleteDirectory(OLD_DIR);
+        if (!OLD_DIR.mkdirs()) {
+            throw new IOException("Não foi possível criar a pasta " + OLD_DIR + ".");
+        }
+        List<String> movedAside = new ArrayList<>();
+        List<String> movedIn = new ArrayList<>();
+        try {
+            for (String name : replaced) {
+                File live = new File(name);
+                if (live.exists()) {
+                    move(live, new File(OLD_DIR, name));
+                    movedAside.add(name);
+                }
+            }
+            for (String name : restored) {
+                move(new File(STAGING_DIR, name), new File(name));
+                movedIn.add(name);
+            }
+        } catch (IOException e) {
+            for (String name : movedIn) {
+                new File(name).delete();
+            }
+            for (String name : movedAside) {
+                move(new File(OLD_DIR, name), new File(name));
+            }
+            throw e;
+        }
+        deleteDirectory(OLD_DIR);
+        return replaced;
+    }
+
+    /**
+     * Apaga os índices derivados das entidades repostas; os DAOs reconstroem-nos ao abrir.
+     * Não basta confiar no carimbo: um .db reposto pode ter o mesmo tamanho do atual.
+     */
+    private static void deleteDerivedIndexes(Set<String> replaced) {
+        Set<String> bases = new HashSet<>();
+        for (String name : replaced) {
+            int dot = name.indexOf('.');
+            bases.add(dot < 0 ? name : name.substring(0, dot));
+        }
+        for (String base : bases) {
+            for (String suffix : DERIVED_SUFFIXES) {
+                new File(base + suffix).delete();
+            }
+            PrefixIndex.deleteFiles(base + ".prefix");
+        }
+    }
+
+    private static void move(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static OutputStream openOutput(String fileName) throws IOException {
+        return new BufferedOutputStream(new FileOutputStream(fileName), BUFFER_SIZE);
+    }
+
+    /**
+     * Mostra, por codec, o que as amostras mediram e onde cada um foi usado.
+     */
+    private static void printReport(CompressionReport report) {
+        System.out.printf("Velocidade: %.1f MB/s (amostragem: %d ms)\n",
+                report.getThroughputMBps(), report.getSamplingNanos() / 1_000_000);
+        System.out.println("\nCodec           Amostras: taxa    MB/s   memória/bloco | Usado em: blocos   taxa    MB/s");
+        for (Codec codec : Codec.values()) {
+            CompressionReport.CodecStats amostra = report.getSampled().get(codec);
+            CompressionReport.CodecStats usado = report.getSelected().get(codec);
+            if (amostra == null && usado == null) continue;
+            System.out.printf("%-15s", codec.getDisplayName());
+            if (amostra != null) {
+                System.out.printf("  %12.1f%% %7.1f %12d KiB", 100 * amostra.getRatio(),
+                        amostra.getThroughputMBps(), amostra.getMaxAllocatedPerBlock() / 1024);
+            } else {
+                System.out.printf("  %36s", "-");
+            }
+            if (usado != null) {
+                System.out.printf(" | %17d %6.1f%% %7.1f", usado.getBlocks(), 100 * usado.getRatio(), usado.getThroughputMBps());
+            }
+            System.out.println();
+        }
     }
 
     private static void printStats(String algorithm, long original, long compressed, long time) {
@@ -0,0 +1,85 @@
+package compressao;
+
+import java.io.IOException;
+
+/**
+ * Algoritmos que podem comprimir um bloco do backup. O id é gravado no
+ * contentor junto de cada bloco, para que a descompressão saiba qual usar.
+ */
+public enum Codec {
+
+    STORE(0, "Sem compressão") {
+        @Override
+        public byte[] compress(byte[] data) {
+            return data;
+        }
+
+        @Override
+        public byte[] decompress(byte[] data) {
+            return data;
+        }
+    },
+
+    LZW(1, "LZW") {
+        @Override
+        public byte[] compress(byte[] data) throws IOException {
+            return compressao.LZW.compress(data);
+        }
+
+        @Override
+        public byte[] decompress(byte[] data) throws IOException {
+            return compressao.LZW.decompress(data);
+        }
+    },
+
+    HUFFMAN(2, "Huffman") {
+        @Override
+        public byte[] compress(byte[] data) throws IOException {
+            return compressao.Huffman.compress(data);
+        }
+
+        @Override
+        public byte[] decompress(byte[] data) throws IOException {
+            return compressao.Huffman.decompress(data);
+        }
+    },
+
+    LZSS(3, "LZSS + Huffman") {
+        @Override
+        public byte[] compress(byte[] data) throws IOException {
+            return compressao.LZSS.compress(data);
+        }
+
+        @Override
+        public byte[] decompress(byte[] data) throws IOException {
+            return compressao.LZSS.decompress(data);
+        }
+    };
+
+    private final int id;
+    private final String displayName;
+
+    Codec(int id, String displayName) {
+        this.id = id;
+        this.displayName = displayName;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public abstract byte[] compress(byte[] data) throws IOException;
+
+    public abstract byte[] decompress(byte[] data) throws IOException;
+
+    public static Codec fromId(int id) throws IOException {
+        for (Codec codec : values()) {
+            if (codec.id == id) return codec;
+        }
+        throw new IOException("Codec de bloco desconhecido: " + id);
+    }
+}
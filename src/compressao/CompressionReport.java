@@ -0,0 +1,164 @@
+package compressao;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Medições de uma compressão adaptativa (ver ParallelCompressor.compress).
+ *
+ * Para cada codec há duas vistas: a das amostras, medida em todos os candidatos para
+ * escolher o codec de cada bloco, e a dos blocos em que o codec foi de facto usado.
+ * A memória é a que a thread alocou durante a compressão (inclui os dicionários e
+ * tabelas do codec); fica a 0 se a JVM não a souber medir.
+ */
+public class CompressionReport {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Totais de um codec.
+     */
+    public static final class CodecStats {
+        private int blocks;
+        private long originalBytes;
+        private long compressedBytes;
+        private long nanos;
+        private long allocatedBytes;
+        private long maxAllocatedPerBlock;
+
+        void add(int original, int compressed, long nanos, long allocated) {
+            blocks++;
+            originalBytes += original;
+            compressedBytes += compressed;
+            this.nanos += nanos;
+            allocatedBytes += allocated;
+            maxAllocatedPerBlock = Math.max(maxAllocatedPerBlock, allocated);
+        }
+
+        public int getBlocks() {
+            return blocks;
+        }
+
+        public long getOriginalBytes() {
+            return originalBytes;
+        }
+
+        public long getCompressedBytes() {
+            return compressedBytes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return O tamanho comprimido a dividir pelo original (1.0 = sem ganho).
+         */
+        public double getRatio() {
+            return (originalBytes == 0) ? 1.0 : (double) compressedBytes / originalBytes;
+        }
+
+        /**
+         * @return Megabytes de entrada comprimidos por segundo de CPU de uma thread.
+         */
+        public double getThroughputMBps() {
+            return (nanos == 0) ? 0 : originalBytes / 1e6 / (nanos / 1e9);
+        }
+
+        /**
+         * @return Bytes alocados por byte de entrada.
+         */
+        public double getAllocatedPerByte() {
+            return (originalBytes == 0) ? 0 : (double) allocatedBytes / originalBytes;
+        }
+
+        /**
+         * @return O máximo alocado para comprimir um só bloco ou amostra.
+         */
+        public long getMaxAllocatedPerBlock() {
+            return maxAllocatedPerBlock;
+        }
+    }
+
+    private final Map<Codec, CodecStats> sampled = new EnumMap<>(Codec.class);
+    private final Map<Codec, CodecStats> selected = new EnumMap<>(Codec.class);
+    private long samplingNanos;
+    private long originalSize;
+    private long compressedSize;
+    private long elapsedNanos;
+
+    void addSample(Codec codec, int original, int compressed, long nanos, long allocated) {
+        sampled.computeIfAbsent(codec, c -> new CodecStats()).add(original, compressed, nanos, allocated);
+        samplingNanos += nanos;
+    }
+
+    void addBlock(Codec codec, int original, int compressed, long nanos, long allocated) {
+        selected.computeIfAbsent(codec, c -> new CodecStats()).add(original, compressed, nanos, allocated);
+    }
+
+    void finish(long compressedSize, long elapsedNanos) {
+        for (CodecStats stats : selected.values()) {
+            originalSize += stats.originalBytes;
+        }
+        this.compressedSize = compressedSize;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return As medições das amostras de cada candidato.
+     */
+    public Map<Codec, CodecStats> getSampled() {
+        return sampled;
+    }
+
+    /**
+     * @return As medições dos blocos gravados, por codec escolhido.
+     */
+    public Map<Codec, CodecStats> getSelected() {
+        return selected;
+    }
+
+    /**
+     * @return O tempo de CPU gasto a comprimir amostras para escolher os codecs.
+     */
+    public long getSamplingNanos() {
+        return samplingNanos;
+    }
+
+    public long getOriginalSize() {
+        return originalSize;
+    }
+
+    /**
+     * @return O tamanho do contentor gravado, com cabeçalhos e índice.
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    /**
+     * @return O tempo total, do início da leitura ao fim da escrita.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getThroughputMBps() {
+        return (elapsedNanos == 0) ? 0 : originalSize / 1e6 / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * @return Os bytes alocados até agora pela thread atual, ou 0 se não for possível medir.
+     */
+    static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) THREADS;
+            if (mx.isThreadAllocatedMemorySupported() && mx.isThreadAllocatedMemoryEnabled()) {
+                return mx.getCurrentThreadAllocatedBytes();
+            }
+        }
+        return 0;
+    }
+}
@@ -3,15 +3,43 @@ package compressao;
 import java.io.*;
 import java.util.*;
 
+/**
+ * Compressão de Huffman com códigos canónicos de tamanho limitado.
+ *
+ * Os tamanhos dos códigos saem da árvore de Huffman e são limitados a MAX_CODE_LENGTH
+ * bits; os códigos em si são atribuídos de forma canónica (por tamanho e depois por
+ * símbolo), por isso o cabeçalho só precisa de guardar os tamanhos. A descodificação
+ * usa uma tabela indexada pelos próximos MAX_CODE_LENGTH bits, que devolve o símbolo
+ * e o tamanho do código numa única consulta.
+ *
+ * Formato: [magic "HUF" + versão][nº de bytes originais (long)][256 tamanhos, 4 bits cada]
+ * e depois os códigos, do bit mais significativo para o menos significativo.
+ */
 public class Huffman {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] MAGIC = {'H', 'U', 'F', 3};
+    private static final int MAX_CODE_LENGTH = 12;
+    private static final int TABLE_SIZE = 1 << MAX_CODE_LENGTH;
+    // Com pelo menos 57 bits carregados, cabem 4 códigos de 12 bits sem nova recarga
+    private static final int SYMBOLS_PER_REFILL = 57 / MAX_CODE_LENGTH;
+
+    /**
+     * Origem de dados que pode ser lida mais de uma vez: a compressão percorre a
+     * entrada duas vezes (frequências e codificação) sem a guardar em memória.
+     */
+    @FunctionalInterface
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+
     // Nó da árvore de Huffman
     private static class Node implements Comparable<Node> {
-        byte data;
-        int frequency;
+        int data;
+        long frequency;
         Node left, right;
 
-        Node(byte data, int frequency) {
+        Node(int data, long frequency) {
             this.data = data;
             this.frequency = frequency;
         }
@@ -28,83 +56,447 @@ public class Huffman {
 
         @Override
         public int compareTo(Node other) {
-            return this.frequency - other.frequency;
+            return Long.compare(this.frequency, other.frequency);
         }
     }
 
     public static byte[] compress(byte[] input) throws IOException {
-        if (input.length == 0) return new byte[0];
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        compress(() -> new ByteArrayInputStream(input), baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Comprime a origem em duas passagens com buffers de tamanho fixo: a primeira
+     * conta as frequências, a segunda escreve os códigos.
+     * @param source A origem (aberta duas vezes).
+     * @param out A saída.
+     */
+    public static void compress(Source source, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
 
         // 1. Calcular frequências
-        Map<Byte, Integer> freqMap = new HashMap<>();
-        for (byte b : input) {
-            freqMap.put(b, freqMap.getOrDefault(b, 0) + 1);
+        long[] freq = new long[256];
+        long total = 0;
+        try (InputStream in = source.open()) {
+            while ((n = in.read(buffer)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    freq[buffer[i] & 0xFF]++;
+                }
+                total += n;
+            }
         }
 
-        // 2. Criar fila de prioridade
-        PriorityQueue<Node> queue = new PriorityQueue<>();
-        for (Map.Entry<Byte, Integer> entry : freqMap.entrySet()) {
-            queue.add(new Node(entry.getKey(), entry.getValue()));
+        // 2. Tamanhos limitados e códigos canónicos
+        int[] lengths = codeLengths(freq, MAX_CODE_LENGTH);
+        int[] codes = canonicalCodes(lengths, MAX_CODE_LENGTH);
+
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.write(MAGIC);
+        dos.writeLong(total);
+        for (int s = 0; s < 256; s += 2) {
+            dos.writeByte((lengths[s] << 4) | lengths[s + 1]);
         }
 
-        // 3. Construir árvore de Huffman
-        while (queue.size() > 1) {
-            Node left = queue.poll();
-            Node right = queue.poll();
-            queue.add(new Node(left, right));
+        // 3. Codificar: os bits acumulam-se num long e saem 32 de cada vez
+        byte[] outBuffer = new byte[BUFFER_SIZE];
+        int outPos = 0;
+        long bitBuffer = 0;
+        int bitCount = 0;
+        try (InputStream in = source.open()) {
+            long restantes = total;
+            while (restantes > 0 && (n = in.read(buffer, 0, (int) Math.min(buffer.length, restantes))) > 0) {
+                restantes -= n;
+                for (int i = 0; i < n; i++) {
+                    int s = buffer[i] & 0xFF;
+                    if (lengths[s] == 0) {
+                        throw new IOException("A origem mudou entre as duas passagens da compressão.");
+                    }
+                    bitBuffer = (bitBuffer << lengths[s]) | codes[s];
+                    bitCount += lengths[s];
+                    if (bitCount >= 32) {
+                        if (outPos + 4 > outBuffer.length) {
+                            dos.write(outBuffer, 0, outPos);
+                            outPos = 0;
+                        }
+                        int word = (int) (bitBuffer >>> (bitCount - 32));
+                        outBuffer[outPos++] = (byte) (word >>> 24);
+                        outBuffer[outPos++] = (byte) (word >>> 16);
+                        outBuffer[outPos++] = (byte) (word >>> 8);
+                        outBuffer[outPos++] = (byte) word;
+                        bitCount -= 32;
+                    }
+                }
+            }
+            if (restantes > 0) {
+                throw new IOException("A origem mudou entre as duas passagens da compressão.");
+            }
         }
-        Node root = queue.poll();
+        dos.write(outBuffer, 0, outPos);
+        // Bits restantes, alinhados à esquerda no último byte
+        while (bitCount > 0) {
+            int shift = bitCount - 8;
+            dos.writeByte((int) (shift >= 0 ? bitBuffer >>> shift : bitBuffer << -shift));
+            bitCount -= 8;
+        }
+        dos.flush();
+    }
 
-        // 4. Gerar tabela de códigos
-        Map<Byte, String> huffmanCodes = new HashMap<>();
-        generateCodes(root, "", huffmanCodes);
+    public static byte[] decompress(byte[] input) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        decompress(new ByteArrayInputStream(input), baos);
+        return baos.toByteArray();
+    }
 
-        // 5. Codificar os dados
-        StringBuilder sb = new StringBuilder();
-        for (byte b : input) {
-            sb.append(huffmanCodes.get(b));
+    /**
+     * Descomprime um fluxo gerado por compress, escrevendo os bytes à medida que são descodificados.
+     * Aceita também o formato anterior (tabela de frequências e árvore).
+     * @param in A entrada comprimida.
+     * @param out A saída.
+     */
+    public static void decompress(InputStream in, OutputStream out) throws IOException {
+        BufferedInputStream bis = new BufferedInputStream(in, BUFFER_SIZE);
+        bis.mark(MAGIC.length);
+        if (!Arrays.equals(bis.readNBytes(MAGIC.length), MAGIC)) {
+            bis.reset();
+            decompressLegacy(bis, out);
+            return;
         }
 
-        // 6. Serializar (Árvore + Dados)
-        // Precisamos salvar a árvore (ou frequências) para poder descomprimir depois.
-        // Para simplificar este trabalho, vamos salvar o mapa de frequências no início.
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DataOutputStream dos = new DataOutputStream(baos);
+        DataInputStream dis = new DataInputStream(bis);
+        long total = dis.readLong();
+        int[] lengths = new int[256];
+        for (int s = 0; s < 256; s += 2) {
+            int b = dis.readUnsignedByte();
+            lengths[s] = b >>> 4;
+            lengths[s + 1] = b & 0x0F;
+        }
+        if (total == 0) return;
+        short[] table = decodeTable(lengths, MAX_CODE_LENGTH);
 
-        dos.writeInt(freqMap.size());
-        for(Map.Entry<Byte, Integer> entry : freqMap.entrySet()) {
-            dos.writeByte(entry.getKey());
-            dos.writeInt(entry.getValue());
+        Decoder decoder = new Decoder(dis, table);
+        byte[] outBuffer = new byte[BUFFER_SIZE];
+        for (long produzidos = 0; produzidos < total; ) {
+            int n = (int) Math.min(outBuffer.length, total - produzidos);
+            decoder.decode(outBuffer, n);
+            out.write(outBuffer, 0, n);
+            produzidos += n;
         }
+        out.flush();
+    }
 
-        // Converter string de bits para bytes reais
-        // Adicionamos o tamanho original em bits para lidar com o padding final
-        int bitLength = sb.length();
-        dos.writeInt(bitLength);
+    /**
+     * Leitor de bits com a tabela de descodificação. O ciclo principal fica num método
+     * curto, chamado uma vez por bloco de saída, para ser bem otimizado pelo JIT.
+     */
+    private static final class Decoder {
+        private final InputStream in;
+        private final short[] table;
+        private final int[] pairs;
+        private final byte[] inBuffer = new byte[BUFFER_SIZE];
+        private int inPos, inLimit;
+        private int padding;
+
+        // Bits ainda não consumidos, alinhados à esquerda
+        private long bitBuffer;
+        private int bitCount;
+
+        Decoder(InputStream in, short[] table) {
+            this.in = in;
+            this.table = table;
+            this.pairs = pairTable(table);
+        }
 
-        BitSet bitSet = new BitSet(bitLength);
-        for(int i=0; i<bitLength; i++) {
-            if(sb.charAt(i) == '1') {
-                bitSet.set(i);
+        /**
+         * Descodifica exatamente n símbolos para out[0..n).
+         */
+        void decode(byte[] out, int n) throws IOException {
+            long bits = bitBuffer;
+            int count = bitCount;
+            int pos = 0;
+            while (pos < n) {
+                if (count <= 56) {
+                    // Com 8 bytes disponíveis, recarrega de uma vez até ter pelo menos 57 bits
+                    if (inLimit - inPos >= Long.BYTES) {
+                        while (count <= 56) {
+                            bits |= (long) (inBuffer[inPos++] & 0xFF) << (56 - count);
+                            count += 8;
+                        }
+                    } else {
+                        bitBuffer = bits;
+                        bitCount = count;
+                        refillSlow();
+                        bits = bitBuffer;
+                        count = bitCount;
+                    }
+                }
+
+                if (n - pos >= 2 * SYMBOLS_PER_REFILL) {
+                    // Cada consulta pode produzir dois símbolos: a cadeia de dependências fica mais curta
+                    for (int k = 0; k < SYMBOLS_PER_REFILL; k++) {
+                        int entry = pairs[(int) (bits >>> (64 - MAX_CODE_LENGTH))];
+                        if (entry == 0) throw new IOException("Código Huffman inválido.");
+                        int length = entry >>> 18;
+                        out[pos] = (byte) entry;
+                        out[pos + 1] = (byte) (entry >>> 8);
+                        pos += (entry >>> 16) & 3;
+                        bits <<= length;
+                        count -= length;
+                    }
+                } else {
+                    int quantos = Math.min(SYMBOLS_PER_REFILL, n - pos);
+                    for (int k = 0; k < quantos; k++) {
+                        int entry = table[(int) (bits >>> (64 - MAX_CODE_LENGTH))];
+                        int length = entry & 0x0F;
+                        if (length == 0) throw new IOException("Código Huffman inválido.");
+                        bits <<= length;
+                        count -= length;
+                        out[pos++] = (byte) (entry >>> 4);
+                    }
+                }
             }
+            bitBuffer = bits;
+            bitCount = count;
         }
 
-        byte[] compressedBytes = bitSet.toByteArray();
-        dos.writeInt(compressedBytes.length);
-        dos.write(compressedBytes);
+        /**
+         * Recarga perto do fim do buffer de entrada, byte a byte.
+         */
+        private void refillSlow() throws IOException {
+            while (bitCount <= 56) {
+                if (inPos == inLimit) {
+                    inLimit = in.read(inBuffer);
+                    inPos = 0;
+                    if (inLimit <= 0) {
+                        // Depois do fim só há bits de enchimento; muitos indicam truncamento
+                        inLimit = 0;
+                        if (++padding > 2 * Long.BYTES) throw new EOFException("Fluxo Huffman truncado.");
+                        bitCount += 8;
+                        continue;
+                    }
+                }
+                bitBuffer |= (long) (inBuffer[inPos++] & 0xFF) << (56 - bitCount);
+                bitCount += 8;
+            }
+        }
+    }
 
-        return baos.toByteArray();
+    /**
+     * Calcula os tamanhos dos códigos a partir da árvore de Huffman e limita-os a
+     * maxLength bits, mantendo a desigualdade de Kraft (soma de 2^-tamanho <= 1).
+     * Serve para qualquer alfabeto: o símbolo é o índice em freq (usado também pelo LZSS).
+     */
+    static int[] codeLengths(long[] freq, int maxLength) {
+        int[] lengths = new int[freq.length];
+        Node root = buildTree(freq);
+        if (root == null) return lengths;
+        if (root.isLeaf()) {
+            // Com um único símbolo a raiz é folha; usa-se um bit por ocorrência
+            lengths[root.data] = 1;
+            return lengths;
+        }
+        assignDepths(root, 0, lengths);
+
+        int maxDepth = 0;
+        for (int length : lengths) maxDepth = Math.max(maxDepth, length);
+        if (maxDepth <= maxLength) return lengths;
+
+        // Símbolos presentes, do menos para o mais frequente
+        List<Integer> simbolos = new ArrayList<>();
+        for (int s = 0; s < freq.length; s++) {
+            if (freq[s] > 0) simbolos.add(s);
+        }
+        simbolos.sort(Comparator.comparingLong(s -> freq[s]));
+
+        // Kraft em unidades de 2^-maxLength: a soma não pode passar de 2^maxLength
+        long capacidade = 1L << maxLength;
+        long kraft = 0;
+        for (int s : simbolos) {
+            lengths[s] = Math.min(lengths[s], maxLength);
+            kraft += 1L << (maxLength - lengths[s]);
+        }
+        // Alonga os códigos dos símbolos menos frequentes até caber
+        while (kraft > capacidade) {
+            for (int s : simbolos) {
+                if (lengths[s] < maxLength) {
+                    lengths[s]++;
+                    kraft -= 1L << (maxLength - lengths[s]);
+                    if (kraft <= capacidade) break;
+                }
+            }
+        }
+        // Usa a folga que sobrar para encurtar os códigos dos mais frequentes
+        for (int i = simbolos.size() - 1; i >= 0; i--) {
+            int s = simbolos.get(i);
+            while (lengths[s] > 1 && kraft + (1L << (maxLength - lengths[s])) <= capacidade) {
+                kraft += 1L << (maxLength - lengths[s]);
+                lengths[s]--;
+            }
+        }
+        return lengths;
+    }
+
+    /**
+     * Atribui os códigos canónicos: por ordem de tamanho e, dentro do mesmo tamanho, por símbolo.
+     */
+    static int[] canonicalCodes(int[] lengths, int maxLength) {
+        int[] count = new int[maxLength + 1];
+        for (int length : lengths) {
+            if (length > 0) count[length]++;
+        }
+        int[] next = new int[maxLength + 1];
+        int code = 0;
+        for (int bits = 1; bits <= maxLength; bits++) {
+            code = (code + count[bits - 1]) << 1;
+            next[bits] = code;
+        }
+
+        int[] codes = new int[lengths.length];
+        for (int s = 0; s < lengths.length; s++) {
+            if (lengths[s] > 0) {
+                codes[s] = next[lengths[s]]++;
+            }
+        }
+        return codes;
     }
 
-    private static void generateCodes(Node node, String code, Map<Byte, String> huffmanCodes) {
+    /**
+     * Tabela de descodificação: cada entrada indexada pelos próximos maxLength bits
+     * guarda (símbolo << 4 | tamanho do código).
+     */
+    static short[] decodeTable(int[] lengths, int maxLength) throws IOException {
+        if (lengths.length > (1 << 11) || maxLength > 15) {
+            throw new IllegalArgumentException("Alfabeto demasiado grande para a tabela.");
+        }
+        int[] codes = canonicalCodes(lengths, maxLength);
+        short[] table = new short[1 << maxLength];
+        int preenchidas = 0;
+        for (int s = 0; s < lengths.length; s++) {
+            int length = lengths[s];
+            if (length == 0) continue;
+            if (length > maxLength) throw new IOException("Tamanho de código Huffman inválido.");
+            int first = codes[s] << (maxLength - length);
+            int last = (codes[s] + 1) << (maxLength - length);
+            if (last > table.length) throw new IOException("Tabela de códigos Huffman inválida.");
+            Arrays.fill(table, first, last, (short) ((s << 4) | length));
+            preenchidas += last - first;
+        }
+        if (preenchidas == 0) throw new IOException("Tabela de códigos Huffman vazia.");
+        return table;
+    }
+
+    /**
+     * Tabela de pares: para cada janela de MAX_CODE_LENGTH bits, guarda o primeiro símbolo
+     * e, se o código seguinte também couber inteiro na janela, o segundo.
+     * Formato: [símbolo 1 (8 bits)][símbolo 2 (8 bits)][nº de símbolos (2 bits)][bits consumidos].
+     */
+    private static int[] pairTable(short[] table) {
+        int[] pairs = new int[TABLE_SIZE];
+        for (int janela = 0; janela < TABLE_SIZE; janela++) {
+            int first = table[janela];
+            int l1 = first & 0x0F;
+            if (l1 == 0) continue;
+            int second = table[(janela << l1) & (TABLE_SIZE - 1)];
+            int l2 = second & 0x0F;
+            if (l2 != 0 && l1 + l2 <= MAX_CODE_LENGTH) {
+                pairs[janela] = (first >>> 4) | ((second >>> 4) << 8) | (2 << 16) | ((l1 + l2) << 18);
+            } else {
+                pairs[janela] = (first >>> 4) | (1 << 16) | (l1 << 18);
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Constrói a árvore de Huffman a partir da tabela de frequências.
+     * @return A raiz, ou null se não houver símbolos.
+     */
+    private static Node buildTree(long[] freq) {
+        PriorityQueue<Node> queue = new PriorityQueue<>();
+        for (int s = 0; s < freq.length; s++) {
+            if (freq[s] > 0) {
+                queue.add(new Node(s, freq[s]));
+            }
+        }
+        while (queue.size() > 1) {
+            Node left = queue.poll();
+            Node right = queue.poll();
+            queue.add(new Node(left, right));
+        }
+        return queue.poll();
+    }
+
+    private static void assignDepths(Node node, int depth, int[] lengths) {
         if (node.isLeaf()) {
-            huffmanCodes.put(node.data, code);
+            lengths[node.data] = depth;
             return;
         }
-        generateCodes(node.left, code + "0", huffmanCodes);
-        generateCodes(node.right, code + "1", huffmanCodes);
+        assignDepths(node.left, depth + 1, lengths);
+        assignDepths(node.right, depth + 1, lengths);
     }
 
-    // A descompressão seria o processo inverso (ler frequências -> reconstruir árvore -> ler bits -> navegar na árvore)
-    // Como o foco do trabalho é a taxa de compressão, a compressão é a parte crítica.
-}
\ No newline at end of file
+    /**
+     * Descompressão do formato antigo: [nº de símbolos (int)] {[byte][frequência (int)]}
+     * [nº de bits (int)][nº de bytes (int)] e os bits, gravados com BitSet.toByteArray()
+     * (o bit i fica no byte i/8, a começar pelo menos significativo; os bytes a zero do
+     * fim são omitidos).
+     *
+     * O compressor antigo construía a árvore com uma PriorityQueue que só comparava as
+     * frequências, inserindo os símbolos pela ordem em que os gravou. Os empates dependem
+     * dessa ordem, por isso a árvore é reconstruída exatamente da mesma forma.
+     */
+    private static void decompressLegacy(InputStream in, OutputStream out) throws IOException {
+        DataInputStream dis = new DataInputStream(in);
+        BufferedOutputStream bos = new BufferedOutputStream(out, BUFFER_SIZE);
+
+        // Uma entrada vazia era gravada como zero bytes
+        int b0 = dis.read();
+        if (b0 < 0) return;
+        int symbolCount = (b0 << 24) | (dis.readUnsignedByte() << 16) | (dis.readUnsignedByte() << 8) | dis.readUnsignedByte();
+        if (symbolCount <= 0 || symbolCount > 256) {
+            throw new IOException("Cabeçalho Huffman inválido.");
+        }
+
+        PriorityQueue<Node> queue = new PriorityQueue<>();
+        long total = 0;
+        for (int i = 0; i < symbolCount; i++) {
+            int s = dis.readUnsignedByte();
+            int f = dis.readInt();
+            queue.add(new Node(s, f));
+            total += f;
+        }
+        int bitLength = dis.readInt();
+        int byteLength = dis.readInt();
+
+        while (queue.size() > 1) {
+            Node left = queue.poll();
+            Node right = queue.poll();
+            queue.add(new Node(left, right));
+        }
+        Node root = queue.poll();
+
+        if (root.isLeaf()) {
+            // Um só símbolo: o código tinha zero bits
+            for (long i = 0; i < total; i++) {
+                bos.write(root.data);
+            }
+            bos.flush();
+            return;
+        }
+
+        Node node = root;
+        int b = 0;
+        for (int i = 0; i < bitLength; i++) {
+            if ((i & 7) == 0) {
+                b = (i >>> 3) < byteLength ? dis.readUnsignedByte() : 0;
+            }
+            node = ((b >>> (i & 7)) & 1) == 0 ? node.left : node.right;
+            if (node.isLeaf()) {
+                bos.write(node.data);
+                node = root;
+            }
+        }
+        bos.flush();
+    }
+}
@@ -0,0 +1,606 @@
+package compressao;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+/**
+ * Backups incrementais por páginas.
+ *
+ * Cada ficheiro é visto como uma sequência de páginas de PAGE_SIZE bytes. Uma versão guarda
+ * apenas as páginas que mudaram desde a sua base (a versão anterior mais recente); a primeira
+ * versão, sem base, guarda todas. Cada versão tem dois ficheiros:
+ *  - backup_vN.manifest: a lista dos ficheiros (nome, tamanho, checksum do conteúdo) e, para
+ *    cada um, as páginas guardadas nesta versão com o seu checksum. As restantes páginas
+ *    mantêm o checksum e o conteúdo herdados da base.
+ *  - backup_vN.pages: o conteúdo das páginas guardadas, pela ordem do manifesto, num
+ *    contentor de blocos comprimido em paralelo (ver ParallelCompressor).
+ *
+ * O checksum de uma página junta CRC32C e CRC32 num long: uma alteração que passasse
+ * despercebida nunca mais seria copiada, por isso 32 bits não chegam.
+ *
+ * Formato do manifesto:
+ * [magic "INC" + versão][versão (int)][base (int)][tamanho da página (int)][nº de ficheiros (int)]
+ * {[nome (UTF)][tamanho (long)][CRC32C do conteúdo (long)][nº de páginas (int)]
+ *  [nº de páginas guardadas (int)] {[página (int)][checksum (long)]} } por ficheiro
+ * [CRC32 do manifesto (int)]
+ */
+public class IncrementalBackup {
+
+    public static final int PAGE_SIZE = 4096;
+    private static final byte[] MAGIC = {'I', 'N', 'C', 1};
+    private static final int NO_BASE = -1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Cadeias longas atrasam a reposição; a partir deste comprimento faz-se uma versão completa
+    private static final int MAX_CHAIN_LENGTH = 16;
+
+    private static final Pattern MANIFEST_NAME = Pattern.compile("backup_v(\\d+)\\.manifest");
+
+    /**
+     * Resumo de uma versão criada, para as estatísticas.
+     */
+    public static final class Result {
+        public final int version;
+        public final int base;
+        public final long originalSize;
+        public final long pagesScanned;
+        public final long pagesStored;
+        public final long backupSize;
+
+        Result(int version, int base, long originalSize, long pagesScanned, long pagesStored, long backupSize) {
+            this.version = version;
+            this.base = base;
+            this.originalSize = originalSize;
+            this.pagesScanned = pagesScanned;
+            this.pagesStored = pagesStored;
+            this.backupSize = backupSize;
+        }
+
+        public boolean isFull() {
+            return base == NO_BASE;
+        }
+    }
+
+    private static final class Manifest {
+        int version;
+        int base;
+        final List<FileEntry> files = new ArrayList<>();
+    }
+
+    private static final class FileEntry {
+        String name;
+        long size;
+        long checksum;
+        int pageCount;
+        int[] storedPages;
+        long[] storedChecksums;
+    }
+
+    /**
+     * Estado de um ficheiro numa versão: checksum de cada página e a versão que guarda o seu conteúdo.
+     */
+    private static final class FileState {
+        final long size;
+        final long[] checksums;
+        final int[] sources;
+
+        FileState(long size, int pageCount) {
+            this.size = size;
+            this.checksums = new long[pageCount];
+            this.sources = new int[pageCount];
+            Arrays.fill(sources, NO_BASE);
+        }
+    }
+
+    public static String manifestName(int version) {
+        return "backup_v" + version + ".manifest";
+    }
+
+    public static String pagesName(int version) {
+        return "backup_v" + version + ".pages";
+    }
+
+    // --- CRIAÇÃO ---
+
+    /**
+     * Cria a versão indicada, guardando apenas as páginas alteradas desde a versão anterior.
+     * @param version O número da nova versão; não pode existir.
+     * @param fileNames Os ficheiros a incluir; os que não existem são ignorados.
+     */
+    public static Result create(int version, String[] fileNames) throws IOException {
+        if (new File(manifestName(version)).exists()) {
+            throw new IOException("O backup incremental v" + version + " já existe.");
+        }
+
+        int base = findBase(version);
+        Map<String, FileState> baseState = (base == NO_BASE) ? Collections.emptyMap() : buildState(loadChain(base));
+
+        Manifest manifest = new Manifest();
+        manifest.version = version;
+        manifest.base = base;
+        List<File> files = new ArrayList<>();
+        long originalSize = 0;
+        for (String fileName : fileNames) {
+            File f = new File(fileName);
+            if (!f.exists()) continue;
+            FileEntry entry = new FileEntry();
+            entry.name = f.getName();
+            entry.size = f.length();
+            entry.pageCount = pageCount(entry.size);
+            manifest.files.add(entry);
+            files.add(f);
+            originalSize += entry.size;
+        }
+
+        // As páginas são lidas, comparadas e comprimidas numa só passagem; o manifesto,
+        // escrito no fim, é o que torna a versão visível
+        File pagesFile = new File(pagesName(version));
+        ChangedPagesStream changed = new ChangedPagesStream(files, manifest.files, baseState);
+        long payloadSize;
+        try (ParallelCompressor compressor = new ParallelCompressor();
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(pagesFile), BUFFER_SIZE)) {
+            payloadSize = compressor.compress(changed, BackupManager.CODECS, out).getCompressedSize();
+        } catch (IOException | RuntimeException e) {
+            pagesFile.delete();
+            throw e;
+        } finally {
+            changed.close();
+        }
+        long manifestSize = writeManifest(manifest);
+
+        return new Result(version, base, originalSize, changed.pagesScanned, changed.pagesStored, manifestSize + payloadSize);
+    }
+
+    /**
+     * Escolhe a base da nova versão: a versão anterior mais recente, desde que a sua
+     * cadeia esteja completa e não seja longa demais.
+     */
+    private static int findBase(int version) {
+        int base = NO_BASE;
+        String[] names = new File(".").list();
+        if (names == null) return NO_BASE;
+        for (String name : names) {
+            Matcher m = MANIFEST_NAME.matcher(name);
+            if (m.matches()) {
+                try {
+                    int v = Integer.parseInt(m.group(1));
+                    if (v < version && v > base) base = v;
+                } catch (NumberFormatException ignored) {
+                    // Número fora do intervalo de int: não é uma versão nossa
+                }
+            }
+        }
+        if (base == NO_BASE) return NO_BASE;
+
+        try {
+            if (loadChain(base).size() >= MAX_CHAIN_LENGTH) return NO_BASE;
+        } catch (IOException e) {
+            System.out.println("Cadeia do backup v" + base + " inválida (" + e.getMessage() + "); será feita uma versão completa.");
+            return NO_BASE;
+        }
+        return base;
+    }
+
+    /**
+     * Percorre as páginas de todos os ficheiros, calcula os checksums e devolve apenas
+     * o conteúdo das páginas que diferem da base.
+     */
+    private static final class ChangedPagesStream extends InputStream {
+        private final List<File> files;
+        private final List<FileEntry> entries;
+        private final Map<String, FileState> baseState;
+
+        private final byte[] page = new byte[PAGE_SIZE];
+        private int pagePos, pageLen;
+
+        private final CRC32C pageCrc32c = new CRC32C();
+        private final CRC32 pageCrc32 = new CRC32();
+        private final CRC32C fileCrc = new CRC32C();
+
+        private int nextFile;
+        private InputStream current;
+        private FileEntry entry;
+        private FileState previous;
+        private int nextPage;
+        private final List<Integer> storedPages = new ArrayList<>();
+        private final List<Long> storedChecksums = new ArrayList<>();
+
+        long pagesScanned, pagesStored;
+
+        ChangedPagesStream(List<File> files, List<FileEntry> entries, Map<String, FileState> baseState) {
+            this.files = files;
+            this.entries = entries;
+            this.baseState = baseState;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return (read(one, 0, 1) < 0) ? -1 : (one[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (pagePos == pageLen) {
+                if (!nextChangedPage()) return -1;
+            }
+            int n = Math.min(len, pageLen - pagePos);
+            System.arraycopy(page, pagePos, b, off, n);
+            pagePos += n;
+            return n;
+        }
+
+        private boolean nextChangedPage() throws IOException {
+            while (true) {
+                if (current == null) {
+                    if (nextFile == files.size()) return false;
+                    entry = entries.get(nextFile);
+                    previous = baseState.get(entry.name);
+                    current = new BufferedInputStream(new FileInputStream(files.get(nextFile)), BUFFER_SIZE);
+                    nextFile++;
+                    nextPage = 0;
+                    fileCrc.reset();
+                    storedPages.clear();
+                    storedChecksums.clear();
+                }
+                if (nextPage == entry.pageCount) {
+                    finishFile();
+                    continue;
+                }
+
+                int length = pageLength(entry.size, nextPage);
+                if (current.readNBytes(page, 0, length) < length) {
+                    throw new IOException("O ficheiro " + entry.name + " diminuiu durante o backup.");
+                }
+                fileCrc.update(page, 0, length);
+                long checksum = pageChecksum(length);
+                int index = nextPage++;
+                pagesScanned++;
+
+                boolean changed = previous == null
+                        || index >= previous.checksums.length
+                        || previous.checksums[index] != checksum
+                        || pageLength(previous.size, index) != length;
+                if (changed) {
+                    storedPages.add(index);
+                    storedChecksums.add(checksum);
+                    pagesStored++;
+                    pagePos = 0;
+                    pageLen = length;
+                    return true;
+                }
+            }
+        }
+
+        private void finishFile() throws IOException {
+            entry.checksum = fileCrc.getValue();
+            entry.storedPages = new int[storedPages.size()];
+            entry.storedChecksums = new long[storedPages.size()];
+            for (int i = 0; i < storedPages.size(); i++) {
+                entry.storedPages[i] = storedPages.get(i);
+                entry.storedChecksums[i] = storedChecksums.get(i);
+            }
+            current.close();
+            current = null;
+        }
+
+        private long pageChecksum(int length) {
+            pageCrc32c.reset();
+            pageCrc32c.update(page, 0, length);
+            pageCrc32.reset();
+            pageCrc32.update(page, 0, length);
+            return (pageCrc32c.getValue() << 32) | pageCrc32.getValue();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+    }
+
+    // --- REPOSIÇÃO ---
+
+    /**
+     * Reconstrói todos os ficheiros de uma versão, aplicando a cadeia desde a versão completa.
+     * @param version A versão a repor.
+     * @param targetDir A pasta onde os ficheiros são escritos.
+     */
+    public static List<String> restore(int version, File targetDir) throws IOException {
+        return restore(version, targetDir, name -> true);
+    }
+
+    /**
+     * Reconstrói os ficheiros escolhidos de uma versão, aplicando a cadeia desde a versão
+     * completa. Cada página é escrita uma única vez, a partir da versão mais recente que a
+     * guarda, e o conteúdo final de cada ficheiro é comparado com o checksum do manifesto.
+     * @param version A versão a repor.
+     * @param targetDir A pasta onde os ficheiros são escritos.
+     * @param filter Os nomes dos ficheiros a repor.
+     * @return Os nomes dos ficheiros repostos.
+     */
+    public static List<String> restore(int version, File targetDir, Predicate<String> filter) throws IOException {
+        List<Manifest> chain = loadChain(version);
+        Map<String, FileState> state = buildState(chain);
+        List<FileEntry> selected = new ArrayList<>();
+        for (FileEntry entry : chain.get(chain.size() - 1).files) {
+            if (filter.test(entry.name)) selected.add(entry);
+        }
+
+        if (!targetDir.isDirectory() && !targetDir.mkdirs()) {
+            throw new IOException("Não foi possível criar a pasta " + targetDir + ".");
+        }
+
+        Map<String, RandomAccessFile> outputs = new HashMap<>();
+        try (ParallelCompressor compressor = new ParallelCompressor()) {
+            for (FileEntry entry : selected) {
+                RandomAccessFile raf = new RandomAccessFile(new File(targetDir, entry.name), "rw");
+                outputs.put(entry.name, raf);
+                raf.setLength(0);
+            }
+            for (Manifest m : chain) {
+                PageWriter writer = new PageWriter(m, state, outputs);
+                if (writer.isEmpty()) continue;
+                compressor.decompress(new File(pagesName(m.version)), writer);
+                writer.finish();
+            }
+            for (FileEntry entry : selected) {
+                outputs.get(entry.name).setLength(entry.size);
+            }
+        } finally {
+            for (RandomAccessFile raf : outputs.values()) {
+                raf.close();
+            }
+        }
+
+        List<String> restored = new ArrayList<>();
+        for (FileEntry entry : selected) {
+            if (fileChecksum(new File(targetDir, entry.name)) != entry.checksum) {
+                throw new IOException("O ficheiro " + entry.name + " reposto não corresponde ao checksum do backup v" + version + ".");
+            }
+            restored.add(entry.name);
+        }
+        return restored;
+    }
+
+    /**
+     * Distribui o conteúdo descomprimido de uma versão pelas páginas dos ficheiros. As
+     * páginas que uma versão mais recente volta a guardar são lidas mas não escritas.
+     */
+    private static final class PageWriter extends OutputStream {
+        private final List<RandomAccessFile> targets = new ArrayList<>();
+        private final List<Long> positions = new ArrayList<>();
+        private final List<Integer> lengths = new ArrayList<>();
+        private int segment;
+        private int segmentPos;
+        private boolean useful;
+
+        PageWriter(Manifest m, Map<String, FileState> state, Map<String, RandomAccessFile> outputs) {
+            for (FileEntry entry : m.files) {
+                FileState s = state.get(entry.name);
+                for (int page : entry.storedPages) {
+                    boolean current = s != null && page < s.sources.length && s.sources[page] == m.version
+                            && outputs.containsKey(entry.name);
+                    targets.add(current ? outputs.get(entry.name) : null);
+                    positions.add((long) page * PAGE_SIZE);
+                    lengths.add(pageLength(entry.size, page));
+                    useful |= current;
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return !useful;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (segment == lengths.size()) {
+                    throw new IOException("O conteúdo do backup excede as páginas do manifesto.");
+                }
+                int n = Math.min(len, lengths.get(segment) - segmentPos);
+                RandomAccessFile raf = targets.get(segment);
+                if (raf != null) {
+                    raf.seek(positions.get(segment) + segmentPos);
+                    raf.write(b, off, n);
+                }
+                off += n;
+                len -= n;
+                segmentPos += n;
+                if (segmentPos == lengths.get(segment)) {
+                    segment++;
+                    segmentPos = 0;
+                }
+            }
+        }
+
+        void finish() throws IOException {
+            if (segment != lengths.size()) {
+                throw new IOException("O conteúdo do backup tem menos páginas do que o manifesto.");
+            }
+        }
+    }
+
+    /**
+     * Calcula o estado final da cadeia: para cada ficheiro da última versão, o checksum de
+     * cada página e a versão que guarda o seu conteúdo mais recente.
+     */
+    private static Map<String, FileState> buildState(List<Manifest> chain) throws IOException {
+        Map<String, FileState> state = new LinkedHashMap<>();
+        for (Manifest m : chain) {
+            Map<String, FileState> next = new LinkedHashMap<>();
+            for (FileEntry entry : m.files) {
+                FileState s = new FileState(entry.size, entry.pageCount);
+                FileState old = state.get(entry.name);
+                if (old != null) {
+                    int herdadas = Math.min(old.checksums.length, entry.pageCount);
+                    System.arraycopy(old.checksums, 0, s.checksums, 0, herdadas);
+                    System.arraycopy(old.sources, 0, s.sources, 0, herdadas);
+                }
+                for (int i = 0; i < entry.storedPages.length; i++) {
+                    s.checksums[entry.storedPages[i]] = entry.storedChecksums[i];
+                    s.sources[entry.storedPages[i]] = m.version;
+                }
+                for (int source : s.sources) {
+                    if (source == NO_BASE) {
+                        throw new IOException("O backup v" + m.version + " não tem todas as páginas de " + entry.name + ".");
+                    }
+                }
+                next.put(entry.name, s);
+            }
+            state = next;
+        }
+        return state;
+    }
+
+    /**
+     * Carrega os manifestos da cadeia de uma versão, da versão completa até ela.
+     */
+    private static List<Manifest> loadChain(int version) throws IOException {
+        LinkedList<Manifest> chain = new LinkedList<>();
+        int v = version;
+        while (v != NO_BASE) {
+            Manifest m = readManifest(v);
+            if (m.base != NO_BASE && m.base >= m.version) {
+                throw new IOException("O backup v" + v + " tem uma base inválida: v" + m.base + ".");
+            }
+            if (!new File(pagesName(v)).exists()) {
+                throw new IOException("Falta o ficheiro " + pagesName(v) + ".");
+            }
+            chain.addFirst(m);
+            v = m.base;
+        }
+        return chain;
+    }
+
+    // --- MANIFESTO ---
+
+    private static long writeManifest(Manifest m) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.write(MAGIC);
+        dos.writeInt(m.version);
+        dos.writeInt(m.base);
+        dos.writeInt(PAGE_SIZE);
+        dos.writeInt(m.files.size());
+        for (FileEntry entry : m.files) {
+            dos.writeUTF(entry.name);
+            dos.writeLong(entry.size);
+            dos.writeLong(entry.checksum);
+            dos.writeInt(entry.pageCount);
+            dos.writeInt(entry.storedPages.length);
+            for (int i = 0; i < entry.storedPages.length; i++) {
+                dos.writeInt(entry.storedPages[i]);
+                dos.writeLong(entry.storedChecksums[i]);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(baos.toByteArray());
+        dos.writeInt((int) crc.getValue());
+        dos.flush();
+
+        // Escreve num temporário e renomeia, para nunca deixar um manifesto incompleto
+        File target = new File(manifestName(m.version));
+        File tmp = new File(target.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            baos.writeTo(out);
+            out.getFD().sync();
+        }
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return baos.size();
+    }
+
+    private static Manifest readManifest(int version) throws IOException {
+        File file = new File(manifestName(version));
+        if (!file.exists()) {
+            throw new FileNotFoundException("O backup incremental v" + version + " não existe.");
+        }
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        if (bytes.length < MAGIC.length + 4 * 4 + 4
+                || !Arrays.equals(Arrays.copyOf(bytes, MAGIC.length), MAGIC)) {
+            throw new IOException(file.getName() + " não é um manifesto de backup.");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes));
+        dis.skipBytes(bytes.length - 4);
+        if (dis.readInt() != (int) crc.getValue()) {
+            throw new IOException(file.getName() + " está corrompido.");
+        }
+
+        dis = new DataInputStream(new ByteArrayInputStream(bytes, MAGIC.length, bytes.length - MAGIC.length - 4));
+        Manifest m = new Manifest();
+        m.version = dis.readInt();
+        m.base = dis.readInt();
+        int pageSize = dis.readInt();
+        if (m.version != version || pageSize != PAGE_SIZE) {
+            throw new IOException(file.getName() + " não corresponde à versão ou ao tamanho de página esperados.");
+        }
+        int fileCount = dis.readInt();
+        for (int f = 0; f < fileCount; f++) {
+            FileEntry entry = new FileEntry();
+            entry.name = dis.readUTF();
+            entry.size = dis.readLong();
+            entry.checksum = dis.readLong();
+            entry.pageCount = dis.readInt();
+            int stored = dis.readInt();
+            if (entry.pageCount != pageCount(entry.size) || stored < 0 || stored > entry.pageCount) {
+                throw new IOException(file.getName() + " tem uma entrada inválida para " + entry.name + ".");
+            }
+            entry.storedPages = new int[stored];
+            entry.storedChecksums = new long[stored];
+            for (int i = 0; i < stored; i++) {
+                entry.storedPages[i] = dis.readInt();
+                entry.storedChecksums[i] = dis.readLong();
+                if (entry.storedPages[i] < 0 || entry.storedPages[i] >= entry.pageCount) {
+                    throw new IOException(file.getName() + " refere uma página inexistente de " + entry.name + ".");
+                }
+            }
+            m.files.add(entry);
+        }
+        return m;
+    }
+
+    // --- AUXILIARES ---
+
+    private static int pageCount(long size) {
+        return (int) ((size + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+
+    private static int pageLength(long size, int page) {
+        return (int) Math.min(PAGE_SIZE, size - (long) page * PAGE_SIZE);
+    }
+
+    private static long fileChecksum(File file) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,587 @@
+package compressao;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Compressão LZSS com codificação de Huffman, no estilo do DEFLATE.
+ *
+ * O compressor procura, numa janela deslizante de WINDOW_SIZE bytes, a maior repetição
+ * do texto que vem a seguir. As posições anteriores estão em cadeias de hash indexadas
+ * pelos 3 primeiros bytes, por isso a procura só visita posições que podem dar uma
+ * repetição. Cada repetição vira um par (comprimento, distância); o que não se repete
+ * fica como literal. Nos níveis mais altos a escolha é "preguiçosa": antes de aceitar
+ * uma repetição, vê se a que começa no byte seguinte é maior.
+ *
+ * Os literais e comprimentos partilham um alfabeto e as distâncias têm outro, como no
+ * DEFLATE (códigos base mais bits extra). Cada bloco de BLOCK_TOKENS símbolos tem os
+ * seus próprios códigos de Huffman canónicos, por isso acompanham as mudanças dos dados.
+ * A compressão e a descompressão trabalham em fluxo, com memória fixa.
+ *
+ * Formato: [magic "LZH" + versão] e depois os blocos, do bit mais significativo para o
+ * menos significativo. Cada bloco: [último (1 bit)][tamanhos dos códigos][símbolos][fim de
+ * bloco]. Os tamanhos são 4 bits por símbolo; um 0 é seguido de 4 bits com o nº de
+ * zeros seguintes (até 16 de uma vez).
+ */
+public class LZSS {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] MAGIC = {'L', 'Z', 'H', 1};
+
+    static final int WINDOW_SIZE = 32 * 1024;
+    private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+    private static final int MIN_MATCH = 3;
+    private static final int MAX_MATCH = 258;
+    // Bytes que têm de estar à frente da posição atual para procurar uma repetição completa
+    private static final int MIN_LOOKAHEAD = MAX_MATCH + MIN_MATCH + 1;
+    // Uma repetição mínima muito longe custa mais bits do que os três literais
+    private static final int TOO_FAR = 4096;
+
+    private static final int HASH_BITS = 15;
+    private static final int HASH_SIZE = 1 << HASH_BITS;
+
+    private static final int BLOCK_TOKENS = 32 * 1024;
+    private static final int MAX_CODE_LENGTH = 15;
+
+    // Alfabeto de literais e comprimentos: 0-255 literais, 256 fim de bloco, 257-285 comprimentos
+    private static final int END_OF_BLOCK = 256;
+    private static final int LITLEN_SYMBOLS = 286;
+    private static final int DIST_SYMBOLS = 30;
+
+    private static final int[] LENGTH_BASE = {
+            3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+            35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final int[] LENGTH_EXTRA = {
+            0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+            3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+    private static final int[] DIST_BASE = {
+            1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+            257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+    private static final int[] DIST_EXTRA = {
+            0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+            7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+
+    // Código de cada comprimento (menos MIN_MATCH) e de cada distância (menos 1)
+    private static final byte[] LENGTH_CODE = new byte[MAX_MATCH - MIN_MATCH + 1];
+    private static final byte[] DIST_CODE = new byte[WINDOW_SIZE];
+
+    static {
+        for (int code = 0; code < LENGTH_BASE.length; code++) {
+            for (int len = LENGTH_BASE[code]; len < LENGTH_BASE[code] + (1 << LENGTH_EXTRA[code]) && len <= MAX_MATCH; len++) {
+                LENGTH_CODE[len - MIN_MATCH] = (byte) code;
+            }
+        }
+        for (int code = 0; code < DIST_BASE.length; code++) {
+            for (int d = DIST_BASE[code]; d < DIST_BASE[code] + (1 << DIST_EXTRA[code]); d++) {
+                DIST_CODE[d - 1] = (byte) code;
+            }
+        }
+    }
+
+    /**
+     * Parâmetros de cada nível (os mesmos do zlib):
+     * - bom: a partir deste comprimento, a procura seguinte visita só 1/4 da cadeia;
+     * - preguiça: nos níveis preguiçosos, a partir deste comprimento não se procura no byte
+     *   seguinte; nos outros, as repetições maiores não entram nas cadeias (só a primeira posição);
+     * - suficiente: a partir deste comprimento a procura pára;
+     * - cadeia: quantas posições visitar, no máximo, por procura.
+     */
+    private static final int[][] LEVELS = {
+            // {bom, preguiça, suficiente, cadeia, preguiçoso}
+            {0, 0, 0, 0, 0},        // 0: não usado
+            {4, 4, 8, 4, 0},
+            {4, 5, 16, 8, 0},
+            {4, 6, 32, 32, 0},
+            {4, 4, 16, 16, 1},
+            {8, 16, 32, 32, 1},
+            {8, 16, 128, 128, 1},
+            {8, 32, 128, 256, 1},
+            {32, 128, 258, 1024, 1},
+            {32, 258, 258, 4096, 1},
+    };
+    public static final int MIN_LEVEL = 1;
+    public static final int MAX_LEVEL = 9;
+    public static final int DEFAULT_LEVEL = 6;
+
+    /**
+     * Comprime um array de bytes no nível por omissão.
+     */
+    public static byte[] compress(byte[] input) throws IOException {
+        return compress(input, DEFAULT_LEVEL);
+    }
+
+    public static byte[] compress(byte[] input, int level) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(input.length / 2 + 64);
+        compress(new ByteArrayInputStream(input), baos, level);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Comprime o fluxo de entrada, escrevendo cada bloco assim que fica completo.
+     * @param in A entrada, lida em partes.
+     * @param out A saída.
+     * @param level De MIN_LEVEL (mais rápido) a MAX_LEVEL (comprime mais).
+     */
+    public static void compress(InputStream in, OutputStream out, int level) throws IOException {
+        if (level < MIN_LEVEL || level > MAX_LEVEL) {
+            throw new IllegalArgumentException("Nível de compressão inválido: " + level);
+        }
+        out.write(MAGIC);
+        new Encoder(in, out, LEVELS[level]).encode();
+    }
+
+    // --- COMPRESSÃO ---
+
+    /**
+     * Estado do compressor: janela, cadeias de hash, símbolos do bloco atual e escrita de bits.
+     */
+    private static final class Encoder {
+        private final InputStream in;
+        private final BitWriter bits;
+        private final int goodLength;
+        private final int maxLazy;
+        private final int niceLength;
+        private final int maxChain;
+        private final boolean lazy;
+
+        // Janela de 2 × WINDOW_SIZE: quando a posição chega perto do fim, a metade de cima
+        // passa para baixo e as posições guardadas nas cadeias descem WINDOW_SIZE
+        private final byte[] window = new byte[2 * WINDOW_SIZE];
+        private int pos;        // Próximo byte a codificar
+        private int end;        // Fim dos bytes válidos na janela
+        private boolean eof;
+        private final int[] head = new int[HASH_SIZE];
+        private final int[] prev = new int[WINDOW_SIZE];
+
+        // Símbolos do bloco: literal (0-255) ou 1 << 31 | (comprimento - 3) << 16 | (distância - 1)
+        private final int[] tokens = new int[BLOCK_TOKENS];
+        private int tokenCount;
+        private final long[] litlenFreq = new long[LITLEN_SYMBOLS];
+        private final long[] distFreq = new long[DIST_SYMBOLS];
+
+        private int matchDistance;
+
+        Encoder(InputStream in, OutputStream out, int[] level) {
+            this.in = in;
+            this.bits = new BitWriter(out);
+            this.goodLength = level[0];
+            this.maxLazy = level[1];
+            this.niceLength = level[2];
+            this.maxChain = level[3];
+            this.lazy = level[4] != 0;
+            Arrays.fill(head, -1);
+        }
+
+        void encode() throws IOException {
+            if (lazy) {
+                encodeLazy();
+            } else {
+                encodeGreedy();
+            }
+            writeBlock(true);
+            bits.finish();
+        }
+
+        private void encodeGreedy() throws IOException {
+            while (true) {
+                fill();
+                if (pos == end) return;
+                int candidate = insert(pos);
+                int length = 0;
+                if (candidate >= 0) {
+                    length = longestMatch(candidate, MIN_MATCH - 1);
+                }
+                if (length >= MIN_MATCH) {
+                    addMatch(length, matchDistance);
+                    int fim = pos + length;
+                    if (length <= maxLazy) {
+                        for (pos++; pos < fim; pos++) {
+                            insert(pos);
+                        }
+                    }
+                    pos = fim;
+                } else {
+                    addLiteral(window[pos++]);
+                }
+            }
+        }
+
+        /**
+         * Escolha preguiçosa: a repetição encontrada numa posição só é emitida se a da
+         * posição seguinte não for maior; se for, a primeira posição vai como literal.
+         */
+        private void encodeLazy() throws IOException {
+            int prevLength = MIN_MATCH - 1;
+            int prevDistance = 0;
+            boolean pendente = false; // O byte em pos - 1 ainda não foi emitido
+
+            while (true) {
+                fill();
+                if (pos == end) break;
+                int candidate = insert(pos);
+                int length = MIN_MATCH - 1;
+                int distance = 0;
+                if (candidate >= 0 && prevLength < maxLazy) {
+                    length = longestMatch(candidate, prevLength);
+                    distance = matchDistance;
+                }
+
+                if (prevLength >= MIN_MATCH && length <= prevLength) {
+                    // A repetição anterior, que começa em pos - 1, ganha
+                    addMatch(prevLength, prevDistance);
+                    int fim = pos - 1 + prevLength;
+                    for (pos++; pos < fim; pos++) {
+                        insert(pos);
+                    }
+                    pendente = false;
+                    prevLength = MIN_MATCH - 1;
+                } else {
+                    if (pendente) {
+                        addLiteral(window[pos - 1]);
+                    }
+                    pendente = true;
+                    prevLength = length;
+                    prevDistance = distance;
+                    pos++;
+                }
+            }
+            if (pendente) {
+                addLiteral(window[pos - 1]);
+            }
+        }
+
+        /**
+         * Garante pelo menos MIN_LOOKAHEAD bytes à frente de pos (ou o fim da entrada),
+         * deslizando a janela quando necessário.
+         */
+        private void fill() throws IOException {
+            if (eof || end - pos >= MIN_LOOKAHEAD) return;
+            if (pos >= 2 * WINDOW_SIZE - MIN_LOOKAHEAD) {
+                System.arraycopy(window, WINDOW_SIZE, window, 0, end - WINDOW_SIZE);
+                pos -= WINDOW_SIZE;
+                end -= WINDOW_SIZE;
+                slide(head);
+                slide(prev);
+            }
+            while (end < window.length) {
+                int n = in.read(window, end, window.length - end);
+                if (n < 0) {
+                    eof = true;
+                    return;
+                }
+                end += n;
+            }
+        }
+
+        private static void slide(int[] positions) {
+            for (int i = 0; i < positions.length; i++) {
+                int p = positions[i];
+                positions[i] = (p >= WINDOW_SIZE) ? p - WINDOW_SIZE : -1;
+            }
+        }
+
+        /**
+         * Acrescenta a posição à cadeia do seu hash.
+         * @return A posição anterior com o mesmo hash, ou -1.
+         */
+        private int insert(int p) {
+            if (end - p < MIN_MATCH) return -1;
+            int key = ((window[p] & 0xFF) << 16) | ((window[p + 1] & 0xFF) << 8) | (window[p + 2] & 0xFF);
+            int h = (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+            int anterior = head[h];
+            prev[p & WINDOW_MASK] = anterior;
+            head[h] = p;
+            return anterior;
+        }
+
+        /**
+         * Percorre a cadeia à procura da maior repetição do texto em pos.
+         * @param best O comprimento a ultrapassar.
+         * @return O comprimento encontrado (best se nenhum for maior); a distância fica em matchDistance.
+         */
+        private int longestMatch(int candidate, int best) {
+            int limit = Math.max(pos - WINDOW_SIZE, -1);
+            int maxLength = Math.min(MAX_MATCH, end - pos);
+            if (maxLength < MIN_MATCH) return MIN_MATCH - 1;
+            int chain = (best >= goodLength) ? maxChain >> 2 : maxChain;
+            int bestDistance = 0;
+            int inicial = best;
+
+            while (candidate > limit && chain-- > 0) {
+                if (best < maxLength
+                        && window[candidate + best] == window[pos + best]
+                        && window[candidate] == window[pos]
+                        && window[candidate + 1] == window[pos + 1]) {
+                    int length = Arrays.mismatch(window, candidate + 2, candidate + maxLength,
+                            window, pos + 2, pos + maxLength);
+                    length = (length < 0) ? maxLength : length + 2;
+                    if (length > best) {
+                        best = length;
+                        bestDistance = pos - candidate;
+                        if (length >= niceLength || length == maxLength) break;
+                    }
+                }
+                int seguinte = prev[candidate & WINDOW_MASK];
+                // A ranhura pode já ter sido reutilizada por uma posição mais recente
+                if (seguinte >= candidate) break;
+                candidate = seguinte;
+            }
+            if (bestDistance == 0 || (best == MIN_MATCH && bestDistance > TOO_FAR)) {
+                return (inicial >= MIN_MATCH) ? inicial : MIN_MATCH - 1;
+            }
+            matchDistance = bestDistance;
+            return best;
+        }
+
+        private void addLiteral(byte b) throws IOException {
+            tokens[tokenCount++] = b & 0xFF;
+            litlenFreq[b & 0xFF]++;
+            if (tokenCount == BLOCK_TOKENS) writeBlock(false);
+        }
+
+        private void addMatch(int length, int distance) throws IOException {
+            tokens[tokenCount++] = (1 << 31) | ((length - MIN_MATCH) << 16) | (distance - 1);
+            litlenFreq[257 + LENGTH_CODE[length - MIN_MATCH]]++;
+            distFreq[DIST_CODE[distance - 1]]++;
+            if (tokenCount == BLOCK_TOKENS) writeBlock(false);
+        }
+
+        /**
+         * Escreve o bloco atual com os seus códigos de Huffman e começa outro.
+         */
+        private void writeBlock(boolean last) throws IOException {
+            litlenFreq[END_OF_BLOCK]++;
+            int[] litlenLengths = Huffman.codeLengths(litlenFreq, MAX_CODE_LENGTH);
+            int[] distLengths = Huffman.codeLengths(distFreq, MAX_CODE_LENGTH);
+            int[] litlenCodes = Huffman.canonicalCodes(litlenLengths, MAX_CODE_LENGTH);
+            int[] distCodes = Huffman.canonicalCodes(distLengths, MAX_CODE_LENGTH);
+
+            bits.write(last ? 1 : 0, 1);
+            writeLengths(litlenLengths);
+            writeLengths(distLengths);
+
+            for (int i = 0; i < tokenCount; i++) {
+                int t = tokens[i];
+                if (t >= 0) {
+                    bits.write(litlenCodes[t], litlenLengths[t]);
+                    continue;
+                }
+                int length = ((t >>> 16) & 0xFF) + MIN_MATCH;
+                int distance = (t & 0xFFFF) + 1;
+                int lc = LENGTH_CODE[length - MIN_MATCH];
+                bits.write(litlenCodes[257 + lc], litlenLengths[257 + lc]);
+                bits.write(length - LENGTH_BASE[lc], LENGTH_EXTRA[lc]);
+                int dc = DIST_CODE[distance - 1];
+                bits.write(distCodes[dc], distLengths[dc]);
+                bits.write(distance - DIST_BASE[dc], DIST_EXTRA[dc]);
+            }
+            bits.write(litlenCodes[END_OF_BLOCK], litlenLengths[END_OF_BLOCK]);
+
+            tokenCount = 0;
+            Arrays.fill(litlenFreq, 0);
+            Arrays.fill(distFreq, 0);
+        }
+
+        private void writeLengths(int[] lengths) throws IOException {
+            for (int s = 0; s < lengths.length; ) {
+                bits.write(lengths[s], 4);
+                if (lengths[s] != 0) {
+                    s++;
+                    continue;
+                }
+                int zeros = 1;
+                while (zeros < 16 && s + zeros < lengths.length && lengths[s + zeros] == 0) {
+                    zeros++;
+                }
+                bits.write(zeros - 1, 4); // Zeros seguintes, além deste
+                s += zeros;
+            }
+        }
+    }
+
+    /**
+     * Escrita de bits, do mais significativo para o menos significativo.
+     */
+    private static final class BitWriter {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int count;
+        private long bitBuffer;
+        private int bitCount;
+
+        BitWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        void write(int value, int n) throws IOException {
+            bitBuffer = (bitBuffer << n) | value;
+            bitCount += n;
+            while (bitCount >= 8) {
+                bitCount -= 8;
+                if (count == buffer.length) {
+                    out.write(buffer, 0, count);
+                    count = 0;
+                }
+                buffer[count++] = (byte) (bitBuffer >>> bitCount);
+            }
+        }
+
+        void finish() throws IOException {
+            if (bitCount > 0) {
+                write(0, 8 - bitCount);
+            }
+            out.write(buffer, 0, count);
+            out.flush();
+        }
+    }
+
+    // --- DESCOMPRESSÃO ---
+
+    public static byte[] decompress(byte[] input) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(input.length * 3);
+        decompress(new ByteArrayInputStream(input), baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Descomprime o fluxo, escrevendo os bytes à medida que são reconstruídos. Só os
+     * últimos WINDOW_SIZE bytes ficam em memória, para as repetições.
+     * @param in A entrada comprimida.
+     * @param out A saída.
+     */
+    public static void decompress(InputStream in, OutputStream out) throws IOException {
+        byte[] magic = in.readNBytes(MAGIC.length);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("O fluxo não está no formato LZSS.");
+        }
+        BitReader bits = new BitReader(in);
+
+        // Histórico: a saída acumula-se depois da janela e é escrita quando enche
+        byte[] hist = new byte[WINDOW_SIZE + BUFFER_SIZE];
+        int hp = 0;
+        int written = 0; // Até onde o histórico já foi escrito
+
+        boolean last = false;
+        while (!last) {
+            last = bits.read(1) == 1;
+            int[] litlenLengths = readLengths(bits, LITLEN_SYMBOLS);
+            int[] distLengths = readLengths(bits, DIST_SYMBOLS);
+            short[] litlenTable = Huffman.decodeTable(litlenLengths, MAX_CODE_LENGTH);
+            short[] distTable = hasCodes(distLengths) ? Huffman.decodeTable(distLengths, MAX_CODE_LENGTH) : null;
+
+            while (true) {
+                if (hp + MAX_MATCH > hist.length) {
+                    out.write(hist, written, hp - written);
+                    System.arraycopy(hist, hp - WINDOW_SIZE, hist, 0, WINDOW_SIZE);
+                    hp = WINDOW_SIZE;
+                    written = WINDOW_SIZE;
+                }
+                int symbol = bits.decode(litlenTable);
+                if (symbol < 256) {
+                    hist[hp++] = (byte) symbol;
+                    continue;
+                }
+                if (symbol == END_OF_BLOCK) break;
+
+                int lc = symbol - 257;
+                if (lc >= LENGTH_BASE.length || distTable == null) {
+                    throw new IOException("Símbolo LZSS inválido: " + symbol);
+                }
+                int length = LENGTH_BASE[lc] + bits.read(LENGTH_EXTRA[lc]);
+                int dc = bits.decode(distTable);
+                if (dc >= DIST_BASE.length) throw new IOException("Distância LZSS inválida.");
+                int distance = DIST_BASE[dc] + bits.read(DIST_EXTRA[dc]);
+                if (distance > hp || distance > WINDOW_SIZE) {
+                    throw new IOException("Distância LZSS fora da janela: " + distance);
+                }
+                int from = hp - distance;
+                if (distance >= length) {
+                    System.arraycopy(hist, from, hist, hp, length);
+                    hp += length;
+                } else {
+                    // Sobreposição: cada byte copiado pode ser a origem do seguinte
+                    for (int i = 0; i < length; i++) {
+                        hist[hp++] = hist[from + i];
+                    }
+                }
+            }
+        }
+        out.write(hist, written, hp - written);
+        out.flush();
+    }
+
+    private static boolean hasCodes(int[] lengths) {
+        for (int length : lengths) {
+            if (length != 0) return true;
+        }
+        return false;
+    }
+
+    private static int[] readLengths(BitReader bits, int n) throws IOException {
+        int[] lengths = new int[n];
+        for (int s = 0; s < n; ) {
+            int length = bits.read(4);
+            if (length != 0) {
+                lengths[s++] = length;
+                continue;
+            }
+            s += 1 + bits.read(4);
+            if (s > n) throw new IOException("Tabela de códigos LZSS inválida.");
+        }
+        return lengths;
+    }
+
+    /**
+     * Leitura de bits, do mais significativo para o menos significativo, com um buffer
+     * de 64 bits alinhado à esquerda.
+     */
+    private static final class BitReader {
+        private final InputStream in;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int pos, limit;
+        private long bitBuffer;
+        private int bitCount;
+        private int padding;
+
+        BitReader(InputStream in) {
+            this.in = in;
+        }
+
+        private void refill() throws IOException {
+            while (bitCount <= 56) {
+                if (pos == limit) {
+                    limit = in.read(buffer);
+                    pos = 0;
+                    if (limit <= 0) {
+                        // Depois do fim só há bits de enchimento; muitos indicam truncamento
+                        limit = 0;
+                        if (++padding > 2 * Long.BYTES) throw new EOFException("Fluxo LZSS truncado.");
+                        bitCount += 8;
+                        continue;
+                    }
+                }
+                bitBuffer |= (long) (buffer[pos++] & 0xFF) << (56 - bitCount);
+                bitCount += 8;
+            }
+        }
+
+        int read(int n) throws IOException {
+            if (n == 0) return 0;
+            if (bitCount < n) refill();
+            int value = (int) (bitBuffer >>> (64 - n));
+            bitBuffer <<= n;
+            bitCount -= n;
+            return value;
+        }
+
+        int decode(short[] table) throws IOException {
+            if (bitCount < MAX_CODE_LENGTH) refill();
+            int entry = table[(int) (bitBuffer >>> (64 - MAX_CODE_LENGTH))];
+            int length = entry & 0x0F;
+            if (length == 0) throw new IOException("Código LZSS inválido.");
+            bitBuffer <<= length;
+            bitCount -= length;
+            return entry >>> 4;
+        }
+    }
+}
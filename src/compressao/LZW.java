@@ -3,94 +3,356 @@ package compressao;
 import java.io.*;
 import java.util.*;
 
+/**
+ * Compressão LZW com códigos de largura variável (9 a 16 bits), empacotados bit a bit.
+ *
+ * O dicionário do compressor é uma tabela de hash de inteiros: a chave de cada
+ * sequência é (código do prefixo << 8 | byte seguinte), sem criar Strings. O do
+ * descompressor guarda, para cada código, o prefixo e o último byte, e reconstrói
+ * as sequências de trás para a frente.
+ *
+ * Formato: [magic "LZW" + versão] e depois os códigos, do bit menos significativo para
+ * o mais significativo. O código CLEAR reinicia o dicionário e END marca o fim. Quando o
+ * dicionário enche, o compressor continua a usá-lo enquanto a taxa de compressão se
+ * mantiver; se piorar, emite CLEAR e recomeça a aprender.
+ */
 public class LZW {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] MAGIC = {'L', 'Z', 'W', 2};
+
+    private static final int CLEAR = 256;
+    private static final int END = 257;
+    private static final int FIRST_CODE = 258;
+    private static final int MIN_BITS = 9;
+    private static final int MAX_BITS = 16;
+    private static final int MAX_CODES = 1 << MAX_BITS;
+
+    // Tabela de hash com fator de carga máximo de 1/2
+    private static final int HASH_BITS = MAX_BITS + 1;
+    private static final int HASH_SIZE = 1 << HASH_BITS;
+
+    // Monitorização da taxa depois de o dicionário encher
+    private static final int CHECK_INTERVAL = 16 * 1024;  // bytes de entrada entre medições
+    private static final double DEGRADATION = 0.10;       // piora tolerada antes de emitir CLEAR
+
     /**
      * Comprime um array de bytes usando LZW.
      */
     public static byte[] compress(byte[] input) throws IOException {
-        // Dicionário inicial com todos os bytes possíveis (0-255)
-        Map<String, Integer> dictionary = new HashMap<>();
-        for (int i = 0; i < 256; i++) {
-            dictionary.put("" + (char) i, i);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        compress(new ByteArrayInputStream(input), baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Comprime o fluxo de entrada com LZW, escrevendo os códigos à medida que são produzidos.
+     * @param in A entrada, lida em blocos.
+     * @param out A saída.
+     */
+    public static void compress(InputStream in, OutputStream out) throws IOException {
+        new Encoder(out).encode(in);
+    }
+
+    /**
+     * Estado do compressor: dicionário, escrita de bits e medição da taxa.
+     */
+    private static final class Encoder {
+        private final OutputStream out;
+        private final int[] keys = new int[HASH_SIZE];    // (prefixo << 8 | byte), ou -1 se livre
+        private final int[] values = new int[HASH_SIZE];  // Código da sequência
+        private int nextCode;
+
+        private final byte[] outBuffer = new byte[BUFFER_SIZE];
+        private int outPos;
+        private long bitBuffer;
+        private int bitCount;
+
+        private long bytesIn, bitsOut;
+        private long checkpointIn, checkpointBits;
+        private double bestRatio;
+
+        Encoder(OutputStream out) {
+            this.out = out;
+            resetDictionary();
         }
 
-        String w = "";
-        List<Integer> result = new ArrayList<>();
-        int dictSize = 256;
+        void encode(InputStream in) throws IOException {
+            out.write(MAGIC);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int w = -1;
+            int n;
 
-        for (byte b : input) {
-            // Converte byte para char (0-255) para usar como chave no mapa
-            char c = (char) (b & 0xFF);
-            String wc = w + c;
+            while ((n = in.read(buffer)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    int c = buffer[i] & 0xFF;
+                    bytesIn++;
+                    if (w < 0) {
+                        w = c;
+                        continue;
+                    }
+                    int key = (w << 8) | c;
+                    int slot = find(key);
+                    if (keys[slot] == key) {
+                        w = values[slot];
+                        continue;
+                    }
 
-            if (dictionary.containsKey(wc)) {
-                w = wc;
-            } else {
-                result.add(dictionary.get(w));
-                // Adiciona nova sequência ao dicionário
-                dictionary.put(wc, dictSize++);
-                w = "" + c;
+                    writeCode(w, width(nextCode));
+                    if (nextCode < MAX_CODES) {
+                        keys[slot] = key;
+                        values[slot] = nextCode++;
+                    } else if (ratioDegraded()) {
+                        writeCode(CLEAR, width(nextCode));
+                        resetDictionary();
+                    }
+                    w = c;
+                }
+            }
+
+            int endWidth = width(nextCode);
+            if (w >= 0) {
+                writeCode(w, endWidth);
+                // O descompressor acrescenta a entrada deste código antes de ler o seguinte
+                endWidth = width(Math.min(nextCode + 1, MAX_CODES));
             }
+            writeCode(END, endWidth);
+            if (bitCount > 0) {
+                putByte((int) bitBuffer);
+            }
+            out.write(outBuffer, 0, outPos);
+            out.flush();
         }
 
-        if (!w.isEmpty()) {
-            result.add(dictionary.get(w));
+        /**
+         * Procura a chave por sondagem linear.
+         * @return A posição da chave ou a posição livre onde deve ser inserida.
+         */
+        private int find(int key) {
+            int slot = (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+            while (keys[slot] != -1 && keys[slot] != key) {
+                slot = (slot + 1) & (HASH_SIZE - 1);
+            }
+            return slot;
         }
 
-        // Converte a lista de inteiros (códigos) para array de bytes
-        // Usamos DataOutputStream para escrever os inteiros (4 bytes cada)
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DataOutputStream dos = new DataOutputStream(baos);
-        for (int code : result) {
-            dos.writeInt(code);
+        private void resetDictionary() {
+            Arrays.fill(keys, -1);
+            nextCode = FIRST_CODE;
+            bestRatio = 0;
+            checkpointIn = bytesIn;
+            checkpointBits = bitsOut;
         }
 
-        return baos.toByteArray();
+        /**
+         * Mede a taxa (bits de entrada por bit de saída) a cada CHECK_INTERVAL bytes
+         * e indica se caiu mais de DEGRADATION em relação à melhor medição.
+         */
+        private boolean ratioDegraded() {
+            if (bytesIn - checkpointIn < CHECK_INTERVAL) return false;
+            double ratio = (bytesIn - checkpointIn) * 8.0 / Math.max(1, bitsOut - checkpointBits);
+            checkpointIn = bytesIn;
+            checkpointBits = bitsOut;
+            if (ratio > bestRatio) {
+                bestRatio = ratio;
+                return false;
+            }
+            return ratio < bestRatio * (1 - DEGRADATION);
+        }
+
+        private void writeCode(int code, int width) throws IOException {
+            bitBuffer |= (long) code << bitCount;
+            bitCount += width;
+            bitsOut += width;
+            while (bitCount >= 8) {
+                putByte((int) bitBuffer);
+                bitBuffer >>>= 8;
+                bitCount -= 8;
+            }
+        }
+
+        private void putByte(int b) throws IOException {
+            if (outPos == outBuffer.length) {
+                out.write(outBuffer, 0, outPos);
+                outPos = 0;
+            }
+            outBuffer[outPos++] = (byte) b;
+        }
     }
 
     /**
      * Descomprime um array de bytes usando LZW.
      */
     public static byte[] decompress(byte[] input) throws IOException {
-        // Reconstrói a lista de códigos a partir dos bytes
-        List<Integer> codes = new ArrayList<>();
-        ByteArrayInputStream bais = new ByteArrayInputStream(input);
-        DataInputStream dis = new DataInputStream(bais);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        decompress(new ByteArrayInputStream(input), baos);
+        return baos.toByteArray();
+    }
 
-        while (dis.available() > 0) {
-            codes.add(dis.readInt());
+    /**
+     * Descomprime o fluxo, escrevendo os bytes à medida que são reconstruídos.
+     * Aceita também o formato antigo, com códigos de 4 bytes.
+     * @param in A entrada comprimida.
+     * @param out A saída.
+     */
+    public static void decompress(InputStream in, OutputStream out) throws IOException {
+        BufferedInputStream bis = new BufferedInputStream(in, BUFFER_SIZE);
+        bis.mark(MAGIC.length);
+        byte[] header = bis.readNBytes(MAGIC.length);
+        if (!Arrays.equals(header, MAGIC)) {
+            bis.reset();
+            decompressLegacy(bis, out);
+            return;
         }
 
-        // Dicionário inicial
-        Map<Integer, String> dictionary = new HashMap<>();
-        for (int i = 0; i < 256; i++) {
-            dictionary.put(i, "" + (char) i);
-        }
+        int[] prefix = new int[MAX_CODES];
+        byte[] suffix = new byte[MAX_CODES];
+        byte[] stack = new byte[MAX_CODES]; // Nenhuma sequência é maior que o nº de códigos
+        byte[] outBuffer = new byte[BUFFER_SIZE];
+        int outPos = 0;
 
-        String w = "" + (char) (int) codes.remove(0);
-        ByteArrayOutputStream result = new ByteArrayOutputStream();
-        result.write(w.getBytes("ISO-8859-1")); // Garante que 1 char = 1 byte
+        int nextCode = FIRST_CODE;
+        int prev = -1;
+        long bitBuffer = 0;
+        int bitCount = 0;
 
-        int dictSize = 256;
+        while (true) {
+            // Com um código anterior, o compressor já tinha acrescentado a entrada seguinte
+            int width = width(Math.min(nextCode + (prev >= 0 ? 1 : 0), MAX_CODES));
+            while (bitCount < width) {
+                int b = bis.read();
+                if (b < 0) throw new EOFException("Fluxo LZW truncado.");
+                bitBuffer |= (long) b << bitCount;
+                bitCount += 8;
+            }
+            int code = (int) (bitBuffer & ((1L << width) - 1));
+            bitBuffer >>>= width;
+            bitCount -= width;
 
-        for (int k : codes) {
-            String entry;
-            if (dictionary.containsKey(k)) {
-                entry = dictionary.get(k);
-            } else if (k == dictSize) {
-                entry = w + w.charAt(0);
+            if (code == END) break;
+            if (code == CLEAR) {
+                nextCode = FIRST_CODE;
+                prev = -1;
+                continue;
+            }
+
+            // Reconstrói a sequência de trás para a frente na pilha
+            int top = stack.length;
+            int atual;
+            if (code < 256 || (code >= FIRST_CODE && code < nextCode)) {
+                atual = code;
+            } else if (code == nextCode && prev >= 0) {
+                // Caso KwKwK: a sequência é a anterior seguida do seu primeiro byte
+                stack[--top] = 0; // Preenchido abaixo, depois de conhecer o primeiro byte
+                atual = prev;
             } else {
-                throw new IllegalArgumentException("Bad compressed k: " + k);
+                throw new IOException("Código LZW inválido: " + code);
+            }
+            while (atual >= FIRST_CODE) {
+                stack[--top] = suffix[atual];
+                atual = prefix[atual];
+            }
+            stack[--top] = (byte) atual;
+            byte primeiro = stack[top];
+            if (code == nextCode) {
+                stack[stack.length - 1] = primeiro;
             }
 
-            result.write(entry.getBytes("ISO-8859-1"));
+            int length = stack.length - top;
+            if (outPos + length > outBuffer.length) {
+                out.write(outBuffer, 0, outPos);
+                outPos = 0;
+            }
+            if (length > outBuffer.length) {
+                out.write(stack, top, length);
+            } else {
+                System.arraycopy(stack, top, outBuffer, outPos, length);
+                outPos += length;
+            }
 
-            // Adiciona ao dicionário
-            dictionary.put(dictSize++, w + entry.charAt(0));
-            w = entry;
+            if (prev >= 0 && nextCode < MAX_CODES) {
+                prefix[nextCode] = prev;
+                suffix[nextCode] = primeiro;
+                nextCode++;
+            }
+            prev = code;
         }
+        out.write(outBuffer, 0, outPos);
+        out.flush();
+    }
 
-        return result.toByteArray();
+    /**
+     * Número de bits necessário para escrever qualquer código menor que nextCode.
+     */
+    private static int width(int nextCode) {
+        return Math.max(MIN_BITS, 32 - Integer.numberOfLeadingZeros(nextCode - 1));
+    }
+
+    /**
+     * Descompressão do formato antigo: códigos de 4 bytes, sem CLEAR nem END. O compressor
+     * antigo nunca reiniciava o dicionário, por isso os códigos crescem sem limite; o
+     * dicionário guarda, como no formato atual, o prefixo e o último byte de cada código,
+     * em arrays que aumentam conforme for preciso.
+     */
+    private static void decompressLegacy(InputStream in, OutputStream out) throws IOException {
+        DataInputStream dis = new DataInputStream(in);
+        BufferedOutputStream bos = new BufferedOutputStream(out, BUFFER_SIZE);
+
+        int[] prefix = new int[1024];
+        byte[] suffix = new byte[1024];
+        byte[] stack = new byte[1024];
+        int nextCode = 256;
+        int prev = -1;
+
+        int b;
+        while ((b = dis.read()) >= 0) {
+            int code = (b << 24) | (dis.readUnsignedByte() << 16) | (dis.readUnsignedByte() << 8) | dis.readUnsignedByte();
+            if (code < 0 || code > nextCode || (code == nextCode && prev < 0)) {
+                throw new IOException("Código LZW inválido: " + code);
+            }
+
+            // Reconstrói a sequência de trás para a frente; o caso code == nextCode é a
+            // sequência anterior seguida do seu primeiro byte
+            int top = stack.length;
+            int c = (code == nextCode) ? prev : code;
+            if (code == nextCode) top--; // Reserva o último byte, conhecido no fim
+            while (c >= 256) {
+                if (top == 0) {
+                    top = stack.length;
+                    stack = grow(stack);
+                }
+                stack[--top] = suffix[c];
+                c = prefix[c];
+            }
+            if (top == 0) {
+                top = stack.length;
+                stack = grow(stack);
+            }
+            byte primeiro = (byte) c;
+            stack[--top] = primeiro;
+            if (code == nextCode) stack[stack.length - 1] = primeiro;
+            bos.write(stack, top, stack.length - top);
+
+            if (prev >= 0) {
+                if (nextCode == prefix.length) {
+                    prefix = Arrays.copyOf(prefix, nextCode * 2);
+                    suffix = Arrays.copyOf(suffix, nextCode * 2);
+                }
+                prefix[nextCode] = prev;
+                suffix[nextCode] = primeiro;
+                nextCode++;
+            }
+            prev = code;
+        }
+        bos.flush();
+    }
+
+    /**
+     * Duplica a pilha, mantendo o conteúdo encostado ao fim.
+     */
+    private static byte[] grow(byte[] stack) {
+        byte[] maior = new byte[stack.length * 2];
+        System.arraycopy(stack, 0, maior, stack.length, stack.length);
+        return maior;
     }
 }
\ No newline at end of file
@@ -0,0 +1,471 @@
+package compressao;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compressão em blocos independentes, processados em paralelo por um conjunto de threads.
+ *
+ * A entrada é lida uma única vez, em blocos de tamanho fixo; cada bloco é comprimido com
+ * o codec que melhor comprime uma amostra dele, e a saída recebe os blocos pela ordem
+ * original. O número de blocos em processamento é limitado, por isso a memória usada
+ * não depende do tamanho da entrada.
+ *
+ * Formato do contentor:
+ * [magic "BLK" + versão][tamanho do bloco (int)]
+ * {[codec (byte)][tamanho original (int)][tamanho comprimido (int)][dados]} por bloco
+ * [nº de blocos (int)] {[posição (long)][tamanho original (int)][tamanho comprimido (int)][codec (byte)]} por bloco
+ * [posição do índice (long)][magic]
+ * O índice no fim permite descomprimir os blocos em paralelo, lendo cada um diretamente.
+ */
+public class ParallelCompressor implements AutoCloseable {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+    private static final byte[] MAGIC = {'B', 'L', 'K', 1};
+    private static final int BLOCK_HEADER_SIZE = 1 + 4 + 4;
+    private static final int INDEX_ENTRY_SIZE = 8 + 4 + 4 + 1;
+    private static final int TRAILER_SIZE = 8 + 4;
+
+    private final ExecutorService executor;
+    private final int threads;
+    private final int blockSize;
+
+    /**
+     * Entrada do índice de um bloco.
+     */
+    public static final class BlockInfo {
+        public final long offset;
+        public final int originalLength;
+        public final int compressedLength;
+        public final Codec codec;
+
+        BlockInfo(long offset, int originalLength, int compressedLength, Codec codec) {
+            this.offset = offset;
+            this.originalLength = originalLength;
+            this.compressedLength = compressedLength;
+            this.codec = codec;
+        }
+    }
+
+    public ParallelCompressor() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_BLOCK_SIZE);
+    }
+
+    public ParallelCompressor(int threads, int blockSize) {
+        this.threads = Math.max(1, threads);
+        this.blockSize = blockSize;
+        this.executor = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread t = new Thread(r, "compressao");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    // --- COMPRESSÃO ---
+
+    /**
+     * Comprime a entrada numa só leitura, escolhendo para cada bloco o codec candidato
+     * que melhor comprime uma amostra dele. Um bloco que nenhum candidato consiga reduzir
+     * pelo menos STORE_THRESHOLD é guardado sem compressão, tal como um cuja compressão
+     * completa não ganhe espaço.
+     * @param in A entrada.
+     * @param candidates Os codecs a considerar; com um só, não há amostragem.
+     * @param out A saída, que recebe um contentor.
+     * @return As medições da compressão.
+     */
+    public CompressionReport compress(InputStream in, Codec[] candidates, OutputStream out) throws IOException {
+        long inicio = System.nanoTime();
+        ContainerWriter writer = new ContainerWriter(out, blockSize);
+        CompressionReport report = new CompressionReport();
+
+        // Cada bloco em processamento ocupa o bloco original e o resultado
+        int maxInFlight = 2 * threads;
+        Deque<Future<Encoded>> pendentes = new ArrayDeque<>();
+
+        while (true) {
+            byte[] block = in.readNBytes(blockSize);
+            if (block.length == 0) break;
+
+            pendentes.add(executor.submit(() -> encode(block, candidates)));
+            if (pendentes.size() >= maxInFlight) {
+                writeOldest(pendentes, writer, report);
+            }
+        }
+        while (!pendentes.isEmpty()) {
+            writeOldest(pendentes, writer, report);
+        }
+
+        report.finish(writer.finish(), System.nanoTime() - inicio);
+        return report;
+    }
+
+    private static void writeOldest(Deque<Future<Encoded>> pendentes, ContainerWriter writer,
+                                    CompressionReport report) throws IOException {
+        Encoded e = await(pendentes.poll());
+        for (Encoded.Sample s : e.samples) {
+            report.addSample(s.codec, s.original, s.compressed, s.nanos, s.allocated);
+        }
+        report.addBlock(e.codec, e.originalLength, e.data.length, e.nanos, e.allocated);
+        writer.writeBlock(e.codec, e.originalLength, e.data);
+    }
+
+    // --- ESCOLHA DO CODEC ---
+
+    // A amostra são SAMPLE_SLICES fatias espalhadas pelo bloco: apanha as mudanças de
+    // ficheiro dentro do bloco sem custar mais do que uma pequena fração da compressão
+    static final int SAMPLE_SLICES = 4;
+    static final int SAMPLE_SLICE_SIZE = 4 * 1024;
+    // Abaixo desta razão (comprimido / original) na amostra, vale a pena comprimir
+    static final double STORE_THRESHOLD = 0.97;
+
+    /**
+     * Um bloco comprimido, com as medições feitas para o produzir.
+     */
+    private static final class Encoded {
+        static final class Sample {
+            final Codec codec;
+            final int original;
+            final int compressed;
+            final long nanos;
+            final long allocated;
+
+            Sample(Codec codec, int original, int compressed, long nanos, long allocated) {
+                this.codec = codec;
+                this.original = original;
+                this.compressed = compressed;
+                this.nanos = nanos;
+                this.allocated = allocated;
+            }
+        }
+
+        final List<Sample> samples = new ArrayList<>();
+        Codec codec;
+        int originalLength;
+        byte[] data;
+        long nanos;
+        long allocated;
+    }
+
+    private static Encoded encode(byte[] block, Codec[] candidates) throws IOException {
+        Encoded e = new Encoded();
+        e.originalLength = block.length;
+        int sampleSize = SAMPLE_SLICES * SAMPLE_SLICE_SIZE;
+
+        if (candidates.length == 1) {
+            e.codec = candidates[0];
+        } else if (block.length <= 2 * sampleSize) {
+            // Bloco pequeno: comprimir tudo com cada candidato custa o mesmo que amostrar
+            for (Codec codec : candidates) {
+                long t = System.nanoTime();
+                long a = CompressionReport.allocatedBytes();
+                byte[] data = codec.compress(block);
+                long nanos = System.nanoTime() - t;
+                long allocated = CompressionReport.allocatedBytes() - a;
+                e.samples.add(new Encoded.Sample(codec, block.length, data.length, nanos, allocated));
+                if (e.data == null || data.length < e.data.length) {
+                    e.codec = codec;
+                    e.data = data;
+                    e.nanos = nanos;
+                    e.allocated = allocated;
+                }
+            }
+            if (e.data.length >= block.length * STORE_THRESHOLD) {
+                store(e, block);
+            }
+            return e;
+        } else {
+            byte[] sample = sample(block, sampleSize);
+            double best = STORE_THRESHOLD;
+            e.codec = Codec.STORE;
+            for (Codec codec : candidates) {
+                long t = System.nanoTime();
+                long a = CompressionReport.allocatedBytes();
+                int size = codec.compress(sample).length;
+                long nanos = System.nanoTime() - t;
+                e.samples.add(new Encoded.Sample(codec, sample.length, size, nanos, CompressionReport.allocatedBytes() - a));
+                if ((double) size / sample.length < best) {
+                    best = (double) size / sample.length;
+                    e.codec = codec;
+                }
+            }
+        }
+
+        if (e.codec == Codec.STORE) {
+            store(e, block);
+            return e;
+        }
+        long t = System.nanoTime();
+        long a = CompressionReport.allocatedBytes();
+        e.data = e.codec.compress(block);
+        e.nanos = System.nanoTime() - t;
+        e.allocated = CompressionReport.allocatedBytes() - a;
+        if (e.data.length >= block.length) {
+            store(e, block);
+        }
+        return e;
+    }
+
+    private static void store(Encoded e, byte[] block) {
+        e.codec = Codec.STORE;
+        e.data = block;
+        e.nanos = 0;
+        e.allocated = 0;
+    }
+
+    private static byte[] sample(byte[] block, int sampleSize) {
+        byte[] sample = new byte[sampleSize];
+        long passo = (block.length - SAMPLE_SLICE_SIZE) / (SAMPLE_SLICES - 1);
+        for (int i = 0; i < SAMPLE_SLICES; i++) {
+            System.arraycopy(block, (int) (i * passo), sample, i * SAMPLE_SLICE_SIZE, SAMPLE_SLICE_SIZE);
+        }
+        return sample;
+    }
+
+    /**
+     * Escreve os blocos de um contentor pela ordem de chegada e guarda o índice para o fim.
+     */
+    private static final class ContainerWriter {
+        private final DataOutputStream out;
+        private final List<BlockInfo> index = new ArrayList<>();
+        private long position;
+
+        ContainerWriter(OutputStream out, int blockSize) throws IOException {
+            this.out = new DataOutputStream(out);
+            this.out.write(MAGIC);
+            this.out.writeInt(blockSize);
+            this.position = MAGIC.length + 4;
+        }
+
+        void writeBlock(Codec codec, int originalLength, byte[] data) throws IOException {
+            index.add(new BlockInfo(position, originalLength, data.length, codec));
+            out.writeByte(codec.getId());
+            out.writeInt(originalLength);
+            out.writeInt(data.length);
+            out.write(data);
+            position += BLOCK_HEADER_SIZE + data.length;
+        }
+
+        long finish() throws IOException {
+            long indexOffset = position;
+            out.writeInt(index.size());
+            for (BlockInfo info : index) {
+                out.writeLong(info.offset);
+                out.writeInt(info.originalLength);
+                out.writeInt(info.compressedLength);
+                out.writeByte(info.codec.getId());
+            }
+            out.writeLong(indexOffset);
+            out.write(MAGIC);
+            out.flush();
+            return indexOffset + 4 + (long) index.size() * INDEX_ENTRY_SIZE + TRAILER_SIZE;
+        }
+    }
+
+    // --- DESCOMPRESSÃO ---
+
+    /**
+     * Verifica se o ficheiro é um contentor de blocos.
+     */
+    public static boolean isContainer(File file) throws IOException {
+        if (file.length() < MAGIC.length + 4 + 4 + TRAILER_SIZE) return false;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] inicio = new byte[MAGIC.length];
+            raf.readFully(inicio);
+            return Arrays.equals(inicio, MAGIC);
+        }
+    }
+
+    /**
+     * Lê o índice de blocos gravado no fim do contentor.
+     */
+    public static List<BlockInfo> readIndex(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] magic = new byte[MAGIC.length];
+            raf.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(file.getName() + " não é um contentor de blocos.");
+            }
+
+            raf.seek(raf.length() - TRAILER_SIZE);
+            long indexOffset = raf.readLong();
+            raf.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || indexOffset < 0 || indexOffset > raf.length() - TRAILER_SIZE) {
+                throw new IOException("Índice de blocos ausente ou corrompido em " + file.getName() + ".");
+            }
+
+            raf.seek(indexOffset);
+            int count = raf.readInt();
+            List<BlockInfo> index = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long offset = raf.readLong();
+                int originalLength = raf.readInt();
+                int compressedLength = raf.readInt();
+                Codec codec = Codec.fromId(raf.readUnsignedByte());
+                index.add(new BlockInfo(offset, originalLength, compressedLength, codec));
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Descomprime um contentor em paralelo, escrevendo os blocos pela ordem original.
+     * @param file O contentor.
+     * @param out A saída.
+     * @return O número de bytes escritos.
+     */
+    public long decompress(File file, OutputStream out) throws IOException {
+        long total;
+        try (InputStream in = openStream(file)) {
+            total = in.transferTo(out);
+        }
+        out.flush();
+        return total;
+    }
+
+    /**
+     * Abre o conteúdo descomprimido de um contentor como um fluxo sequencial. Os blocos
+     * seguintes são descomprimidos em paralelo enquanto quem chama consome o atual.
+     * @param file O contentor.
+     */
+    public InputStream openStream(File file) throws IOException {
+        return new BlockStream(file, readIndex(file));
+    }
+
+    /**
+     * Fluxo que entrega os blocos pela ordem original, mantendo até 2 × threads
+     * blocos em descompressão à frente da leitura.
+     */
+    private final class BlockStream extends InputStream {
+        private final FileChannel channel;
+        private final Iterator<BlockInfo> blocos;
+        private final Deque<Future<byte[]>> pendentes = new ArrayDeque<>();
+        private byte[] current = new byte[0];
+        private int pos;
+
+        BlockStream(File file, List<BlockInfo> index) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.blocos = index.iterator();
+            fill();
+        }
+
+        private void fill() {
+            while (pendentes.size() < 2 * threads && blocos.hasNext()) {
+                BlockInfo info = blocos.next();
+                pendentes.add(executor.submit(() -> decompressBlock(channel, info)));
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return (read(one, 0, 1) < 0) ? -1 : (one[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (pos == current.length) {
+                if (pendentes.isEmpty()) return -1;
+                current = await(pendentes.poll());
+                pos = 0;
+                fill();
+            }
+            int n = Math.min(len, current.length - pos);
+            System.arraycopy(current, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            long total = current.length - pos;
+            out.write(current, pos, current.length - pos);
+            pos = current.length;
+            while (!pendentes.isEmpty()) {
+                current = await(pendentes.poll());
+                pos = current.length;
+                fill();
+                out.write(current);
+                total += current.length;
+            }
+            return total;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Quem para a meio (ex.: reposição de um só ficheiro) não espera pelos blocos restantes
+            for (Future<byte[]> f : pendentes) {
+                f.cancel(true);
+            }
+            pendentes.clear();
+            channel.close();
+        }
+    }
+
+    private static byte[] decompressBlock(FileChannel channel, BlockInfo info) throws IOException {
+        // Leitura posicional: várias threads podem ler o mesmo canal ao mesmo tempo
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+        readFully(channel, header, info.offset);
+        header.flip();
+        int codecId = header.get() & 0xFF;
+        int originalLength = header.getInt();
+        int compressedLength = header.getInt();
+        if (codecId != info.codec.getId() || originalLength != info.originalLength
+                || compressedLength != info.compressedLength) {
+            throw new IOException("O bloco na posição " + info.offset + " não corresponde ao índice.");
+        }
+
+        ByteBuffer data = ByteBuffer.allocate(compressedLength);
+        readFully(channel, data, info.offset + BLOCK_HEADER_SIZE);
+        byte[] result = info.codec.decompress(data.array());
+        if (result.length != originalLength) {
+            throw new IOException("O bloco na posição " + info.offset + " tem um tamanho inesperado.");
+        }
+        return result;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) throw new EOFException("Contentor de blocos truncado.");
+        }
+    }
+
+    /**
+     * Espera pelo resultado de uma tarefa, repassando os erros de E/S.
+     */
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Compressão interrompida.");
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof IOException) throw (IOException) causa;
+            if (causa instanceof RuntimeException) throw (RuntimeException) causa;
+            throw new IOException(causa);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package compressao;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Fotografia consistente dos ficheiros da base de dados, para o backup online.
+ *
+ * Ao ser tirada, fixa o tamanho de cada ficheiro. Os ficheiros pequenos são copiados
+ * logo para memória; os restantes são lidos do disco durante o backup, e as páginas que
+ * entretanto forem alteradas através de um SnapshotFile são guardadas antes da escrita.
+ * Assim o backup vê sempre o conteúdo do momento da fotografia, enquanto o sistema
+ * continua a ler e a escrever.
+ *
+ * Quem tira a fotografia tem de garantir que nenhuma operação está a meio e que os dados
+ * em memória já foram gravados (ex: DAO.checkpoint()). No Main isso é natural: a
+ * fotografia é tirada na thread dos menus, entre duas operações.
+ *
+ * Só pode haver uma fotografia ativa de cada vez; close() liberta-a.
+ */
+public final class Snapshot implements AutoCloseable {
+
+    static final int PAGE_SIZE = 4096;
+    private static final int EAGER_COPY_LIMIT = 1 << 20; // Ficheiros até 1 MiB são copiados logo
+
+    private static volatile Snapshot active;
+
+    private final List<String> names = new ArrayList<>();
+    private final List<FileState> files = new ArrayList<>();
+    private final Map<String, FileState> byPath = new HashMap<>();
+
+    /**
+     * Estado de um ficheiro na fotografia.
+     */
+    static final class FileState {
+        final long length;
+        private final byte[] copy;                // Conteúdo inteiro, para os ficheiros pequenos
+        private final FileChannel reader;         // Leitura do ficheiro vivo, para os restantes
+        private final Map<Long, byte[]> preserved = new HashMap<>();
+
+        FileState(long length, byte[] copy, FileChannel reader) {
+            this.length = length;
+            this.copy = copy;
+            this.reader = reader;
+        }
+
+        /**
+         * Guarda o conteúdo original das páginas do intervalo que ainda não foram guardadas.
+         * Só interessam as páginas abaixo do tamanho fixado na fotografia.
+         * Chamado com o monitor deste objeto, antes da escrita.
+         */
+        void preserve(RandomAccessFile file, long pos, long len) throws IOException {
+            if (copy != null || pos >= length) return;
+            long fim = Math.min(pos + len, length);
+            for (long page = pos / PAGE_SIZE; page * PAGE_SIZE < fim; page++) {
+                if (preserved.containsKey(page)) continue;
+                int n = (int) Math.min(PAGE_SIZE, length - page * PAGE_SIZE);
+                ByteBuffer buffer = ByteBuffer.allocate(n);
+                // Leitura posicional: não altera o ponteiro de quem vai escrever
+                readFully(file.getChannel(), buffer, page * PAGE_SIZE);
+                preserved.put(page, buffer.array());
+            }
+        }
+
+        synchronized int read(long pos, byte[] b, int off, int len) throws IOException {
+            if (pos >= length) return -1;
+            len = (int) Math.min(len, length - pos);
+            if (copy != null) {
+                System.arraycopy(copy, (int) pos, b, off, len);
+                return len;
+            }
+            int total = 0;
+            while (total < len) {
+                long page = pos / PAGE_SIZE;
+                int inicio = (int) (pos % PAGE_SIZE);
+                int n = Math.min(len - total, PAGE_SIZE - inicio);
+                byte[] original = preserved.get(page);
+                if (original != null) {
+                    System.arraycopy(original, inicio, b, off + total, n);
+                } else {
+                    readFully(reader, ByteBuffer.wrap(b, off + total, n).slice(), pos);
+                }
+                pos += n;
+                total += n;
+            }
+            return total;
+        }
+
+        void close() throws IOException {
+            if (reader != null) reader.close();
+        }
+    }
+
+    private Snapshot() {
+    }
+
+    /**
+     * Tira a fotografia dos ficheiros indicados; os que não existem são ignorados.
+     */
+    public static synchronized Snapshot take(String[] fileNames) throws IOException {
+        if (active != null) {
+            throw new IOException("Já existe um backup online em curso.");
+        }
+        Snapshot snapshot = new Snapshot();
+        try {
+            for (String fileName : fileNames) {
+                File f = new File(fileName);
+                if (!f.exists()) continue;
+                long length = f.length();
+                FileState state = (length <= EAGER_COPY_LIMIT)
+                        ? new FileState(length, Files.readAllBytes(f.toPath()), null)
+                        : new FileState(length, null, FileChannel.open(f.toPath(), StandardOpenOption.READ));
+                snapshot.names.add(f.getName());
+                snapshot.files.add(state);
+                snapshot.byPath.put(f.getCanonicalPath(), state);
+            }
+        } catch (IOException e) {
+            snapshot.release();
+            throw e;
+        }
+        active = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * @return Se há uma fotografia ativa (um backup online em curso).
+     */
+    public static boolean isActive() {
+        return active != null;
+    }
+
+    static FileState stateOf(String canonicalPath) {
+        Snapshot s = active;
+        return (s == null) ? null : s.byPath.get(canonicalPath);
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    public long getSize(int index) {
+        return files.get(index).length;
+    }
+
+    /**
+     * @return O número de páginas copiadas por causa de escritas feitas durante o backup.
+     */
+    public int getPreservedPages() {
+        int total = 0;
+        for (FileState state : files) {
+            synchronized (state) {
+                total += state.preserved.size();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Abre o conteúdo de um ficheiro tal como estava no momento da fotografia.
+     */
+    public InputStream open(int index) {
+        FileState state = files.get(index);
+        return new InputStream() {
+            private long pos;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return (read(one, 0, 1) < 0) ? -1 : (one[0] & 0xFF);
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                int n = state.read(pos, b, off, len);
+                if (n > 0) pos += n;
+                return n;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (Snapshot.class) {
+            if (active == this) active = null;
+        }
+        release();
+    }
+
+    private void release() throws IOException {
+        for (FileState state : files) {
+            synchronized (state) {
+                state.close();
+                state.preserved.clear();
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) throw new EOFException("O ficheiro ficou mais curto do que na fotografia.");
+        }
+    }
+}
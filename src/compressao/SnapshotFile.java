@@ -0,0 +1,74 @@
+package compressao;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * RandomAccessFile que colabora com o backup online: enquanto houver um Snapshot que
+ * inclua este ficheiro, cada escrita guarda primeiro, no snapshot, as páginas originais
+ * que vai alterar (copy-on-write). Sem snapshot ativo, comporta-se como um RandomAccessFile.
+ *
+ * Todas as escritas do RandomAccessFile (writeInt, writeLong, ...) passam pelos três
+ * métodos write, por isso basta interceptá-los.
+ */
+public class SnapshotFile extends RandomAccessFile {
+
+    private final String path;
+
+    public SnapshotFile(String name, String mode) throws IOException {
+        this(new File(name), mode);
+    }
+
+    public SnapshotFile(File file, String mode) throws IOException {
+        super(file, mode);
+        this.path = file.getCanonicalPath();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        Snapshot.FileState state = Snapshot.stateOf(path);
+        if (state == null) {
+            super.write(b);
+            return;
+        }
+        synchronized (state) {
+            state.preserve(this, getFilePointer(), 1);
+            super.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Snapshot.FileState state = Snapshot.stateOf(path);
+        if (state == null) {
+            super.write(b, off, len);
+            return;
+        }
+        synchronized (state) {
+            state.preserve(this, getFilePointer(), len);
+            super.write(b, off, len);
+        }
+    }
+
+    @Override
+    public void setLength(long newLength) throws IOException {
+        Snapshot.FileState state = Snapshot.stateOf(path);
+        if (state == null) {
+            super.setLength(newLength);
+            return;
+        }
+        synchronized (state) {
+            long atual = length();
+            if (newLength < atual) {
+                state.preserve(this, newLength, atual - newLength);
+            }
+            super.setLength(newLength);
+        }
+    }
+}
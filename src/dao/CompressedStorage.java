@@ -0,0 +1,438 @@
+package dao;
+
+import compressao.Codec;
+import compressao.LZSS;
+import compressao.Snapshot;
+import compressao.SnapshotFile;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Armazenamento em páginas comprimidas.
+ *
+ * O espaço lógico é dividido em páginas de PAGE_SIZE bytes. Cada página é comprimida à
+ * parte e guardada numa "ranhura" do ficheiro de dados; o mapa de páginas diz, para cada
+ * página, onde está a ranhura, quanto ocupa e com que codec foi comprimida. As páginas são
+ * descomprimidas só quando lidas e ficam numa cache LRU; as alteradas voltam a ser
+ * comprimidas quando saem da cache, no flush() ou no close(). O DAO chama flush() no fim
+ * de cada operação, antes de alterar os índices.
+ *
+ * Para que uma interrupção a meio (Ctrl+C, falha) deixe sempre um estado coerente, uma
+ * página nunca é reescrita na ranhura que o mapa gravado aponta: vai para uma ranhura
+ * livre ou para o fim do ficheiro. O mapa é gravado num temporário e trocado de uma vez,
+ * por isso o disco tem sempre o mapa anterior, com as ranhuras antigas intactas, ou o
+ * novo; antes da troca, os dados e o temporário são sincronizados (fsync), para que isto
+ * valha também numa falha de energia. As ranhuras abandonadas só são reutilizadas depois de o novo mapa estar gravado.
+ * Quando o espaço livre passa de metade do ficheiro, o close() compacta-o; o mapa novo é
+ * gravado antes de trocar o ficheiro de dados, e uma compactação interrompida é concluída
+ * ou descartada na abertura seguinte.
+ *
+ * Ficheiro de dados: [magic "PGZ" + versão] seguido das ranhuras.
+ * Mapa: [magic][tamanho da página (int)][tamanho lógico (long)][espaço livre (long)]
+ * [fim das ranhuras (long)][nº de páginas (int)]
+ * {[posição (long)][tamanho (int, -1 se vazia)][capacidade (int)][codec (byte)]} por página
+ */
+final class CompressedStorage implements Storage {
+
+    static final int PAGE_SIZE = 16 * 1024;
+    private static final byte[] MAGIC = {'P', 'G', 'Z', 1};
+    private static final int CACHE_PAGES = 64;
+    // Cada leitura fora da cache descomprime uma página: o LZSS descomprime depressa, e
+    // num nível baixo a compressão, feita a cada escrita de página, também é rápida
+    private static final Codec CODEC = Codec.LZSS;
+    private static final int CODEC_LEVEL = 3;
+    private static final int MIN_FREE = 64; // Espaços livres menores não são reutilizados
+
+    private final File dataFile;
+    private final File mapFile;
+    private RandomAccessFile data;
+
+    private long length;      // Tamanho lógico
+    private long garbage;     // Bytes de ranhuras abandonadas
+    private long dataEnd;     // Onde começa a próxima ranhura
+    private boolean mapDirty; // O mapa em memória difere do gravado
+
+    // Espaço livre entre ranhuras, {posição, tamanho}, que pode ser reutilizado
+    private final List<long[]> free = new ArrayList<>();
+    // Ranhuras abandonadas desde o último mapa gravado: este ainda as aponta
+    private final List<long[]> pendingFree = new ArrayList<>();
+    private int pageCount;
+    private long[] offsets = new long[16];
+    private int[] sizes = new int[16];
+    private int[] capacities = new int[16];
+    private byte[] codecs = new byte[16];
+
+    private static final class Page {
+        byte[] bytes = new byte[PAGE_SIZE];
+        boolean dirty;
+    }
+
+    private final LinkedHashMap<Integer, Page> cache = new LinkedHashMap<>(CACHE_PAGES * 2, 0.75f, true);
+
+    /**
+     * Verifica se o ficheiro de dados está no formato comprimido.
+     */
+    static boolean isCompressed(File f) throws IOException {
+        if (f.length() < MAGIC.length) return false;
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            byte[] inicio = new byte[MAGIC.length];
+            raf.readFully(inicio);
+            return Arrays.equals(inicio, MAGIC);
+        }
+    }
+
+    CompressedStorage(File dataFile, File mapFile) throws IOException {
+        this.dataFile = dataFile;
+        this.mapFile = mapFile;
+        this.data = new SnapshotFile(dataFile, "rw");
+
+        if (data.length() == 0) {
+            // O mapa é gravado logo, para que o ficheiro possa ser aberto mesmo sem close()
+            data.write(MAGIC);
+            dataEnd = MAGIC.length;
+            writeMap();
+            return;
+        }
+        recoverCompaction();
+        if (!mapFile.exists()) {
+            data.close();
+            throw new IOException("Falta o mapa de páginas " + mapFile.getName() + ".");
+        }
+        readMap();
+        rebuildFreeList();
+    }
+
+    // --- LEITURA E ESCRITA ---
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public int readAt(long pos, byte[] b, int off, int len) throws IOException {
+        if (pos >= length) return -1;
+        len = (int) Math.min(len, length - pos);
+        int total = 0;
+        while (total < len) {
+            int index = (int) (pos / PAGE_SIZE);
+            int inicio = (int) (pos % PAGE_SIZE);
+            int n = Math.min(len - total, PAGE_SIZE - inicio);
+            System.arraycopy(page(index).bytes, inicio, b, off + total, n);
+            pos += n;
+            total += n;
+        }
+        return total;
+    }
+
+    @Override
+    public void write(long pos, byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int index = (int) (pos / PAGE_SIZE);
+            int inicio = (int) (pos % PAGE_SIZE);
+            int n = Math.min(len, PAGE_SIZE - inicio);
+            Page p = page(index);
+            System.arraycopy(b, off, p.bytes, inicio, n);
+            p.dirty = true;
+            pos += n;
+            off += n;
+            len -= n;
+            length = Math.max(length, pos);
+        }
+    }
+
+    /**
+     * Devolve a página, descomprimindo-a se não estiver na cache.
+     */
+    private Page page(int index) throws IOException {
+        Page p = cache.get(index);
+        if (p != null) return p;
+
+        p = evict();
+        if (index < pageCount && sizes[index] >= 0) {
+            byte[] comprimido = new byte[sizes[index]];
+            data.seek(offsets[index]);
+            data.readFully(comprimido);
+            byte[] bytes = Codec.fromId(codecs[index]).decompress(comprimido);
+            System.arraycopy(bytes, 0, p.bytes, 0, bytes.length);
+        }
+        cache.put(index, p);
+        return p;
+    }
+
+    /**
+     * Liberta uma entrada da cache, se estiver cheia, e devolve uma página limpa para reutilizar.
+     */
+    private Page evict() throws IOException {
+        if (cache.size() < CACHE_PAGES) return new Page();
+        Iterator<Map.Entry<Integer, Page>> it = cache.entrySet().iterator();
+        Map.Entry<Integer, Page> eldest = it.next();
+        Page p = eldest.getValue();
+        if (p.dirty) {
+            store(eldest.getKey(), p);
+        }
+        it.remove();
+        Arrays.fill(p.bytes, (byte) 0);
+        return p;
+    }
+
+    /**
+     * Comprime a página e grava-a numa ranhura nova: um espaço livre onde caiba ou o fim do
+     * ficheiro. A ranhura antiga só fica livre depois de o mapa seguinte ser gravado.
+     * Se a compressão não ganhar espaço, a página é guardada sem compressão.
+     */
+    private void store(int index, Page p) throws IOException {
+        int valid = (int) Math.min(PAGE_SIZE, length - (long) index * PAGE_SIZE);
+        byte[] raw = Arrays.copyOf(p.bytes, valid);
+        byte[] comprimido = LZSS.compress(raw, CODEC_LEVEL);
+        Codec codec = CODEC;
+        if (comprimido.length >= raw.length) {
+            comprimido = raw;
+            codec = Codec.STORE;
+        }
+
+        ensureCapacity(index + 1);
+        if (index < pageCount && sizes[index] >= 0) {
+            pendingFree.add(new long[]{offsets[index], capacities[index]});
+            garbage += capacities[index];
+        }
+        allocate(index, comprimido.length);
+        data.seek(offsets[index]);
+        data.write(comprimido);
+        sizes[index] = comprimido.length;
+        codecs[index] = (byte) codec.getId();
+        for (int i = pageCount; i < index; i++) {
+            sizes[i] = -1;
+        }
+        pageCount = Math.max(pageCount, index + 1);
+        p.dirty = false;
+        mapDirty = true;
+    }
+
+    /**
+     * Escolhe a ranhura da página: o primeiro espaço livre onde caibam tamanho bytes ou,
+     * se não houver, o fim do ficheiro. Cada ranhura tem alguma folga, para que a página
+     * possa voltar para um espaço do mesmo tamanho quando crescer um pouco.
+     */
+    private void allocate(int index, int tamanho) {
+        int capacidade = Math.max(tamanho, Math.min(PAGE_SIZE, tamanho + tamanho / 8));
+        for (Iterator<long[]> it = free.iterator(); it.hasNext(); ) {
+            long[] espaco = it.next();
+            if (espaco[1] < tamanho) continue;
+            long usado = Math.min(espaco[1], capacidade);
+            // Um resto pequeno demais para outra página fica com esta ranhura
+            if (espaco[1] - usado < MIN_FREE) usado = espaco[1];
+            offsets[index] = espaco[0];
+            capacities[index] = (int) usado;
+            espaco[0] += usado;
+            espaco[1] -= usado;
+            if (espaco[1] == 0) it.remove();
+            garbage -= usado;
+            return;
+        }
+        offsets[index] = dataEnd;
+        capacities[index] = capacidade;
+        dataEnd += capacidade;
+    }
+
+    /**
+     * Reconstrói a lista de espaço livre a partir dos buracos entre as ranhuras do mapa.
+     */
+    private void rebuildFreeList() {
+        List<long[]> ranhuras = new ArrayList<>();
+        for (int i = 0; i < pageCount; i++) {
+            if (sizes[i] >= 0) ranhuras.add(new long[]{offsets[i], capacities[i]});
+        }
+        ranhuras.sort((a, b) -> Long.compare(a[0], b[0]));
+        free.clear();
+        garbage = 0;
+        long pos = MAGIC.length;
+        for (long[] r : ranhuras) {
+            addFree(pos, r[0] - pos);
+            pos = Math.max(pos, r[0] + r[1]);
+        }
+        addFree(pos, dataEnd - pos);
+    }
+
+    private void addFree(long pos, long tamanho) {
+        if (tamanho <= 0) return;
+        garbage += tamanho;
+        if (tamanho >= MIN_FREE) free.add(new long[]{pos, tamanho});
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= offsets.length) return;
+        int cap = Math.max(n, offsets.length * 2);
+        offsets = Arrays.copyOf(offsets, cap);
+        sizes = Arrays.copyOf(sizes, cap);
+        capacities = Arrays.copyOf(capacities, cap);
+        codecs = Arrays.copyOf(codecs, cap);
+    }
+
+    /**
+     * Grava as páginas alteradas e o mapa, deixando o disco coerente sem fechar.
+     */
+    @Override
+    public void flush() throws IOException {
+        for (Map.Entry<Integer, Page> e : cache.entrySet()) {
+            if (e.getValue().dirty) {
+                store(e.getKey(), e.getValue());
+            }
+        }
+        if (mapDirty) {
+            writeMap();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        cache.clear();
+        // A compactação troca o ficheiro; durante um backup online o snapshot ainda o lê
+        if (garbage > dataEnd / 2 && !Snapshot.isActive()) {
+            compact();
+        }
+        data.close();
+    }
+
+    /**
+     * Regrava o ficheiro de dados só com as ranhuras em uso, pela ordem das páginas.
+     *
+     * O ficheiro novo e o seu mapa são gravados em ficheiros .compact; só depois os dados
+     * são trocados, e por fim o mapa. Se a troca for interrompida, recoverCompaction()
+     * termina-a na abertura seguinte.
+     */
+    private void compact() throws IOException {
+        File tmp = compactFile(dataFile);
+        long[] novos = new long[pageCount];
+        long pos = MAGIC.length;
+        try (RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+            out.setLength(0);
+            out.write(MAGIC);
+            for (int i = 0; i < pageCount; i++) {
+                if (sizes[i] < 0) continue;
+                byte[] slot = new byte[sizes[i]];
+                data.seek(offsets[i]);
+                data.readFully(slot);
+                out.write(slot);
+                novos[i] = pos;
+                pos += sizes[i];
+            }
+            out.getFD().sync();
+        }
+        for (int i = 0; i < pageCount; i++) {
+            if (sizes[i] < 0) continue;
+            offsets[i] = novos[i];
+            capacities[i] = sizes[i];
+        }
+        dataEnd = pos;
+        garbage = 0;
+        free.clear();
+        pendingFree.clear();
+        writeMapTo(compactFile(mapFile));
+
+        data.close();
+        move(tmp, dataFile);
+        move(compactFile(mapFile), mapFile);
+        data = new SnapshotFile(dataFile, "rw");
+        mapDirty = false;
+    }
+
+    /**
+     * Conclui ou descarta uma compactação interrompida. Enquanto o ficheiro de dados novo
+     * não foi trocado, os dados e o mapa antigos continuam válidos; depois da troca, o
+     * mapa certo é o .compact.
+     */
+    private void recoverCompaction() throws IOException {
+        File mapaNovo = compactFile(mapFile);
+        File dadosNovos = compactFile(dataFile);
+        if (dadosNovos.exists()) {
+            dadosNovos.delete();
+            mapaNovo.delete();
+        } else if (mapaNovo.exists()) {
+            move(mapaNovo, mapFile);
+        }
+    }
+
+    private static File compactFile(File f) {
+        return new File(f.getPath() + ".compact");
+    }
+
+    private static void move(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // --- MAPA DE PÁGINAS ---
+
+    private void readMap() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mapFile)))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readInt() != PAGE_SIZE) {
+                throw new IOException(mapFile.getName() + " não é um mapa de páginas válido.");
+            }
+            length = in.readLong();
+            garbage = in.readLong();
+            dataEnd = in.readLong();
+            pageCount = in.readInt();
+            ensureCapacity(pageCount);
+            for (int i = 0; i < pageCount; i++) {
+                offsets[i] = in.readLong();
+                sizes[i] = in.readInt();
+                capacities[i] = in.readInt();
+                codecs[i] = in.readByte();
+            }
+        } catch (IOException e) {
+            data.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Grava o mapa num temporário e troca-o de uma vez. Só então as ranhuras abandonadas
+     * desde o mapa anterior deixam de ser apontadas no disco e podem ser reutilizadas.
+     */
+    private void writeMap() throws IOException {
+        // As ranhuras têm de estar no disco antes do mapa que as aponta
+        data.getFD().sync();
+        File tmp = new File(mapFile.getPath() + ".tmp");
+        writeMapTo(tmp);
+        move(tmp, mapFile);
+        free.addAll(pendingFree);
+        pendingFree.clear();
+        mapDirty = false;
+    }
+
+    private void writeMapTo(File f) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(f);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.write(MAGIC);
+            out.writeInt(PAGE_SIZE);
+            out.writeLong(length);
+            out.writeLong(garbage);
+            out.writeLong(dataEnd);
+            out.writeInt(pageCount);
+            for (int i = 0; i < pageCount; i++) {
+                out.writeLong(offsets[i]);
+                out.writeInt(sizes[i]);
+                out.writeInt(capacities[i]);
+                out.writeByte(codecs[i]);
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+    }
+}
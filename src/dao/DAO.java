@@ -1,11 +1,17 @@
 package dao;
 
 import indices.BPlusTree;
+import indices.BlindIndex;
 import indices.ExtensibleHash;
+import indices.InvertedIndex;
+import indices.PrefixIndex;
+import indices.TrigramIndex;
 import model.Register;
+import model.VarInt;
 import java.io.*;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -14,16 +20,48 @@ import java.util.List;
  */
 public class DAO<T extends Register> {
 
-    private final RandomAccessFile dbFile;
+    /**
+     * Filtro aplicado aos bytes serializados de um registo, antes de o deserializar.
+     */
+    @FunctionalInterface
+    public interface RecordFilter {
+        boolean accept(byte[] buffer, int offset, int length);
+    }
+
+    // Cabeçalho de cada registo: [flags][tamanho]. Os registos novos usam o formato
+    // compacto, com o tamanho em inteiro de tamanho variável (1 ou 2 bytes em vez de 4);
+    // os antigos, [lápide 0/1][tamanho (int)], continuam válidos no mesmo ficheiro.
+    private static final int DELETED = 0x01;  // Lápide
+    private static final int COMPACT = 0x02;  // Tamanho em VarInt
+    private static final int LEGACY_HEADER_SIZE = 5;
+    private static final int MAX_HEADER_SIZE = 6;
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private final Storage dbFile;
     private final Constructor<T> constructor;
     private final ExtensibleHash hash;
     private final BPlusTree bPlusTree;
+    private final String baseName;
+    private TrigramIndex trigramIndex; // Opcional: habilitado com enableTrigramIndex()
+    private InvertedIndex fullTextIndex; // Opcional: habilitado com enableFullTextIndex()
+    private PrefixIndex prefixIndex; // Opcional: habilitado com enablePrefixIndex()
+    private BlindIndex blindIndex; // Opcional: habilitado com enableBlindIndex()
 
     public DAO(String dbFilePath, Class<T> clazz, boolean useBPlusTree) throws IOException, NoSuchMethodException {
-        this.dbFile = new RandomAccessFile(dbFilePath, "rw");
+        this(dbFilePath, clazz, useBPlusTree, false);
+    }
+
+    /**
+     * @param compressedStorage Se o ficheiro de dados deve ser guardado em páginas comprimidas
+     *                          (ver CompressedStorage). Um ficheiro existente no outro modo é
+     *                          convertido ao abrir; as posições não mudam, por isso os índices
+     *                          continuam válidos.
+     */
+    public DAO(String dbFilePath, Class<T> clazz, boolean useBPlusTree, boolean compressedStorage) throws IOException, NoSuchMethodException {
         this.constructor = clazz.getConstructor();
 
-        String baseName = dbFilePath.replace(".db", "");
+        this.baseName = dbFilePath.replace(".db", "");
+        this.dbFile = Storage.open(dbFilePath, baseName + ".pagemap", compressedStorage);
         this.hash = new ExtensibleHash(baseName + ".hash.dir", baseName + ".hash.bkt");
 
         if(useBPlusTree) {
@@ -33,11 +71,86 @@ public class DAO<T extends Register> {
         }
 
         if (dbFile.length() == 0) {
-            dbFile.writeInt(0);
+            dbFile.writeInt(0, 0);
+            dbFile.flush();
+        }
+    }
+
+    /**
+     * Habilita o índice de trigramas sobre a chave secundária, usado nas pesquisas
+     * por substring. Se o ficheiro do índice não existir ou estiver desatualizado,
+     * é reconstruído a partir do ficheiro de dados.
+     */
+    public void enableTrigramIndex() throws Exception {
+        if (trigramIndex != null) return;
+        trigramIndex = new TrigramIndex(baseName + ".trigram.idx");
+        if (!trigramIndex.isConsistentWith(dbFile.length())) {
+            trigramIndex.clear();
+            for (T obj : listAll()) {
+                trigramIndex.insert(obj.getSecondaryKey(), obj.getID());
+            }
+        }
+    }
+
+    /**
+     * Habilita o índice invertido sobre o texto completo (getFullText), usado na
+     * pesquisa textual ranqueada. É reconstruído se estiver ausente ou desatualizado.
+     */
+    public void enableFullTextIndex() throws Exception {
+        if (fullTextIndex != null) return;
+        fullTextIndex = new InvertedIndex(baseName + ".fts.dict", baseName + ".fts.post");
+        if (!fullTextIndex.isConsistentWith(dbFile.length())) {
+            fullTextIndex.clear();
+            for (T obj : listAll()) {
+                fullTextIndex.insert(obj.getID(), obj.getFullText());
+            }
+        }
+    }
+
+    /**
+     * Habilita o índice de prefixos (autocompletar) sobre a chave secundária.
+     * É reconstruído se estiver ausente ou desatualizado.
+     */
+    public void enablePrefixIndex() throws Exception {
+        if (prefixIndex != null) return;
+        prefixIndex = new PrefixIndex(baseName + ".prefix");
+        if (!prefixIndex.isConsistentWith(dbFile.length())) {
+            prefixIndex.clear();
+            for (T obj : listAll()) {
+                prefixIndex.insert(obj.getSecondaryKey(), obj.getID());
+            }
+        }
+    }
+
+    /**
+     * Habilita o índice cego sobre getBlindIndexToken(), usado na procura por igualdade
+     * num campo cifrado. É reconstruído se estiver ausente ou desatualizado.
+     */
+    public void enableBlindIndex() throws Exception {
+        if (blindIndex != null) return;
+        blindIndex = new BlindIndex(baseName + ".blind");
+        if (!blindIndex.isConsistentWith(dbFile.length())) {
+            blindIndex.clear();
+            for (T obj : listAll()) {
+                byte[] token = obj.getBlindIndexToken();
+                if (token != null) blindIndex.insert(token, obj.getID());
+            }
         }
     }
 
     public void close() throws IOException {
+        if (blindIndex != null) {
+            blindIndex.close(dbFile.length());
+        }
+        if (prefixIndex != null) {
+            prefixIndex.close(dbFile.length());
+        }
+        if (trigramIndex != null) {
+            trigramIndex.close(dbFile.length());
+        }
+        if (fullTextIndex != null) {
+            fullTextIndex.close(dbFile.length());
+        }
         dbFile.close();
         hash.close();
         if (bPlusTree != null) {
@@ -45,27 +158,41 @@ public class DAO<T extends Register> {
         }
     }
 
+    /**
+     * Deixa os ficheiros do DAO coerentes no disco sem o fechar (ex: antes de um backup online).
+     */
+    public void checkpoint() throws IOException {
+        dbFile.flush();
+    }
+
     public int create(T obj) throws IOException {
-        dbFile.seek(0);
-        int ultimoID = dbFile.readInt();
+        int ultimoID = dbFile.readInt(0);
         int novoID = ultimoID + 1;
-        dbFile.seek(0);
-        dbFile.writeInt(novoID);
+        dbFile.writeInt(0, novoID);
 
         obj.setID(novoID);
-        byte[] byteArray = obj.toByteArray();
-
-        dbFile.seek(dbFile.length());
-        long posicao = dbFile.getFilePointer();
-
-        dbFile.writeByte(0);
-        dbFile.writeInt(byteArray.length);
-        dbFile.write(byteArray);
+        long posicao = dbFile.length();
+        writeRecord(posicao, obj.toByteArray());
+        // Os dados vão para o disco antes dos índices, que nunca podem apontar para
+        // registos que uma interrupção deixaria por gravar
+        dbFile.flush();
 
         hash.insert(novoID, posicao);
         if (bPlusTree != null) {
             bPlusTree.insert(obj.getSecondaryKey(), novoID);
         }
+        if (trigramIndex != null) {
+            trigramIndex.insert(obj.getSecondaryKey(), novoID);
+        }
+        if (fullTextIndex != null) {
+            fullTextIndex.insert(novoID, obj.getFullText());
+        }
+        if (prefixIndex != null) {
+            prefixIndex.insert(obj.getSecondaryKey(), novoID);
+        }
+        if (blindIndex != null && obj.getBlindIndexToken() != null) {
+            blindIndex.insert(obj.getBlindIndexToken(), novoID);
+        }
 
         return novoID;
     }
@@ -74,13 +201,13 @@ public class DAO<T extends Register> {
         long posicao = hash.search(id);
         if (posicao == -1) return null;
 
-        dbFile.seek(posicao);
-        byte lapide = dbFile.readByte();
-        if (lapide == 1) return null;
+        byte[] cabecalho = new byte[MAX_HEADER_SIZE];
+        long header = readHeader(posicao, cabecalho);
+        if ((cabecalho[0] & DELETED) != 0) return null;
 
-        int tamanho = dbFile.readInt();
+        int tamanho = (int) header;
         byte[] byteArray = new byte[tamanho];
-        dbFile.read(byteArray);
+        dbFile.readFully(posicao + (header >>> 32), byteArray, 0, tamanho);
 
         T obj = constructor.newInstance();
         obj.fromByteArray(byteArray);
@@ -91,30 +218,29 @@ public class DAO<T extends Register> {
         T oldObj = read(obj.getID());
         if (oldObj == null) return false;
 
-        String oldSecondaryKey = (bPlusTree != null) ? oldObj.getSecondaryKey() : null;
+        String oldSecondaryKey = oldObj.getSecondaryKey();
 
         long posicao = hash.search(obj.getID());
         byte[] novoByteArray = obj.toByteArray();
 
-        dbFile.seek(posicao);
-        dbFile.readByte();
-        int tamanhoAntigo = dbFile.readInt();
+        byte[] cabecalho = new byte[MAX_HEADER_SIZE];
+        long header = readHeader(posicao, cabecalho);
+        int tamanhoAntigo = (int) header;
 
         if (novoByteArray.length <= tamanhoAntigo) {
-            dbFile.seek(posicao + 5);
-            dbFile.write(novoByteArray);
+            dbFile.write(posicao + (header >>> 32), novoByteArray, 0, novoByteArray.length);
         } else {
-            dbFile.seek(posicao);
-            dbFile.writeByte(1);
-
-            dbFile.seek(dbFile.length());
-            long novaPosicao = dbFile.getFilePointer();
-            dbFile.writeByte(0);
-            dbFile.writeInt(novoByteArray.length);
-            dbFile.write(novoByteArray);
+            // O registo antigo só recebe a lápide depois de o hash apontar para o novo:
+            // uma interrupção a meio deixa sempre o ID a apontar para um registo válido
+            long novaPosicao = dbFile.length();
+            writeRecord(novaPosicao, novoByteArray);
+            dbFile.flush();
 
             hash.update(obj.getID(), novaPosicao);
+
+            dbFile.writeByte(posicao, cabecalho[0] | DELETED);
         }
+        dbFile.flush();
 
         if (bPlusTree != null) {
             String newSecondaryKey = obj.getSecondaryKey();
@@ -123,6 +249,26 @@ public class DAO<T extends Register> {
                 bPlusTree.insert(newSecondaryKey, obj.getID());
             }
         }
+        if (trigramIndex != null && !oldSecondaryKey.equals(obj.getSecondaryKey())) {
+            trigramIndex.delete(oldSecondaryKey, obj.getID());
+            trigramIndex.insert(obj.getSecondaryKey(), obj.getID());
+        }
+        if (fullTextIndex != null && !oldObj.getFullText().equals(obj.getFullText())) {
+            fullTextIndex.delete(obj.getID(), oldObj.getFullText());
+            fullTextIndex.insert(obj.getID(), obj.getFullText());
+        }
+        if (prefixIndex != null && !oldSecondaryKey.equals(obj.getSecondaryKey())) {
+            prefixIndex.delete(oldSecondaryKey, obj.getID());
+            prefixIndex.insert(obj.getSecondaryKey(), obj.getID());
+        }
+        if (blindIndex != null) {
+            byte[] oldToken = oldObj.getBlindIndexToken();
+            byte[] newToken = obj.getBlindIndexToken();
+            if (!Arrays.equals(oldToken, newToken)) {
+                if (oldToken != null) blindIndex.delete(oldToken, obj.getID());
+                if (newToken != null) blindIndex.insert(newToken, obj.getID());
+            }
+        }
         return true;
     }
 
@@ -131,35 +277,51 @@ public class DAO<T extends Register> {
         if (obj == null) return false;
 
         long posicao = hash.search(id);
-        dbFile.seek(posicao);
-        dbFile.writeByte(1);
+        byte[] flags = new byte[1];
+        dbFile.readFully(posicao, flags, 0, 1);
+        dbFile.writeByte(posicao, flags[0] | DELETED);
+        dbFile.flush();
 
         hash.delete(id);
         if (bPlusTree != null) {
             bPlusTree.delete(obj.getSecondaryKey());
         }
+        if (trigramIndex != null) {
+            trigramIndex.delete(obj.getSecondaryKey(), id);
+        }
+        if (fullTextIndex != null) {
+            fullTextIndex.delete(id, obj.getFullText());
+        }
+        if (prefixIndex != null) {
+            prefixIndex.delete(obj.getSecondaryKey(), id);
+        }
+        if (blindIndex != null && obj.getBlindIndexToken() != null) {
+            blindIndex.delete(obj.getBlindIndexToken(), id);
+        }
 
         return true;
     }
 
-    public List<T> listAll() throws Exception {
-        List<T> lista = new ArrayList<>();
-        dbFile.seek(4);
-        while (dbFile.getFilePointer() < dbFile.length()) {
-            byte lapide = dbFile.readByte();
-            int tamanho = dbFile.readInt();
-
-            if (lapide == 0) {
-                byte[] byteArray = new byte[tamanho];
-                dbFile.read(byteArray);
-                T obj = constructor.newInstance();
-                obj.fromByteArray(byteArray);
-                lista.add(obj);
-            } else {
-                dbFile.skipBytes(tamanho);
+    /**
+     * Procura pelo índice cego os registos com o token dado. Só são lidos os candidatos
+     * do índice, e cada um é confirmado comparando o token completo.
+     */
+    public List<T> listAllByBlindIndex(byte[] token) throws Exception {
+        if (blindIndex == null) {
+            throw new UnsupportedOperationException("O índice cego não está habilitado para esta entidade.");
+        }
+        List<T> resultado = new ArrayList<>();
+        for (int id : blindIndex.search(token)) {
+            T obj = read(id);
+            if (obj != null && Arrays.equals(obj.getBlindIndexToken(), token)) {
+                resultado.add(obj);
             }
         }
-        return lista;
+        return resultado;
+    }
+
+    public List<T> listAll() throws Exception {
+        return listAllMatching((buffer, offset, length) -> true);
     }
 
     public List<T> listAllSortedBySecondaryKey() throws Exception {
@@ -193,4 +355,187 @@ public class DAO<T extends Register> {
         }
         return listaOrdenada;
     }
+
+    /**
+     * Autocompletar: devolve os primeiros registos, em ordem alfabética, cuja chave
+     * secundária começa pelo prefixo (sem distinguir maiúsculas). Usa o índice de
+     * prefixos e não consulta a Árvore B+.
+     * @param prefix O início da chave.
+     * @param limit O número máximo de resultados.
+     */
+    public List<T> completeBySecondaryKey(String prefix, int limit) throws Exception {
+        if (prefixIndex == null) {
+            throw new UnsupportedOperationException("O índice de prefixos não está habilitado para esta entidade.");
+        }
+        List<T> lista = new ArrayList<>();
+        for (int id : prefixIndex.complete(prefix, limit)) {
+            T obj = read(id);
+            if (obj != null) {
+                lista.add(obj);
+            }
+        }
+        return lista;
+    }
+
+    /**
+     * Devolve os registos cuja chave secundária pode conter o termo, usando o
+     * índice de trigramas para evitar a varredura completa do ficheiro.
+     * Os candidatos devem ser confirmados com KMP/Boyer-Moore.
+     * Sem índice, ou para termos com menos de 3 caracteres, devolve todos os registos.
+     */
+    public List<T> listAllBySecondaryKeySubstring(String termo) throws Exception {
+        List<Integer> candidatos = (trigramIndex != null) ? trigramIndex.candidates(termo) : null;
+        if (candidatos == null) {
+            return listAll();
+        }
+        List<T> lista = new ArrayList<>();
+        for (int id : candidatos) {
+            T obj = read(id);
+            if (obj != null) {
+                lista.add(obj);
+            }
+        }
+        return lista;
+    }
+
+    /**
+     * Pesquisa textual ranqueada (BM25) sobre o texto completo dos registos.
+     * @param consulta Os termos a pesquisar.
+     * @param k O número máximo de resultados.
+     * @return Os registos mais relevantes, do mais para o menos relevante.
+     */
+    public List<T> searchFullText(String consulta, int k) throws Exception {
+        if (fullTextIndex == null) {
+            throw new UnsupportedOperationException("O índice textual não está habilitado para esta entidade.");
+        }
+        List<T> lista = new ArrayList<>();
+        for (InvertedIndex.Hit hit : fullTextIndex.search(consulta, k)) {
+            T obj = read(hit.id);
+            if (obj != null) {
+                lista.add(obj);
+            }
+        }
+        return lista;
+    }
+
+    /**
+     * Devolve os registos cuja chave secundária pode conter o termo com até maxErros
+     * edições, filtrando pelo número de trigramas partilhados no índice de trigramas.
+     * Os candidatos devem ser confirmados por um algoritmo aproximado (ex: Myers).
+     * Sem índice, ou quando o filtro não elimina nada, devolve todos os registos.
+     */
+    public List<T> listAllBySecondaryKeySimilar(String termo, int maxErros) throws Exception {
+        List<Integer> candidatos = (trigramIndex != null) ? trigramIndex.candidatesWithin(termo, maxErros) : null;
+        if (candidatos == null) {
+            return listAll();
+        }
+        List<T> lista = new ArrayList<>();
+        for (int id : candidatos) {
+            T obj = read(id);
+            if (obj != null) {
+                lista.add(obj);
+            }
+        }
+        return lista;
+    }
+
+    /**
+     * Varre o ficheiro de dados em blocos e aplica o filtro diretamente aos bytes de
+     * cada registo ativo. Só os registos aceites são deserializados, por isso a
+     * varredura não cria objetos para os restantes.
+     * @param filtro O filtro aplicado a cada registo.
+     * @return Os registos aceites, pela ordem do ficheiro.
+     */
+    public List<T> listAllMatching(RecordFilter filtro) throws Exception {
+        List<T> lista = new ArrayList<>();
+        byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+        int inicio = 0; // Início do próximo registo no buffer
+        int limite = 0; // Fim dos bytes válidos no buffer
+        boolean fimDoFicheiro = false;
+        long posicao = 4; // Depois do cabeçalho com o último ID
+
+        while (true) {
+            int disponivel = limite - inicio;
+            long header = parseHeader(buffer, inicio, limite);
+            int necessario = (header < 0) ? MAX_HEADER_SIZE : (int) (header >>> 32) + (int) header;
+            if (header < 0 || disponivel < necessario) {
+                if (fimDoFicheiro) break;
+
+                // Move o registo incompleto para o início e volta a encher o buffer
+                System.arraycopy(buffer, inicio, buffer, 0, disponivel);
+                limite = disponivel;
+                inicio = 0;
+                if (necessario > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.max(necessario, buffer.length * 2));
+                }
+                int lidos = dbFile.readAt(posicao, buffer, limite, buffer.length - limite);
+                if (lidos <= 0) {
+                    fimDoFicheiro = true;
+                } else {
+                    limite += lidos;
+                    posicao += lidos;
+                }
+                continue;
+            }
+
+            int flags = buffer[inicio];
+            int tamanho = (int) header;
+            int dados = inicio + (int) (header >>> 32);
+            if ((flags & DELETED) == 0 && filtro.accept(buffer, dados, tamanho)) {
+                T obj = constructor.newInstance();
+                obj.fromByteArray(Arrays.copyOfRange(buffer, dados, dados + tamanho));
+                lista.add(obj);
+            }
+            inicio = dados + tamanho;
+        }
+        return lista;
+    }
+
+    /**
+     * Escreve um registo ativo (cabeçalho compacto e dados) de uma só vez.
+     */
+    private void writeRecord(long posicao, byte[] byteArray) throws IOException {
+        byte[] registo = new byte[1 + VarInt.size(byteArray.length) + byteArray.length];
+        registo[0] = COMPACT;
+        int dados = VarInt.write(registo, 1, byteArray.length);
+        System.arraycopy(byteArray, 0, registo, dados, byteArray.length);
+        dbFile.write(posicao, registo, 0, registo.length);
+    }
+
+    /**
+     * Lê o cabeçalho do registo na posição para cabecalho (que deve ter MAX_HEADER_SIZE bytes).
+     * @return (tamanho do cabeçalho << 32) | tamanho dos dados.
+     */
+    private long readHeader(long posicao, byte[] cabecalho) throws IOException {
+        int n = 0;
+        while (n < MAX_HEADER_SIZE) {
+            int lidos = dbFile.readAt(posicao + n, cabecalho, n, MAX_HEADER_SIZE - n);
+            if (lidos <= 0) break;
+            n += lidos;
+        }
+        long header = parseHeader(cabecalho, 0, n);
+        if (header < 0) throw new EOFException("Registo truncado na posição " + posicao + ".");
+        return header;
+    }
+
+    /**
+     * Interpreta um cabeçalho, compacto ou antigo, a partir de pos.
+     * @return (tamanho do cabeçalho << 32) | tamanho dos dados, ou -1 se os bytes até limit
+     *         não chegarem para o cabeçalho inteiro.
+     */
+    private static long parseHeader(byte[] buf, int pos, int limit) throws IOException {
+        if (pos >= limit) return -1;
+        if ((buf[pos] & COMPACT) == 0) {
+            if (limit - pos < LEGACY_HEADER_SIZE) return -1;
+            return ((long) LEGACY_HEADER_SIZE << 32) | (readInt(buf, pos + 1) & 0xFFFFFFFFL);
+        }
+        long tamanho = VarInt.read(buf, pos + 1, limit);
+        if (tamanho < 0) return -1;
+        return ((long) (1 + VarInt.size((int) tamanho)) << 32) | tamanho;
+    }
+
+    private static int readInt(byte[] buf, int pos) {
+        return ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16)
+                | ((buf[pos + 2] & 0xFF) << 8) | (buf[pos + 3] & 0xFF);
+    }
 }
\ No newline at end of file
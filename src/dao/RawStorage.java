@@ -0,0 +1,41 @@
+package dao;
+
+import compressao.SnapshotFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Armazenamento sem compressão: as posições lógicas são as posições no ficheiro.
+ */
+final class RawStorage implements Storage {
+
+    private final RandomAccessFile file;
+
+    RawStorage(File f) throws IOException {
+        this.file = new SnapshotFile(f, "rw");
+    }
+
+    @Override
+    public long length() throws IOException {
+        return file.length();
+    }
+
+    @Override
+    public int readAt(long pos, byte[] b, int off, int len) throws IOException {
+        file.seek(pos);
+        return file.read(b, off, len);
+    }
+
+    @Override
+    public void write(long pos, byte[] b, int off, int len) throws IOException {
+        file.seek(pos);
+        file.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,105 @@
+package dao;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Espaço de endereços do ficheiro de dados de um DAO. As posições são sempre as do
+ * formato sem compressão, por isso os índices (hash, árvore B+) não dependem do modo
+ * de armazenamento.
+ */
+interface Storage extends Closeable {
+
+    /**
+     * @return O tamanho lógico dos dados.
+     */
+    long length() throws IOException;
+
+    /**
+     * Lê até len bytes a partir da posição.
+     * @return O número de bytes lidos, ou -1 se a posição estiver no fim dos dados.
+     */
+    int readAt(long pos, byte[] b, int off, int len) throws IOException;
+
+    /**
+     * Escreve os bytes na posição, aumentando o tamanho se escrever para lá do fim.
+     */
+    void write(long pos, byte[] b, int off, int len) throws IOException;
+
+    /**
+     * Grava no disco o que estiver pendente em memória.
+     */
+    default void flush() throws IOException {
+    }
+
+    default void readFully(long pos, byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = readAt(pos, b, off, len);
+            if (n < 0) throw new EOFException();
+            pos += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    default int readInt(long pos) throws IOException {
+        byte[] b = new byte[4];
+        readFully(pos, b, 0, 4);
+        return ((b[0] & 0xFF) << 24) | ((b[1] & 0xFF) << 16) | ((b[2] & 0xFF) << 8) | (b[3] & 0xFF);
+    }
+
+    default void writeInt(long pos, int v) throws IOException {
+        write(pos, new byte[]{(byte) (v >>> 24), (byte) (v >>> 16), (byte) (v >>> 8), (byte) v}, 0, 4);
+    }
+
+    default void writeByte(long pos, int v) throws IOException {
+        write(pos, new byte[]{(byte) v}, 0, 1);
+    }
+
+    /**
+     * Abre o ficheiro de dados no modo pedido. Um ficheiro existente no outro modo é
+     * convertido, mantendo as posições lógicas, e por isso os índices continuam válidos.
+     * @param dbPath O ficheiro de dados.
+     * @param mapPath O mapa de páginas, usado só no modo comprimido.
+     * @param compressed Se os dados devem ser guardados em páginas comprimidas.
+     */
+    static Storage open(String dbPath, String mapPath, boolean compressed) throws IOException {
+        File db = new File(dbPath);
+        boolean onDisk = CompressedStorage.isCompressed(db);
+        if (db.length() > 0 && onDisk != compressed) {
+            convert(db, new File(mapPath), onDisk, compressed);
+        }
+        if (compressed) {
+            return new CompressedStorage(db, new File(mapPath));
+        }
+        new File(mapPath).delete();
+        return new RawStorage(db);
+    }
+
+    private static void convert(File db, File map, boolean fromCompressed, boolean toCompressed) throws IOException {
+        File tmpDb = new File(db.getPath() + ".tmp");
+        File tmpMap = new File(map.getPath() + ".tmp");
+        tmpDb.delete();
+        tmpMap.delete();
+        try (Storage from = fromCompressed ? new CompressedStorage(db, map) : new RawStorage(db);
+             Storage to = toCompressed ? new CompressedStorage(tmpDb, tmpMap) : new RawStorage(tmpDb)) {
+            byte[] buffer = new byte[64 * 1024];
+            long pos = 0;
+            int n;
+            while ((n = from.readAt(pos, buffer, 0, buffer.length)) > 0) {
+                to.write(pos, buffer, 0, n);
+                pos += n;
+            }
+        }
+        // O mapa é trocado antes dos dados: se a troca for interrompida, os dados ainda estão
+        // no formato antigo e a conversão repete-se na abertura seguinte
+        if (toCompressed) {
+            Files.move(tmpMap.toPath(), map.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(tmpDb.toPath(), db.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        if (!toCompressed) {
+            map.delete();
+        }
+    }
+}
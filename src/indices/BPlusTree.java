@@ -1,5 +1,7 @@
 package indices;
 
+import compressao.SnapshotFile;
+
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.ArrayList;
@@ -63,7 +65,7 @@ public class BPlusTree {
     }
 
     public BPlusTree(String filePath) throws IOException {
-        this.file = new RandomAccessFile(filePath, "rw");
+        this.file = new SnapshotFile(filePath, "rw"); // Pode ser copiado por um backup online
         if (file.length() == 0) {
             this.rootAddress = 8;
             Node root = new Node(rootAddress);
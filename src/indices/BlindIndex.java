@@ -0,0 +1,127 @@
+package indices;
+
+import compressao.SnapshotFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Índice cego: procura por igualdade num campo cifrado sem o decifrar.
+ *
+ * Cada registo é indexado por um token determinístico do valor (ex: HMAC do CNPJ,
+ * ver Envelope.blindIndex), calculado com uma chave secreta: quem só tem o ficheiro
+ * não consegue recuperar o valor nem testar candidatos sem a chave.
+ *
+ * As entradas ficam num Hash Extensível. A chave é formada pelos 4 primeiros bytes do
+ * token; em caso de colisão usa-se a seguinte (sondagem linear). O valor guarda o ID
+ * do registo nos 32 bits baixos e os 4 bytes seguintes do token (31 bits) nos altos,
+ * o que afasta quase todas as entradas de outros valores sem ler os registos. As
+ * remoções deixam uma lápide, para não cortar as sequências de sondagem.
+ *
+ * Como os outros índices opcionais, é marcado como "sujo" enquanto está aberto e
+ * recebe o carimbo do ficheiro de dados ao fechar.
+ */
+public class BlindIndex {
+
+    private static final long DIRTY = -1;
+    private static final long TOMBSTONE = -2;
+
+    private final String basePath;
+    private final RandomAccessFile stampFile;
+    private final long loadedStamp;
+    private ExtensibleHash hash;
+
+    public BlindIndex(String basePath) throws IOException {
+        this.basePath = basePath;
+        this.stampFile = new SnapshotFile(basePath + ".stamp", "rw");
+        this.loadedStamp = (stampFile.length() >= 8) ? stampFile.readLong() : DIRTY;
+        stampFile.seek(0);
+        stampFile.writeLong(DIRTY);
+        this.hash = new ExtensibleHash(basePath + ".dir", basePath + ".bkt");
+    }
+
+    /**
+     * @return true se o índice foi fechado com o mesmo carimbo do ficheiro de dados.
+     */
+    public boolean isConsistentWith(long stamp) {
+        return loadedStamp != DIRTY && loadedStamp == stamp;
+    }
+
+    /**
+     * Descarta todas as entradas.
+     */
+    public void clear() throws IOException {
+        hash.close();
+        new File(basePath + ".dir").delete();
+        new File(basePath + ".bkt").delete();
+        hash = new ExtensibleHash(basePath + ".dir", basePath + ".bkt");
+    }
+
+    public void close(long stamp) throws IOException {
+        hash.close();
+        stampFile.seek(0);
+        stampFile.writeLong(stamp);
+        stampFile.close();
+    }
+
+    public void insert(byte[] token, int id) throws IOException {
+        long valor = entry(token, id);
+        for (int key = slot(token); ; key++) {
+            long atual = hash.search(key);
+            if (atual == -1) {
+                hash.insert(key, valor);
+                return;
+            }
+            if (atual == TOMBSTONE) {
+                hash.update(key, valor);
+                return;
+            }
+            if (atual == valor) return;
+        }
+    }
+
+    public void delete(byte[] token, int id) throws IOException {
+        long valor = entry(token, id);
+        for (int key = slot(token); ; key++) {
+            long atual = hash.search(key);
+            if (atual == -1) return;
+            if (atual == valor) {
+                hash.update(key, TOMBSTONE);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Os IDs dos registos cujo token coincide nos 8 primeiros bytes. Com tokens
+     * de um HMAC, um falso positivo é raríssimo, mas quem chama deve confirmá-lo.
+     */
+    public List<Integer> search(byte[] token) throws IOException {
+        long tag = tag(token);
+        List<Integer> ids = new ArrayList<>();
+        for (int key = slot(token); ; key++) {
+            long atual = hash.search(key);
+            if (atual == -1) return ids;
+            if (atual != TOMBSTONE && (atual >>> 32) == tag) {
+                ids.add((int) atual);
+            }
+        }
+    }
+
+    // --- MÉTODOS AUXILIARES ---
+
+    private static int slot(byte[] token) {
+        return ((token[0] & 0xFF) << 24) | ((token[1] & 0xFF) << 16) | ((token[2] & 0xFF) << 8) | (token[3] & 0xFF);
+    }
+
+    private static long tag(byte[] token) {
+        return (((token[4] & 0x7F) << 24) | ((token[5] & 0xFF) << 16) | ((token[6] & 0xFF) << 8) | (token[7] & 0xFF));
+    }
+
+    private static long entry(byte[] token, int id) {
+        return (tag(token) << 32) | (id & 0xFFFFFFFFL);
+    }
+}
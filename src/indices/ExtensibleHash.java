@@ -1,5 +1,7 @@
 package indices;
 
+import compressao.SnapshotFile;
+
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.ArrayList;
@@ -50,8 +52,9 @@ public class ExtensibleHash {
     }
 
     public ExtensibleHash(String dirPath, String buckPath) throws IOException {
-        this.directoryFile = new RandomAccessFile(dirPath, "rw");
-        this.bucketsFile = new RandomAccessFile(buckPath, "rw");
+        // SnapshotFile: o backup online pode copiar o índice enquanto ele é alterado
+        this.directoryFile = new SnapshotFile(dirPath, "rw");
+        this.bucketsFile = new SnapshotFile(buckPath, "rw");
 
         if (directoryFile.length() == 0) {
             globalDepth = 1;
@@ -158,6 +161,10 @@ public class ExtensibleHash {
             doubleDirectory();
         }
 
+        // Todas as chaves do balde partilham os bits baixos da profundidade local: o seu
+        // hash sai de qualquer uma, sem procurar o balde no diretório
+        int bucketHash = b.keys[0] & ((1 << b.localDepth) - 1);
+
         b.localDepth++;
         Bucket newB = new Bucket(bucketsFile.length(), b.localDepth);
 
@@ -172,35 +179,32 @@ public class ExtensibleHash {
         newB.count = 0;
 
         for(int i=0; i<tempKeys.size(); i++){
-            redistributeEntry(b, newB, tempKeys.get(i), tempValues.get(i));
+            redistributeEntry(b, newB, tempKeys.get(i), tempValues.get(i), bucketHash);
         }
 
         b.writeToFile();
         newB.writeToFile();
 
-        updateDirectoryAfterSplit(b, newB);
+        updateDirectoryAfterSplit(b, newB, bucketHash);
     }
 
     private void doubleDirectory() throws IOException {
-        long oldDirSize = 1L << globalDepth;
-        long[] oldDirPointers = new long[(int)oldDirSize];
+        int oldDirBytes = (1 << globalDepth) * 8;
+        byte[] dir = new byte[oldDirBytes * 2];
         directoryFile.seek(4);
-        for(int i=0; i<oldDirSize; i++) {
-            oldDirPointers[i] = directoryFile.readLong();
-        }
+        directoryFile.readFully(dir, 0, oldDirBytes);
 
         globalDepth++;
         directoryFile.seek(0);
         directoryFile.writeInt(globalDepth);
 
-        for(int i=0; i < oldDirPointers.length * 2; i++) {
-            directoryFile.writeLong(oldDirPointers[i/2]);
-        }
+        // O hash usa os bits menos significativos: a nova metade repete a antiga
+        System.arraycopy(dir, 0, dir, oldDirBytes, oldDirBytes);
+        directoryFile.write(dir);
     }
 
-    private void redistributeEntry(Bucket b1, Bucket b2, int key, long value) {
+    private void redistributeEntry(Bucket b1, Bucket b2, int key, long value, int originalBucketHash) {
         int hash = key & ((1 << b1.localDepth) - 1);
-        int originalBucketHash = getBucketHash(b1);
 
         if (hash == originalBucketHash) {
             b1.keys[b1.count] = key;
@@ -213,35 +217,27 @@ public class ExtensibleHash {
         }
     }
 
-    private void updateDirectoryAfterSplit(Bucket b1, Bucket b2) throws IOException {
-        int hash1 = getBucketHash(b1);
-        int hash2 = getBucketHash(b2);
+    private void updateDirectoryAfterSplit(Bucket b1, Bucket b2, int hash1) throws IOException {
+        // O novo balde ainda não está no diretório: o seu hash difere no bit mais alto da profundidade local.
+        // As entradas que apontavam para o balde antigo repetem-se a cada 2^(profundidade anterior)
+        int bitNovo = 1 << (b1.localDepth - 1);
+        byte[] b1Address = longBytes(b1.address);
+        byte[] b2Address = longBytes(b2.address);
 
         long dirSize = 1L << globalDepth;
-        for(int i=0; i < dirSize; i++){
-            int currentHash = i & ((1 << b1.localDepth) - 1);
-            if (currentHash == hash1) {
-                directoryFile.seek(4 + (long) i * 8);
-                directoryFile.writeLong(b1.address);
-            } else if(currentHash == hash2) {
-                directoryFile.seek(4 + (long) i * 8);
-                directoryFile.writeLong(b2.address);
-            }
+        for (long i = hash1; i < dirSize; i += bitNovo) {
+            directoryFile.seek(4 + i * 8);
+            directoryFile.write((i & bitNovo) == 0 ? b1Address : b2Address);
         }
     }
 
-    private int getBucketHash(Bucket b) {
-        // A forma como as chaves são distribuídas depende da sua profundidade local.
-        // O primeiro ponteiro no diretório que aponta para este balde pode ser usado para derivar o seu "hash"
-        for (int i=0; i < (1 << globalDepth); i++) {
-            try {
-                directoryFile.seek(4 + (long)i * 8);
-                if (directoryFile.readLong() == b.address) {
-                    return i & ((1 << b.localDepth) - 1);
-                }
-            } catch(IOException e) { /* Ignora */ }
+    private static byte[] longBytes(long v) {
+        byte[] b = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            b[i] = (byte) v;
+            v >>>= 8;
         }
-        return -1; // Não deveria acontecer
+        return b;
     }
 }
 
@@ -0,0 +1,407 @@
+package indices;
+
+import java.io.*;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Índice invertido para pesquisa textual ranqueada (BM25).
+ *
+ * O texto é dividido em termos sem acentos e em minúsculas. Cada termo aponta para
+ * uma lista de postings (ID do documento e frequência do termo) guardada no ficheiro
+ * ".post", com os IDs codificados por diferença (delta) e todos os números em varint.
+ * As listas alteradas ficam num buffer em memória e são gravadas em lote (no fim do
+ * ficheiro, passando a versão antiga a lixo) quando o buffer enche ou ao fechar;
+ * o lixo é recuperado por compactação ao fechar.
+ *
+ * O dicionário (termo -> posição da lista) e os tamanhos dos documentos ficam em
+ * memória e são gravados no ficheiro ".dict" ao fechar, com a mesma marca de
+ * "sujo" usada no TrigramIndex.
+ */
+public class InvertedIndex {
+
+    private static final long DIRTY = -1;
+    private static final int MIN_TOKEN_LENGTH = 2;
+    private static final int MAX_PENDING_POSTINGS = 1 << 20;
+
+    // Parâmetros habituais do BM25
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final RandomAccessFile dictFile;
+    private final RandomAccessFile postFile;
+    private final Map<String, TermEntry> dictionary = new HashMap<>();
+    private final Map<Integer, Integer> docLengths = new HashMap<>();
+    private long totalLength;
+    private long garbage; // Bytes de listas antigas no ficheiro de postings
+    private long loadedStamp;
+    private final Map<String, Postings> pending = new HashMap<>(); // Listas alteradas ainda não gravadas
+    private int pendingPostings;
+
+    private static class TermEntry {
+        long offset;
+        int length;
+        int df;
+    }
+
+    /**
+     * Lista de postings descodificada: IDs crescentes e as respetivas frequências.
+     */
+    private static class Postings {
+        int[] ids;
+        int[] tfs;
+        int size;
+
+        Postings(int capacity) {
+            ids = new int[Math.max(4, capacity)];
+            tfs = new int[ids.length];
+        }
+
+        void put(int id, int tf) {
+            int pos = (size == 0 || ids[size - 1] < id) ? -size - 1 : Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) {
+                tfs[pos] = tf;
+                return;
+            }
+            pos = -pos - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                tfs = Arrays.copyOf(tfs, size * 2);
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            System.arraycopy(tfs, pos, tfs, pos + 1, size - pos);
+            ids[pos] = id;
+            tfs[pos] = tf;
+            size++;
+        }
+
+        void remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0) return;
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            System.arraycopy(tfs, pos + 1, tfs, pos, size - pos - 1);
+            size--;
+        }
+    }
+
+    /**
+     * Resultado de uma pesquisa: ID do documento e a sua pontuação.
+     */
+    public static class Hit {
+        public final int id;
+        public final double score;
+
+        Hit(int id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+
+    public InvertedIndex(String dictPath, String postPath) throws IOException {
+        this.dictFile = new RandomAccessFile(dictPath, "rw");
+        this.postFile = new RandomAccessFile(postPath, "rw");
+        if (dictFile.length() == 0) {
+            loadedStamp = DIRTY;
+        } else {
+            load();
+        }
+        dictFile.seek(0);
+        dictFile.writeLong(DIRTY);
+    }
+
+    /**
+     * Verifica se o conteúdo carregado corresponde ao estado do ficheiro de dados.
+     * @param stamp O carimbo esperado (o tamanho do ficheiro de dados).
+     * @return true se o índice pode ser usado sem reconstrução.
+     */
+    public boolean isConsistentWith(long stamp) {
+        return loadedStamp != DIRTY && loadedStamp == stamp;
+    }
+
+    public void clear() throws IOException {
+        dictionary.clear();
+        pending.clear();
+        pendingPostings = 0;
+        docLengths.clear();
+        totalLength = 0;
+        garbage = 0;
+        postFile.setLength(0);
+    }
+
+    public void close(long stamp) throws IOException {
+        flush();
+        if (garbage > postFile.length() - garbage) {
+            compact();
+        }
+        save(stamp);
+        dictFile.close();
+        postFile.close();
+    }
+
+    // --- MÉTODOS PÚBLICOS ---
+
+    public void insert(int id, String texto) throws IOException {
+        Map<String, Integer> tf = termFrequencies(texto);
+        int length = 0;
+        for (Map.Entry<String, Integer> entry : tf.entrySet()) {
+            length += entry.getValue();
+            modifiable(entry.getKey()).put(id, entry.getValue());
+            pendingPostings++;
+        }
+        Integer old = docLengths.put(id, length);
+        totalLength += length - (old == null ? 0 : old);
+        if (pendingPostings > MAX_PENDING_POSTINGS) flush();
+    }
+
+    public void delete(int id, String texto) throws IOException {
+        for (String term : termFrequencies(texto).keySet()) {
+            modifiable(term).remove(id);
+        }
+        Integer old = docLengths.remove(id);
+        if (old != null) totalLength -= old;
+    }
+
+    /**
+     * Grava no ficheiro de postings todas as listas alteradas em memória.
+     */
+    public void flush() throws IOException {
+        for (Map.Entry<String, Postings> entry : pending.entrySet()) {
+            writePostings(entry.getKey(), entry.getValue());
+        }
+        pending.clear();
+        pendingPostings = 0;
+    }
+
+    /**
+     * Pesquisa os documentos mais relevantes para a consulta, pela fórmula BM25.
+     * @param consulta O texto da consulta.
+     * @param k O número máximo de resultados.
+     * @return Os k melhores resultados, do mais relevante para o menos relevante.
+     */
+    public List<Hit> search(String consulta, int k) throws IOException {
+        List<Hit> hits = new ArrayList<>();
+        int n = docLengths.size();
+        if (n == 0 || k <= 0) return hits;
+        double avgLength = (double) totalLength / n;
+
+        Map<Integer, Double> scores = new HashMap<>();
+        for (String term : termFrequencies(consulta).keySet()) {
+            Postings list = readPostings(term);
+            if (list.size == 0) continue;
+            double idf = Math.log(1 + (n - list.size + 0.5) / (list.size + 0.5));
+            for (int i = 0; i < list.size; i++) {
+                int doc = list.ids[i];
+                int tf = list.tfs[i];
+                double norm = K1 * (1 - B + B * docLengths.getOrDefault(doc, 0) / avgLength);
+                scores.merge(doc, idf * tf * (K1 + 1) / (tf + norm), Double::sum);
+            }
+        }
+
+        // Min-heap de tamanho k com os melhores resultados
+        PriorityQueue<Hit> top = new PriorityQueue<>((a, b) -> Double.compare(a.score, b.score));
+        for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+            if (top.size() < k) {
+                top.add(new Hit(entry.getKey(), entry.getValue()));
+            } else if (entry.getValue() > top.peek().score) {
+                top.poll();
+                top.add(new Hit(entry.getKey(), entry.getValue()));
+            }
+        }
+        while (!top.isEmpty()) hits.add(top.poll());
+        Collections.reverse(hits);
+        return hits;
+    }
+
+    /**
+     * Divide o texto em termos: remove acentos, passa para minúsculas e separa
+     * por tudo o que não for letra ou dígito. Termos de 1 caractere são ignorados.
+     */
+    public static List<String> tokenize(String texto) {
+        List<String> tokens = new ArrayList<>();
+        if (texto == null) return tokens;
+        String semAcentos = Normalizer.normalize(texto, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}+", "")
+                .toLowerCase();
+        for (String token : semAcentos.split("[^\\p{L}\\p{N}]+")) {
+            if (token.length() >= MIN_TOKEN_LENGTH) tokens.add(token);
+        }
+        return tokens;
+    }
+
+    // --- MÉTODOS AUXILIARES ---
+
+    private static Map<String, Integer> termFrequencies(String texto) {
+        Map<String, Integer> tf = new HashMap<>();
+        for (String token : tokenize(texto)) {
+            tf.merge(token, 1, Integer::sum);
+        }
+        return tf;
+    }
+
+    /**
+     * Devolve a lista do termo para alteração, descodificando-a do disco se necessário.
+     */
+    private Postings modifiable(String term) throws IOException {
+        Postings list = pending.get(term);
+        if (list == null) {
+            list = readPostings(term);
+            pending.put(term, list);
+        }
+        return list;
+    }
+
+    /**
+     * Lê a lista de postings de um termo (do buffer em memória ou do disco).
+     */
+    private Postings readPostings(String term) throws IOException {
+        Postings cached = pending.get(term);
+        if (cached != null) return cached;
+
+        TermEntry entry = dictionary.get(term);
+        if (entry == null) return new Postings(0);
+
+        byte[] data = new byte[entry.length];
+        postFile.seek(entry.offset);
+        postFile.readFully(data);
+
+        Postings list = new Postings(entry.df);
+        int[] pos = {0};
+        int last = 0;
+        for (int i = 0; i < entry.df; i++) {
+            last += readVarInt(data, pos);
+            list.ids[i] = last;
+            list.tfs[i] = readVarInt(data, pos);
+        }
+        list.size = entry.df;
+        return list;
+    }
+
+    /**
+     * Grava a nova versão da lista no fim do ficheiro (ou remove o termo se ficou vazia).
+     */
+    private void writePostings(String term, Postings list) throws IOException {
+        TermEntry entry = dictionary.get(term);
+        if (entry != null) garbage += entry.length;
+
+        if (list.size == 0) {
+            dictionary.remove(term);
+            return;
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        int last = 0;
+        for (int i = 0; i < list.size; i++) {
+            writeVarInt(baos, list.ids[i] - last);
+            writeVarInt(baos, list.tfs[i]);
+            last = list.ids[i];
+        }
+        byte[] data = baos.toByteArray();
+
+        if (entry == null) {
+            entry = new TermEntry();
+            dictionary.put(term, entry);
+        }
+        entry.offset = postFile.length();
+        entry.length = data.length;
+        entry.df = list.size;
+        postFile.seek(entry.offset);
+        postFile.write(data);
+    }
+
+    /**
+     * Reescreve o ficheiro de postings só com as listas em uso.
+     */
+    private void compact() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (TermEntry entry : dictionary.values()) {
+            byte[] data = new byte[entry.length];
+            postFile.seek(entry.offset);
+            postFile.readFully(data);
+            entry.offset = baos.size();
+            baos.write(data);
+        }
+        postFile.setLength(0);
+        postFile.seek(0);
+        postFile.write(baos.toByteArray());
+        garbage = 0;
+    }
+
+    static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readVarInt(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private void load() throws IOException {
+        byte[] content = new byte[(int) dictFile.length()];
+        dictFile.seek(0);
+        dictFile.readFully(content);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(content));
+
+        loadedStamp = dis.readLong();
+        if (loadedStamp == DIRTY) return;
+
+        garbage = dis.readLong();
+        int docCount = dis.readInt();
+        for (int i = 0; i < docCount; i++) {
+            int id = dis.readInt();
+            int length = dis.readInt();
+            docLengths.put(id, length);
+            totalLength += length;
+        }
+        int termCount = dis.readInt();
+        for (int i = 0; i < termCount; i++) {
+            String term = dis.readUTF();
+            TermEntry entry = new TermEntry();
+            entry.offset = dis.readLong();
+            entry.length = dis.readInt();
+            entry.df = dis.readInt();
+            dictionary.put(term, entry);
+        }
+    }
+
+    /**
+     * Formato: [carimbo][lixo][nº de documentos]{ID, tamanho}[nº de termos]{termo, posição, bytes, df}
+     */
+    private void save(long stamp) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeLong(stamp);
+        dos.writeLong(garbage);
+        dos.writeInt(docLengths.size());
+        for (Map.Entry<Integer, Integer> entry : docLengths.entrySet()) {
+            dos.writeInt(entry.getKey());
+            dos.writeInt(entry.getValue());
+        }
+        dos.writeInt(dictionary.size());
+        for (Map.Entry<String, TermEntry> entry : dictionary.entrySet()) {
+            dos.writeUTF(entry.getKey());
+            dos.writeLong(entry.getValue().offset);
+            dos.writeInt(entry.getValue().length);
+            dos.writeInt(entry.getValue().df);
+        }
+        dictFile.setLength(0);
+        dictFile.seek(0);
+        dictFile.write(baos.toByteArray());
+    }
+}
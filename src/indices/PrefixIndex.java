@@ -0,0 +1,541 @@
+package indices;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Índice de prefixos (autocompletar) sobre a chave secundária, em minúsculas.
+ *
+ * As chaves ficam em segmentos imutáveis: cada segmento é uma trie compactada
+ * (arestas com sequências de bytes UTF-8) gravada num ficheiro próprio e lido por
+ * mapeamento em memória, sem carregar nada para o heap. As inserções vão para um
+ * buffer em memória, que é gravado como um novo segmento quando enche ou ao fechar;
+ * as remoções de chaves já gravadas são marcadas por ID em cada segmento. Quando
+ * há segmentos demais, os menores são fundidos num só, descartando os removidos.
+ *
+ * O manifesto (lista de segmentos e remoções) segue o mesmo esquema do índice de
+ * trigramas: fica marcado como "sujo" enquanto o índice está aberto e recebe o
+ * carimbo do ficheiro de dados ao fechar.
+ */
+public class PrefixIndex {
+
+    private static final long DIRTY = -1;
+    private static final int SEGMENT_MAGIC = 0x50524658; // "PRFX"
+    private static final int SEGMENT_HEADER_SIZE = 12;   // [magic][nº de entradas][posição da raiz]
+    private static final int FLUSH_THRESHOLD = 4096;     // Entradas no buffer antes de gravar um segmento
+    private static final int MAX_SEGMENTS = 8;
+    private static final int MERGE_FACTOR = 4;           // Quantos segmentos são fundidos de cada vez
+
+    private static final Comparator<Posting> ORDER = (a, b) -> {
+        int cmp = Arrays.compareUnsigned(a.key, b.key);
+        return (cmp != 0) ? cmp : Integer.compare(a.id, b.id);
+    };
+
+    private final String basePath;
+    private final RandomAccessFile manifest;
+    private final List<Segment> segments = new ArrayList<>();
+    private final TreeMap<byte[], TreeSet<Integer>> buffer = new TreeMap<>(Arrays::compareUnsigned);
+    private int bufferedCount;
+    private int nextSegment;
+    private long loadedStamp;
+
+    /**
+     * Uma chave (em bytes UTF-8, já em minúsculas) associada a um ID.
+     */
+    private static final class Posting {
+        final byte[] key;
+        final int id;
+
+        Posting(byte[] key, int id) {
+            this.key = key;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Segmento imutável, mapeado em memória.
+     * Cada nó é gravado como: [nº de IDs][IDs em delta][nº de filhos] e, para cada
+     * filho (ordenados pelo primeiro byte), [tamanho do rótulo][rótulo][posição do filho],
+     * tudo em varint. Os filhos são gravados antes dos pais; a raiz fica no cabeçalho.
+     */
+    private static final class Segment {
+        final int number;
+        final File file;
+        final MappedByteBuffer data;
+        final int entryCount;
+        final int root;
+        final Set<Integer> deleted = new HashSet<>();
+
+        Segment(int number, File file) throws IOException {
+            this.number = number;
+            this.file = file;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                this.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (data.capacity() < SEGMENT_HEADER_SIZE || data.getInt(0) != SEGMENT_MAGIC) {
+                throw new IOException("Segmento de prefixos inválido: " + file.getName());
+            }
+            this.entryCount = data.getInt(4);
+            this.root = data.getInt(8);
+        }
+
+        int liveCount() {
+            return entryCount - deleted.size();
+        }
+
+        /**
+         * Acrescenta a out, em ordem lexicográfica, até limit entradas ativas cuja chave começa pelo prefixo.
+         */
+        void collect(byte[] prefix, int limit, List<Posting> out) {
+            int node = root;
+            byte[] path = new byte[0];
+            int p = 0;
+            int[] pos = new int[1];
+            while (p < prefix.length) {
+                pos[0] = node;
+                skipIds(pos);
+                int childCount = readVarInt(pos);
+                int next = -1;
+                for (int c = 0; c < childCount && next < 0; c++) {
+                    int labelLength = readVarInt(pos);
+                    int labelStart = pos[0];
+                    pos[0] += labelLength;
+                    int child = readVarInt(pos);
+                    if (data.get(labelStart) != prefix[p]) continue;
+
+                    // O rótulo tem de coincidir com o resto do prefixo (ou o prefixo acabar a meio dele)
+                    int comparar = Math.min(labelLength, prefix.length - p);
+                    for (int i = 1; i < comparar; i++) {
+                        if (data.get(labelStart + i) != prefix[p + i]) return;
+                    }
+                    path = append(path, labelStart, labelLength);
+                    p += comparar;
+                    next = child;
+                }
+                if (next < 0) return;
+                node = next;
+            }
+            visit(node, path, limit, out);
+        }
+
+        /**
+         * @return true se a chave exata está no segmento associada ao ID (mesmo que marcada como removida).
+         */
+        boolean contains(byte[] key, int id) {
+            int node = root;
+            int p = 0;
+            int[] pos = new int[1];
+            while (p < key.length) {
+                pos[0] = node;
+                skipIds(pos);
+                int childCount = readVarInt(pos);
+                int next = -1;
+                for (int c = 0; c < childCount && next < 0; c++) {
+                    int labelLength = readVarInt(pos);
+                    int labelStart = pos[0];
+                    pos[0] += labelLength;
+                    int child = readVarInt(pos);
+                    if (data.get(labelStart) != key[p]) continue;
+                    if (labelLength > key.length - p) return false;
+                    for (int i = 1; i < labelLength; i++) {
+                        if (data.get(labelStart + i) != key[p + i]) return false;
+                    }
+                    p += labelLength;
+                    next = child;
+                }
+                if (next < 0) return false;
+                node = next;
+            }
+            pos[0] = node;
+            int idCount = readVarInt(pos);
+            int atual = 0;
+            for (int i = 0; i < idCount; i++) {
+                atual += readVarInt(pos);
+                if (atual == id) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Percorre a subárvore em pré-ordem (que é a ordem lexicográfica das chaves).
+         * @return false quando o limite foi atingido.
+         */
+        private boolean visit(int node, byte[] path, int limit, List<Posting> out) {
+            int[] pos = {node};
+            int idCount = readVarInt(pos);
+            int atual = 0;
+            int collected = 0;
+            for (int i = 0; i < idCount; i++) {
+                atual += readVarInt(pos);
+                if (deleted.contains(atual)) continue;
+                if (collected == limit) return false;
+                out.add(new Posting(path, atual));
+                collected++;
+            }
+            limit -= collected;
+            if (limit == 0) return false;
+
+            int childCount = readVarInt(pos);
+            for (int c = 0; c < childCount; c++) {
+                int labelLength = readVarInt(pos);
+                int labelStart = pos[0];
+                pos[0] += labelLength;
+                int child = readVarInt(pos);
+
+                int antes = out.size();
+                boolean continuar = visit(child, append(path, labelStart, labelLength), limit, out);
+                limit -= out.size() - antes;
+                if (!continuar || limit == 0) return false;
+            }
+            return true;
+        }
+
+        private void skipIds(int[] pos) {
+            int idCount = readVarInt(pos);
+            for (int i = 0; i < idCount; i++) {
+                readVarInt(pos);
+            }
+        }
+
+        private byte[] append(byte[] path, int start, int length) {
+            byte[] novo = Arrays.copyOf(path, path.length + length);
+            for (int i = 0; i < length; i++) {
+                novo[path.length + i] = data.get(start + i);
+            }
+            return novo;
+        }
+
+        private int readVarInt(int[] pos) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data.get(pos[0]++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+
+    public PrefixIndex(String basePath) throws IOException {
+        this.basePath = basePath;
+        this.manifest = new RandomAccessFile(basePath + ".manifest", "rw");
+        if (manifest.length() == 0) {
+            loadedStamp = DIRTY;
+        } else {
+            load();
+        }
+        // Marca o índice como aberto: só volta a ser válido após close()
+        manifest.seek(0);
+        manifest.writeLong(DIRTY);
+    }
+
+    /**
+     * Verifica se o conteúdo carregado corresponde ao estado do ficheiro de dados.
+     * @param stamp O carimbo esperado (o tamanho do ficheiro de dados).
+     * @return true se o índice pode ser usado sem reconstrução.
+     */
+    public boolean isConsistentWith(long stamp) {
+        return loadedStamp != DIRTY && loadedStamp == stamp;
+    }
+
+    /**
+     * Descarta todos os segmentos e o buffer.
+     */
+    public void clear() {
+        segments.clear();
+        buffer.clear();
+        bufferedCount = 0;
+        deleteSegmentFiles(basePath, new HashSet<>());
+    }
+
+    public void close(long stamp) throws IOException {
+        flush();
+        save(stamp);
+        manifest.close();
+    }
+
+    /**
+     * Apaga o manifesto e todos os segmentos de um índice fechado.
+     * @param basePath O caminho base usado no construtor.
+     */
+    public static void deleteFiles(String basePath) {
+        new File(basePath + ".manifest").delete();
+        deleteSegmentFiles(basePath, new HashSet<>());
+    }
+
+    // --- MÉTODOS PÚBLICOS ---
+
+    public void insert(String key, int id) throws IOException {
+        if (key == null) return;
+        if (buffer.computeIfAbsent(fold(key), k -> new TreeSet<>()).add(id)) {
+            bufferedCount++;
+        }
+        if (bufferedCount >= FLUSH_THRESHOLD) {
+            flush();
+        }
+    }
+
+    public void delete(String key, int id) {
+        if (key == null) return;
+        byte[] folded = fold(key);
+        TreeSet<Integer> ids = buffer.get(folded);
+        if (ids != null && ids.remove(id)) {
+            bufferedCount--;
+            if (ids.isEmpty()) buffer.remove(folded);
+            return;
+        }
+        for (Segment segment : segments) {
+            if (segment.contains(folded, id)) {
+                segment.deleted.add(id);
+            }
+        }
+    }
+
+    /**
+     * Devolve os IDs das chaves que começam pelo prefixo (sem distinguir maiúsculas),
+     * em ordem lexicográfica da chave e, em caso de empate, do ID.
+     * @param prefix O início da chave.
+     * @param limit O número máximo de resultados.
+     * @return A lista de IDs, com no máximo limit elementos.
+     */
+    public List<Integer> complete(String prefix, int limit) {
+        List<Integer> result = new ArrayList<>();
+        if (prefix == null || limit <= 0) return result;
+        byte[] folded = fold(prefix);
+
+        // Cada fonte contribui no máximo com os seus primeiros limit resultados
+        List<Posting> candidates = new ArrayList<>();
+        int vindosDoBuffer = 0;
+        for (Map.Entry<byte[], TreeSet<Integer>> entry : buffer.tailMap(folded, true).entrySet()) {
+            if (!startsWith(entry.getKey(), folded) || vindosDoBuffer == limit) break;
+            for (int id : entry.getValue()) {
+                if (vindosDoBuffer == limit) break;
+                candidates.add(new Posting(entry.getKey(), id));
+                vindosDoBuffer++;
+            }
+        }
+        for (Segment segment : segments) {
+            segment.collect(folded, limit, candidates);
+        }
+
+        candidates.sort(ORDER);
+        for (int i = 0; i < candidates.size() && result.size() < limit; i++) {
+            result.add(candidates.get(i).id);
+        }
+        return result;
+    }
+
+    /**
+     * Grava o buffer como um novo segmento e, se necessário, funde os segmentos menores.
+     */
+    public void flush() throws IOException {
+        if (buffer.isEmpty()) return;
+        List<Posting> postings = new ArrayList<>(bufferedCount);
+        for (Map.Entry<byte[], TreeSet<Integer>> entry : buffer.entrySet()) {
+            for (int id : entry.getValue()) {
+                postings.add(new Posting(entry.getKey(), id));
+            }
+        }
+        segments.add(writeSegment(postings));
+        buffer.clear();
+        bufferedCount = 0;
+
+        if (segments.size() > MAX_SEGMENTS) {
+            mergeSmallest();
+        }
+    }
+
+    // --- MÉTODOS AUXILIARES ---
+
+    private void mergeSmallest() throws IOException {
+        segments.sort(Comparator.comparingInt(Segment::liveCount));
+        List<Segment> fundir = new ArrayList<>(segments.subList(0, MERGE_FACTOR));
+
+        List<Posting> postings = new ArrayList<>();
+        for (Segment segment : fundir) {
+            segment.collect(new byte[0], Integer.MAX_VALUE, postings);
+        }
+        postings.sort(ORDER);
+
+        segments.removeAll(fundir);
+        segments.add(writeSegment(postings));
+        for (Segment segment : fundir) {
+            // Em alguns sistemas um ficheiro mapeado não pode ser apagado; fica órfão
+            // e é removido na próxima abertura
+            segment.file.delete();
+        }
+    }
+
+    private Segment writeSegment(List<Posting> postings) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[SEGMENT_HEADER_SIZE]);
+        int root = writeNode(out, postings, 0, postings.size(), 0);
+
+        byte[] bytes = out.toByteArray();
+        ByteBuffer.wrap(bytes).putInt(0, SEGMENT_MAGIC).putInt(4, postings.size()).putInt(8, root);
+
+        int number = nextSegment++;
+        File file = segmentFile(number);
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write(bytes);
+        }
+        return new Segment(number, file);
+    }
+
+    /**
+     * Grava o nó que cobre postings[from, to), cujas chaves partilham os primeiros depth bytes.
+     * @return A posição do nó no ficheiro.
+     */
+    private static int writeNode(ByteArrayOutputStream out, List<Posting> postings, int from, int to, int depth) {
+        // As chaves que terminam neste nó vêm primeiro (são as menores)
+        int i = from;
+        List<Integer> ids = new ArrayList<>();
+        while (i < to && postings.get(i).key.length == depth) {
+            ids.add(postings.get(i++).id);
+        }
+
+        List<byte[]> labels = new ArrayList<>();
+        List<Integer> children = new ArrayList<>();
+        while (i < to) {
+            byte primeiro = postings.get(i).key[depth];
+            int j = i + 1;
+            while (j < to && postings.get(j).key[depth] == primeiro) j++;
+
+            // O rótulo é o maior prefixo comum do grupo (basta comparar o primeiro com o último)
+            byte[] a = postings.get(i).key;
+            byte[] b = postings.get(j - 1).key;
+            int end = depth + 1;
+            while (end < a.length && end < b.length && a[end] == b[end]) end++;
+
+            labels.add(Arrays.copyOfRange(a, depth, end));
+            children.add(writeNode(out, postings, i, j, end));
+            i = j;
+        }
+
+        int offset = out.size();
+        writeVarInt(out, ids.size());
+        int anterior = 0;
+        for (int id : ids) {
+            writeVarInt(out, id - anterior);
+            anterior = id;
+        }
+        writeVarInt(out, labels.size());
+        for (int c = 0; c < labels.size(); c++) {
+            writeVarInt(out, labels.get(c).length);
+            out.write(labels.get(c), 0, labels.get(c).length);
+            writeVarInt(out, children.get(c));
+        }
+        return offset;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static byte[] fold(String key) {
+        return key.toLowerCase().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        if (key.length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (key[i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private File segmentFile(int number) {
+        return new File(basePath + "." + number + ".seg");
+    }
+
+    /**
+     * Apaga os ficheiros de segmento do índice cujo número não está em manter.
+     */
+    private static void deleteSegmentFiles(String basePath, Set<Integer> manter) {
+        File base = new File(basePath).getAbsoluteFile();
+        String prefixo = base.getName() + ".";
+        File[] ficheiros = base.getParentFile().listFiles();
+        if (ficheiros == null) return;
+        for (File f : ficheiros) {
+            String nome = f.getName();
+            if (!nome.startsWith(prefixo) || !nome.endsWith(".seg")) continue;
+            String numero = nome.substring(prefixo.length(), nome.length() - ".seg".length());
+            if (!numero.matches("\\d+")) continue;
+            if (!manter.contains(Integer.parseInt(numero))) {
+                f.delete();
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        manifest.seek(0);
+        loadedStamp = manifest.readLong();
+        // Mesmo sujo, o resto do manifesto está intacto: os números de segmento não se repetem
+        if (manifest.length() >= Long.BYTES + Integer.BYTES) {
+            nextSegment = manifest.readInt();
+        }
+        if (loadedStamp == DIRTY) return;
+
+        int segmentCount = manifest.readInt();
+        Set<Integer> numeros = new HashSet<>();
+        try {
+            for (int i = 0; i < segmentCount; i++) {
+                int number = manifest.readInt();
+                Segment segment = new Segment(number, segmentFile(number));
+                int deletedCount = manifest.readInt();
+                for (int j = 0; j < deletedCount; j++) {
+                    segment.deleted.add(manifest.readInt());
+                }
+                segments.add(segment);
+                numeros.add(number);
+            }
+        } catch (IOException e) {
+            // Segmento em falta ou corrompido: o DAO reconstrói o índice
+            segments.clear();
+            loadedStamp = DIRTY;
+            return;
+        }
+        deleteSegmentFiles(basePath, numeros);
+    }
+
+    /**
+     * Formato: [carimbo][próximo nº de segmento][nº de segmentos] e, para cada segmento,
+     * [número][nº de IDs removidos][IDs removidos...]
+     */
+    private void save(long stamp) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeLong(stamp);
+        dos.writeInt(nextSegment);
+        dos.writeInt(segments.size());
+        for (Segment segment : segments) {
+            dos.writeInt(segment.number);
+            dos.writeInt(segment.deleted.size());
+            for (int id : segment.deleted) {
+                dos.writeInt(id);
+            }
+        }
+        manifest.setLength(0);
+        manifest.seek(0);
+        manifest.write(baos.toByteArray());
+    }
+}
@@ -0,0 +1,255 @@
+package indices;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Índice invertido de trigramas para pesquisa por substring.
+ * Mapeia cada trigrama (3 caracteres consecutivos da chave, em minúsculas)
+ * para a lista ordenada dos IDs cujas chaves o contêm.
+ *
+ * As listas são mantidas em memória e gravadas no ficheiro ao fechar. Enquanto o
+ * índice está aberto, o cabeçalho fica marcado como "sujo"; assim, se o programa
+ * terminar sem fechar o índice, a próxima abertura deteta a inconsistência e o
+ * DAO reconstrói-o a partir do ficheiro de dados.
+ */
+public class TrigramIndex {
+
+    public static final int GRAM_SIZE = 3;
+    private static final long DIRTY = -1;
+
+    private final RandomAccessFile file;
+    private final Map<Long, PostingList> postings = new HashMap<>();
+    private long loadedStamp;
+
+    /**
+     * Lista de IDs ordenada e sem repetições, guardada num int[] que cresce sob demanda.
+     */
+    private static class PostingList {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            // IDs novos são crescentes, por isso o caso comum é acrescentar no fim
+            if (size == 0 || ids[size - 1] < id) {
+                ensureCapacity();
+                ids[size++] = id;
+                return;
+            }
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) return;
+            pos = -pos - 1;
+            ensureCapacity();
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0) return false;
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+            return true;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        private void ensureCapacity() {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+        }
+    }
+
+    public TrigramIndex(String filePath) throws IOException {
+        this.file = new RandomAccessFile(filePath, "rw");
+        if (file.length() == 0) {
+            loadedStamp = DIRTY;
+        } else {
+            load();
+        }
+        // Marca o índice como aberto: só volta a ser válido após close()
+        file.seek(0);
+        file.writeLong(DIRTY);
+    }
+
+    /**
+     * Verifica se o conteúdo carregado corresponde ao estado do ficheiro de dados.
+     * @param stamp O carimbo esperado (o tamanho do ficheiro de dados).
+     * @return true se o índice pode ser usado sem reconstrução.
+     */
+    public boolean isConsistentWith(long stamp) {
+        return loadedStamp != DIRTY && loadedStamp == stamp;
+    }
+
+    public void clear() {
+        postings.clear();
+    }
+
+    public void close(long stamp) throws IOException {
+        save(stamp);
+        file.close();
+    }
+
+    // --- MÉTODOS PÚBLICOS ---
+
+    public void insert(String key, int id) {
+        for (long gram : extractGrams(key)) {
+            postings.computeIfAbsent(gram, g -> new PostingList()).add(id);
+        }
+    }
+
+    public void delete(String key, int id) {
+        for (long gram : extractGrams(key)) {
+            PostingList list = postings.get(gram);
+            if (list != null && list.remove(id) && list.size == 0) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    /**
+     * Devolve os IDs cujas chaves contêm todos os trigramas do termo.
+     * O resultado é um superconjunto das ocorrências reais e deve ser confirmado
+     * por um algoritmo de casamento de padrões.
+     * @param termo O termo pesquisado.
+     * @return A lista ordenada de candidatos, ou null se o termo tiver menos de
+     *         3 caracteres (nesse caso o índice não ajuda e é preciso varrer tudo).
+     */
+    public List<Integer> candidates(String termo) {
+        if (termo == null || termo.length() < GRAM_SIZE) return null;
+
+        Set<Long> grams = extractGrams(termo);
+        List<PostingList> lists = new ArrayList<>(grams.size());
+        for (long gram : grams) {
+            PostingList list = postings.get(gram);
+            if (list == null) return new ArrayList<>(); // Um trigrama ausente elimina tudo
+            lists.add(list);
+        }
+
+        // Interseção a partir da lista mais curta
+        lists.sort(Comparator.comparingInt(l -> l.size));
+        PostingList smallest = lists.get(0);
+        List<Integer> result = new ArrayList<>();
+        for (int i = 0; i < smallest.size; i++) {
+            int id = smallest.ids[i];
+            boolean inAll = true;
+            for (int j = 1; j < lists.size() && inAll; j++) {
+                inAll = lists.get(j).contains(id);
+            }
+            if (inAll) result.add(id);
+        }
+        return result;
+    }
+
+    /**
+     * Devolve os IDs cujas chaves partilham trigramas suficientes com o termo.
+     * Pelo lema dos q-gramas, uma ocorrência do termo com até k erros preserva pelo
+     * menos (nº de trigramas do termo) - 3k trigramas, o que faz deste conjunto um
+     * filtro seguro para a pesquisa aproximada.
+     * @param termo O termo pesquisado.
+     * @param maxErros O número máximo de edições aceites.
+     * @return A lista ordenada de candidatos, ou null se o filtro não elimina nada
+     *         (termo curto demais para o número de erros).
+     */
+    public List<Integer> candidatesWithin(String termo, int maxErros) {
+        if (termo == null || termo.length() < GRAM_SIZE) return null;
+
+        Set<Long> grams = extractGrams(termo);
+        int minShared = grams.size() - GRAM_SIZE * maxErros;
+        if (minShared <= 0) return null;
+
+        List<PostingList> lists = new ArrayList<>(grams.size());
+        int maxId = 0;
+        for (long gram : grams) {
+            PostingList list = postings.get(gram);
+            if (list == null || list.size == 0) continue;
+            lists.add(list);
+            maxId = Math.max(maxId, list.ids[list.size - 1]);
+        }
+
+        // Contagem num array indexado pelo ID (as listas estão ordenadas, o último é o maior)
+        int[] shared = new int[maxId + 1];
+        for (PostingList list : lists) {
+            for (int i = 0; i < list.size; i++) {
+                shared[list.ids[i]]++;
+            }
+        }
+
+        List<Integer> result = new ArrayList<>();
+        for (int id = 0; id <= maxId; id++) {
+            if (shared[id] >= minShared) result.add(id);
+        }
+        return result;
+    }
+
+    // --- MÉTODOS AUXILIARES ---
+
+    /**
+     * Extrai os trigramas distintos de uma chave, já em minúsculas.
+     * Cada trigrama é empacotado num long (3 chars de 16 bits).
+     */
+    private static Set<Long> extractGrams(String key) {
+        Set<Long> grams = new HashSet<>();
+        if (key == null) return grams;
+        String s = key.toLowerCase();
+        for (int i = 0; i + GRAM_SIZE <= s.length(); i++) {
+            long gram = ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+            grams.add(gram);
+        }
+        return grams;
+    }
+
+    private void load() throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        file.seek(0);
+        file.readFully(content);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(content));
+
+        loadedStamp = dis.readLong();
+        if (loadedStamp == DIRTY) return;
+
+        int gramCount = dis.readInt();
+        for (int i = 0; i < gramCount; i++) {
+            long gram = dis.readLong();
+            PostingList list = new PostingList();
+            list.size = dis.readInt();
+            list.ids = new int[Math.max(4, list.size)];
+            for (int j = 0; j < list.size; j++) {
+                list.ids[j] = dis.readInt();
+            }
+            postings.put(gram, list);
+        }
+    }
+
+    /**
+     * Formato: [carimbo][nº de trigramas] e, para cada trigrama, [trigrama][nº de IDs][IDs...]
+     */
+    private void save(long stamp) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeLong(stamp);
+        dos.writeInt(postings.size());
+        for (Map.Entry<Long, PostingList> entry : postings.entrySet()) {
+            PostingList list = entry.getValue();
+            dos.writeLong(entry.getKey());
+            dos.writeInt(list.size);
+            for (int j = 0; j < list.size; j++) {
+                dos.writeInt(list.ids[j]);
+            }
+        }
+        file.setLength(0);
+        file.seek(0);
+        file.write(baos.toByteArray());
+    }
+}
@@ -37,6 +37,9 @@ public class Cardapio implements Register {
     @Override
     public String getSecondaryKey() { return this.nome; }
 
+    @Override
+    public String getFullText() { return this.nome + " " + this.descricao; }
+
     @Override
     public byte[] toByteArray() throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
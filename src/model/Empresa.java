@@ -1,20 +1,37 @@
 package model;
 
-import seguranca.RSA; // IMPORTANTE
+import seguranca.Envelope;
+import seguranca.KeyRing; // IMPORTANTE
 import java.io.*;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class Empresa implements Register {
 
     private int idEmpresa;
     private String nome;
-    private String cnpj; // Será armazenado criptografado no ficheiro
+    private String cnpj; // Será armazenado criptografado no ficheiro; null até ser decifrado
+    private String cnpjCifrado; // Texto cifrado lido do ficheiro; null se o CNPJ foi alterado
     private Date dataCadastro;
     private String[] telefones;
 
-    // Instância estática do RSA para não recarregar chaves a cada objeto
-    private static RSA rsa = new RSA();
+    // As chaves vêm do KeyRing, carregadas em segundo plano no arranque: carregar esta
+    // classe não espera por elas. O RSA só cifra a chave de dados; o CNPJ é cifrado em
+    // AES-GCM com ela (os CNPJs antigos, cifrados só com RSA, continuam a decifrar-se)
+    private static final String ERRO_DECRIPTOGRAFIA = "ERRO_DECRIPTOGRAFIA";
+
+    // CNPJs já decifrados, por ID. O texto cifrado guardado com cada um identifica a versão:
+    // se o registo for alterado, o cifrado muda e a entrada antiga deixa de servir.
+    // Limitada a CACHE_SIZE entradas, descartando a usada há mais tempo.
+    private static final int CACHE_SIZE = 1024;
+    private static final Map<Integer, String[]> cnpjCache = new LinkedHashMap<>(CACHE_SIZE * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
 
     public Empresa() {
         this.idEmpresa = -1;
@@ -51,10 +68,15 @@ public class Empresa implements Register {
         dos.writeInt(this.idEmpresa);
         dos.writeUTF(this.nome);
 
-        // --- CRIPTOGRAFIA RSA ---
-        // Criptografa o CNPJ antes de escrever
-        String cnpjCifrado = rsa.encrypt(this.cnpj);
-        dos.writeUTF(cnpjCifrado);
+        // --- CRIPTOGRAFIA ---
+        // Criptografa o CNPJ antes de escrever; se não foi alterado, reaproveita o cifrado lido.
+        // Um CNPJ ainda cifrado só com RSA (formato antigo) passa para o envelope
+        if (this.cnpjCifrado == null) {
+            this.cnpjCifrado = KeyRing.envelope().encrypt(this.cnpj);
+        } else if (!Envelope.isEnvelope(this.cnpjCifrado) && !ERRO_DECRIPTOGRAFIA.equals(getCnpj())) {
+            this.cnpjCifrado = KeyRing.envelope().encrypt(getCnpj());
+        }
+        dos.writeUTF(this.cnpjCifrado);
         // ------------------------
 
         dos.writeLong(this.dataCadastro.getTime());
@@ -73,14 +95,10 @@ public class Empresa implements Register {
         this.idEmpresa = dis.readInt();
         this.nome = dis.readUTF();
 
-        // --- DESCRIPTOGRAFIA RSA ---
-        // Lê o texto cifrado e descriptografa para a memória
-        String cnpjCifrado = dis.readUTF();
-        try {
-            this.cnpj = rsa.decrypt(cnpjCifrado);
-        } catch (Exception e) {
-            this.cnpj = "ERRO_DECRIPTOGRAFIA";
-        }
+        // --- DESCRIPTOGRAFIA ---
+        // Guarda só o texto cifrado: é decifrado em getCnpj(), se for pedido
+        this.cnpjCifrado = dis.readUTF();
+        this.cnpj = null;
         // ---------------------------
 
         this.dataCadastro = new Date(dis.readLong());
@@ -96,15 +114,73 @@ public class Empresa implements Register {
     // --- GETTERS E SETTERS ---
     public String getNome() { return nome; }
     public void setNome(String nome) { this.nome = nome; }
-    public String getCnpj() { return cnpj; }
-    public void setCnpj(String cnpj) { this.cnpj = cnpj; }
+    public void setCnpj(String cnpj) {
+        this.cnpj = cnpj;
+        this.cnpjCifrado = null;
+    }
+
+    /**
+     * Devolve o CNPJ, decifrando-o no primeiro acesso (ou obtendo-o da cache).
+     */
+    public String getCnpj() {
+        if (cnpj == null) {
+            cnpj = decryptCnpj(idEmpresa, cnpjCifrado);
+        }
+        return cnpj;
+    }
+
+    private static String decryptCnpj(int id, String cifrado) {
+        synchronized (cnpjCache) {
+            String[] entrada = cnpjCache.get(id);
+            if (entrada != null && entrada[0].equals(cifrado)) return entrada[1];
+        }
+        // Fora do try: chaves que não carregam (ex: private.key de outro par) são um erro,
+        // não um CNPJ ilegível
+        Envelope envelope = KeyRing.envelope();
+        String valor;
+        try {
+            valor = Envelope.isEnvelope(cifrado) ? envelope.decrypt(cifrado) : envelope.getRsa().decrypt(cifrado);
+        } catch (Exception e) {
+            return ERRO_DECRIPTOGRAFIA;
+        }
+        synchronized (cnpjCache) {
+            cnpjCache.put(id, new String[]{cifrado, valor});
+        }
+        return valor;
+    }
+
+    /**
+     * Token do índice cego do CNPJ: só os dígitos contam, por isso "12.345.678/0001-90"
+     * e "12345678000190" dão o mesmo token.
+     */
+    @Override
+    public byte[] getBlindIndexToken() {
+        String valor = getCnpj();
+        return ERRO_DECRIPTOGRAFIA.equals(valor) ? null : cnpjToken(valor);
+    }
+
+    /**
+     * @return O token a procurar no índice cego para um CNPJ digitado.
+     */
+    public static byte[] cnpjToken(String cnpj) {
+        return KeyRing.envelope().blindIndex(cnpj.replaceAll("[^0-9]", ""));
+    }
+
     public Date getDataCadastro() { return dataCadastro; }
     public String[] getTelefones() { return telefones; }
     public void setTelefones(String[] telefones) { this.telefones = telefones; }
 
     @Override
     public String toString() {
-        return "Empresa [ID=" + idEmpresa + ", Nome='" + nome + "', CNPJ='" + cnpj +
+        return "Empresa [ID=" + idEmpresa + ", Nome='" + nome + "', CNPJ='" + getCnpj() +
+                "', Data=" + dataCadastro + ", Tels=" + Arrays.toString(telefones) + "]";
+    }
+
+    /**
+     * Versão para listagens, sem o CNPJ: não precisa de o decifrar.
+     */
+    public String toSummaryString() {
+        return "Empresa [ID=" + idEmpresa + ", Nome='" + nome +
                 "', Data=" + dataCadastro + ", Tels=" + Arrays.toString(telefones) + "]";
     }
 }
\ No newline at end of file
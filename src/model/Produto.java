@@ -4,6 +4,13 @@ import java.io.*;
 
 public class Produto implements Register {
 
+    /**
+     * Posição do campo nome dentro do registo serializado (logo após o ID).
+     * Nessa posição estão 2 bytes com o tamanho e depois o nome em UTF-8 modificado,
+     * o que permite ler o nome sem deserializar o registo inteiro.
+     */
+    public static final int NOME_FIELD_OFFSET = 4;
+
     private int idProduto;
     private String nome;
     private String descricao;
@@ -40,6 +47,9 @@ public class Produto implements Register {
     @Override
     public String getSecondaryKey() { return this.nome; }
 
+    @Override
+    public String getFullText() { return this.nome + " " + this.descricao; }
+
     @Override
     public byte[] toByteArray() throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -8,6 +8,8 @@ import java.io.*;
  */
 public class ProdutoCardapio implements Register {
 
+    private static final int COMPACT_VERSION = 0x81;
+
     private int idProdutoCardapio;
     private int idProduto;
     private int idCardapio;
@@ -47,14 +49,31 @@ public class ProdutoCardapio implements Register {
         return String.format("%010d-%010d", this.idCardapio, this.idProduto);
     }
 
+    /**
+     * Formato compacto: [versão 0x81][id][idProduto][idCardapio] em inteiros de tamanho
+     * variável (ver VarInt) e o preço. Um preço com no máximo duas casas decimais é
+     * guardado em cêntimos, (cêntimos em zig-zag) << 1, quase sempre em 2 ou 3 bytes; os
+     * restantes são guardados como 1 seguido do float. O registo fica com cerca de metade
+     * dos 16 bytes do formato antigo ([id][idProduto][idCardapio][preço], de tamanho fixo),
+     * que continua a ser lido: o seu primeiro byte é o byte alto de um ID positivo,
+     * nunca 0x81.
+     */
     @Override
     public byte[] toByteArray() throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(16);
         DataOutputStream dos = new DataOutputStream(baos);
-        dos.writeInt(this.idProdutoCardapio);
-        dos.writeInt(this.idProduto);
-        dos.writeInt(this.idCardapio);
-        dos.writeFloat(this.preco);
+        dos.writeByte(COMPACT_VERSION);
+        VarInt.writeSigned(dos, this.idProdutoCardapio);
+        VarInt.writeSigned(dos, this.idProduto);
+        VarInt.writeSigned(dos, this.idCardapio);
+
+        int centimos = Math.round(this.preco * 100);
+        if (Math.abs(centimos) < (1 << 29) && centimos / 100f == this.preco) {
+            VarInt.writeUnsigned(dos, VarInt.zigZag(centimos) << 1);
+        } else {
+            VarInt.writeUnsigned(dos, 1);
+            dos.writeFloat(this.preco);
+        }
         return baos.toByteArray();
     }
 
@@ -62,6 +81,15 @@ public class ProdutoCardapio implements Register {
     public void fromByteArray(byte[] byteArray) throws IOException {
         ByteArrayInputStream bais = new ByteArrayInputStream(byteArray);
         DataInputStream dis = new DataInputStream(bais);
+        if (byteArray.length > 0 && (byteArray[0] & 0xFF) == COMPACT_VERSION) {
+            dis.readByte();
+            this.idProdutoCardapio = VarInt.readSigned(dis);
+            this.idProduto = VarInt.readSigned(dis);
+            this.idCardapio = VarInt.readSigned(dis);
+            long preco = VarInt.readUnsigned(dis);
+            this.preco = ((preco & 1) == 0) ? VarInt.unZigZag(preco >>> 1) / 100f : dis.readFloat();
+            return;
+        }
         this.idProdutoCardapio = dis.readInt();
         this.idProduto = dis.readInt();
         this.idCardapio = dis.readInt();
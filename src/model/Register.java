@@ -31,5 +31,22 @@ public interface Register {
      * @return A String que representa a chave secundária.
      */
     String getSecondaryKey();
-}
 
+    /**
+     * Retorna o texto usado na pesquisa textual (índice invertido).
+     * Por omissão é a própria chave secundária.
+     * @return O texto a indexar.
+     */
+    default String getFullText() {
+        return getSecondaryKey();
+    }
+
+    /**
+     * Retorna o token do índice cego (procura por igualdade num campo cifrado).
+     * Por omissão a entidade não tem índice cego.
+     * @return O token, ou null se não houver.
+     */
+    default byte[] getBlindIndexToken() {
+        return null;
+    }
+}
@@ -0,0 +1,96 @@
+package model;
+
+import java.io.*;
+
+/**
+ * Inteiros de tamanho variável (LEB128): 7 bits por byte, do menos significativo para o
+ * mais significativo, com o bit mais alto a indicar que há mais bytes. Os números com
+ * sinal passam antes por zig-zag (0, -1, 1, -2, ... viram 0, 1, 2, 3, ...), para que os
+ * pequenos negativos também ocupem pouco.
+ *
+ * Um int pequeno (até 127) ocupa 1 byte em vez de 4; um ID até 16383 ocupa 2.
+ */
+public final class VarInt {
+
+    private VarInt() {
+    }
+
+    public static long zigZag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    public static long unZigZag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    public static void writeUnsigned(DataOutput out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    public static long readUnsigned(DataInput in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Inteiro de tamanho variável demasiado longo.");
+    }
+
+    public static void writeSigned(DataOutput out, int v) throws IOException {
+        writeUnsigned(out, zigZag(v));
+    }
+
+    public static int readSigned(DataInput in) throws IOException {
+        return (int) unZigZag(readUnsigned(in));
+    }
+
+    // --- EM ARRAYS (usado no cabeçalho dos registos do DAO) ---
+
+    /**
+     * Escreve v (sem sinal, até 32 bits) a partir de pos.
+     * @return A posição a seguir ao último byte escrito.
+     */
+    public static int write(byte[] buf, int pos, int v) {
+        while ((v & ~0x7F) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+        return pos;
+    }
+
+    /**
+     * Lê um valor sem sinal de até 32 bits escrito por write.
+     * @return O valor, ou -1 se os bytes acabarem antes de limit.
+     */
+    public static long read(byte[] buf, int pos, int limit) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (pos >= limit) return -1;
+            int b = buf[pos++] & 0xFF;
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (v > 0xFFFFFFFFL) break;
+                return v;
+            }
+        }
+        throw new IOException("Inteiro de tamanho variável inválido.");
+    }
+
+    /**
+     * @return Quantos bytes write usa para v.
+     */
+    public static int size(int v) {
+        int n = 1;
+        while ((v & ~0x7F) != 0) {
+            v >>>= 7;
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,205 @@
+package padroes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Implementação do autómato de Aho-Corasick para procurar vários padrões
+ * numa única passagem pelo texto.
+ *
+ * A função de transição é uma tabela plana int[estado * sigma + classe]. O alfabeto
+ * é reduzido aos caracteres que aparecem nos padrões (a classe 0 representa
+ * "qualquer outro caractere"), o que mantém a tabela pequena mesmo com Unicode.
+ * Depois de construído, o autómato é imutável e pode ser partilhado entre threads.
+ */
+public class AhoCorasick {
+
+    /**
+     * Uma ocorrência: qual padrão casou e em que posição do texto começa.
+     */
+    public static class Match {
+        public final int pattern;
+        public final int position;
+
+        Match(int pattern, int position) {
+            this.pattern = pattern;
+            this.position = position;
+        }
+
+        @Override
+        public String toString() {
+            return "Match [padrão=" + pattern + ", posição=" + position + "]";
+        }
+    }
+
+    private final String[] patterns;
+    private final char[] alphabet;      // Caracteres dos padrões, ordenados (classe = índice + 1)
+    private final byte[] latinClass;    // Atalho para caracteres < 256
+    private final int sigma;
+    private final int[] delta;          // Transições completas (já incluem as falhas)
+    private final int[] output;         // Padrão que termina no estado, ou -1
+    private final int[] outLink;        // Próximo estado na cadeia de sufixos com saída, ou -1
+
+    /**
+     * Constrói o autómato. A pesquisa é case-insensitive, como em KMP e Boyer-Moore.
+     * Padrões vazios ou nulos são ignorados.
+     * @param padroes Os termos a procurar.
+     */
+    public AhoCorasick(String... padroes) {
+        this.patterns = new String[padroes.length];
+        TreeSet<Character> chars = new TreeSet<>();
+        int totalLength = 0;
+        for (int i = 0; i < padroes.length; i++) {
+            patterns[i] = (padroes[i] == null) ? "" : padroes[i].toLowerCase();
+            for (int j = 0; j < patterns[i].length(); j++) {
+                chars.add(patterns[i].charAt(j));
+            }
+            totalLength += patterns[i].length();
+        }
+
+        this.alphabet = new char[chars.size()];
+        int k = 0;
+        for (char c : chars) alphabet[k++] = c;
+        this.sigma = alphabet.length + 1;
+
+        // Só há 255 classes no atalho Latin-1; o resto cai na pesquisa binária
+        this.latinClass = new byte[256];
+        for (int i = 0; i < alphabet.length && i < 255; i++) {
+            if (alphabet[i] < 256) latinClass[alphabet[i]] = (byte) (i + 1);
+        }
+
+        // 1. Constrói a trie (goto), com -1 para transições inexistentes
+        int maxStates = totalLength + 1;
+        int[] go = new int[maxStates * sigma];
+        Arrays.fill(go, -1);
+        int[] out = new int[maxStates];
+        Arrays.fill(out, -1);
+        int states = 1;
+
+        for (int p = 0; p < patterns.length; p++) {
+            String pat = patterns[p];
+            if (pat.isEmpty()) continue;
+            int s = 0;
+            for (int j = 0; j < pat.length(); j++) {
+                int c = classOf(pat.charAt(j));
+                if (go[s * sigma + c] == -1) {
+                    go[s * sigma + c] = states++;
+                }
+                s = go[s * sigma + c];
+            }
+            if (out[s] == -1) out[s] = p; // Padrões repetidos ficam associados ao primeiro
+        }
+
+        // 2. Percurso em largura: calcula as falhas e completa a tabela de transições
+        this.delta = Arrays.copyOf(go, states * sigma);
+        this.output = Arrays.copyOf(out, states);
+        this.outLink = new int[states];
+        Arrays.fill(outLink, -1);
+        int[] fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0, tail = 0;
+
+        for (int c = 0; c < sigma; c++) {
+            int t = delta[c];
+            if (t == -1) {
+                delta[c] = 0;
+            } else {
+                fail[t] = 0;
+                queue[tail++] = t;
+            }
+        }
+        while (head < tail) {
+            int s = queue[head++];
+            int f = fail[s];
+            outLink[s] = (output[f] != -1) ? f : outLink[f];
+            for (int c = 0; c < sigma; c++) {
+                int t = delta[s * sigma + c];
+                if (t == -1) {
+                    delta[s * sigma + c] = delta[f * sigma + c];
+                } else {
+                    fail[t] = delta[f * sigma + c];
+                    queue[tail++] = t;
+                }
+            }
+        }
+    }
+
+    public int patternCount() {
+        return patterns.length;
+    }
+
+    public String getPattern(int index) {
+        return patterns[index];
+    }
+
+    /**
+     * Procura todos os padrões numa única passagem.
+     * @param texto O texto onde pesquisar.
+     * @return As ocorrências, pela ordem em que terminam no texto.
+     */
+    public List<Match> search(String texto) {
+        List<Match> matches = new ArrayList<>();
+        if (texto == null) return matches;
+        int s = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            s = delta[s * sigma + classOf(Character.toLowerCase(texto.charAt(i)))];
+            for (int o = (output[s] != -1) ? s : outLink[s]; o != -1; o = outLink[o]) {
+                int p = output[o];
+                matches.add(new Match(p, i - patterns[p].length() + 1));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Indica quais padrões aparecem no texto, sem guardar as posições.
+     * @param texto O texto onde pesquisar.
+     * @return Um array onde a posição i é true se o padrão i foi encontrado.
+     */
+    public boolean[] matchedPatterns(String texto) {
+        boolean[] found = new boolean[patterns.length];
+        if (texto == null) return found;
+        int s = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            s = delta[s * sigma + classOf(Character.toLowerCase(texto.charAt(i)))];
+            for (int o = (output[s] != -1) ? s : outLink[s]; o != -1; o = outLink[o]) {
+                found[output[o]] = true;
+            }
+        }
+        // Padrões repetidos partilham o estado final do primeiro
+        for (int p = 0; p < patterns.length; p++) {
+            if (!found[p] && !patterns[p].isEmpty()) {
+                for (int q = 0; q < p; q++) {
+                    if (found[q] && patterns[q].equals(patterns[p])) { found[p] = true; break; }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return true se pelo menos um dos padrões aparece no texto.
+     */
+    public boolean containsAny(String texto) {
+        if (texto == null) return false;
+        int s = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            s = delta[s * sigma + classOf(Character.toLowerCase(texto.charAt(i)))];
+            if (output[s] != -1 || outLink[s] != -1) return true;
+        }
+        return false;
+    }
+
+    // --- MÉTODOS AUXILIARES ---
+
+    private int classOf(char c) {
+        if (c < 256) {
+            int cls = latinClass[c] & 0xFF;
+            if (cls != 0 || alphabet.length <= 255) return cls;
+        }
+        int pos = Arrays.binarySearch(alphabet, c);
+        return (pos >= 0) ? pos + 1 : 0;
+    }
+}
@@ -1,72 +1,136 @@
 package padroes;
 
-import java.util.Arrays;
-
 /**
- * Implementação do algoritmo Boyer-Moore (heurística Bad Character).
+ * Implementação do algoritmo Boyer-Moore completo: heurísticas Bad Character e Good Suffix.
+ * A tabela Bad Character cobre todo o Unicode (ver ShiftTable).
  */
 public class BoyerMoore {
 
-    private static final int ALPHABET_SIZE = 256; // Suporte a ASCII estendido
-
     /**
-     * Procura a primeira ocorrência do padrão no texto.
-     * @param texto O texto onde pesquisar.
-     * @param padrao O termo a ser pesquisado.
-     * @return true se encontrar.
+     * Padrão Boyer-Moore compilado: guarda as tabelas Bad Character e Good Suffix,
+     * em caracteres e em bytes.
      */
-    public static boolean search(String texto, String padrao) {
-        if (padrao == null || padrao.length() == 0) return false;
-        if (texto == null || padrao.length() > texto.length()) return false;
+    private static final class Compiled implements CompiledPattern {
+        private final String original;
+        private final char[] chars;
+        private final ShiftTable badChar;
+        private final int[] goodSuffix;
+        private final byte[] bytes;
+        private final int[] badByte;
+        private final int[] goodSuffixBytes;
 
-        // Normaliza para busca case-insensitive
-        String T = texto.toLowerCase();
-        String P = padrao.toLowerCase();
+        Compiled(String padrao) {
+            this.original = padrao;
+            this.chars = CompiledPattern.lowerChars(padrao);
+            this.badChar = new ShiftTable(chars, chars.length);
+            this.goodSuffix = goodSuffixShifts(chars.length, (a, b) -> chars[a] == chars[b]);
 
-        int m = P.length();
-        int n = T.length();
-
-        int[] badChar = new int[ALPHABET_SIZE];
-        badCharHeuristic(P, m, badChar);
+            this.bytes = CaseFolding.foldedUtf8(padrao);
+            this.badByte = ShiftTable.lastIndexOfBytes(bytes, bytes.length);
+            this.goodSuffixBytes = goodSuffixShifts(bytes.length, (a, b) -> bytes[a] == bytes[b]);
+        }
 
-        int s = 0; // s é o deslocamento do padrão em relação ao texto
-        while (s <= (n - m)) {
-            int j = m - 1;
+        @Override
+        public String pattern() {
+            return original;
+        }
 
-            // Move j da direita para a esquerda enquanto os caracteres coincidem
-            while (j >= 0 && P.charAt(j) == T.charAt(s + j)) {
-                j--;
+        @Override
+        public int indexOf(CharSequence texto, int inicio) {
+            int m = chars.length;
+            int n = texto.length();
+            int s = Math.max(inicio, 0); // s é o deslocamento do padrão em relação ao texto
+            while (s <= n - m) {
+                int j = m - 1;
+                char c = Character.toLowerCase(texto.charAt(s + j));
+                // Move j da direita para a esquerda enquanto os caracteres coincidem
+                while (chars[j] == c) {
+                    if (--j < 0) return s;
+                    c = Character.toLowerCase(texto.charAt(s + j));
+                }
+                // Usa o maior dos dois saltos (ambos são seguros)
+                s += Math.max(goodSuffix[j + 1], j - badChar.lastIndex(c));
             }
+            return -1;
+        }
 
-            if (j < 0) {
-                // Padrão encontrado na posição s
-                return true;
-
-                // Para continuar a busca:
-                // s += (s + m < n) ? m - badChar[T.charAt(s + m)] : 1;
-            } else {
-                // Desloca o padrão de acordo com a regra do Bad Character
-                // Math.max garante que o deslocamento seja positivo
-                s += Math.max(1, j - badChar[T.charAt(s + j)]);
+        @Override
+        public int indexOf(byte[] texto, int inicio, int fim) {
+            int m = bytes.length;
+            int s = inicio;
+            while (s <= fim - m) {
+                int j = m - 1;
+                byte c = CaseFolding.foldAt(texto, s + j, inicio);
+                while (bytes[j] == c) {
+                    if (--j < 0) return s;
+                    c = CaseFolding.foldAt(texto, s + j, inicio);
+                }
+                s += Math.max(goodSuffixBytes[j + 1], j - badByte[c & 0xFF]);
             }
+            return -1;
         }
-        return false;
     }
 
     /**
-     * Preenche a tabela de Bad Character.
-     * Guarda a última posição de cada caractere no padrão.
+     * Comparação entre duas posições do padrão (evita duplicar o cálculo para char[] e byte[]).
+     */
+    @FunctionalInterface
+    private interface PositionEquals {
+        boolean test(int a, int b);
+    }
+
+    /**
+     * Pré-processa o padrão uma única vez, para reutilizar em vários textos.
+     * @param padrao O termo a ser pesquisado (não vazio).
+     * @return O padrão compilado, imutável e seguro para uso entre threads.
      */
-    private static void badCharHeuristic(String str, int size, int[] badChar) {
-        Arrays.fill(badChar, -1); // Inicializa tudo com -1
-        for (int i = 0; i < size; i++) {
-            // Usa o código ASCII do caractere como índice
-            // (int) garante compatibilidade, mas cuidado com caracteres > 255 (Unicode)
-            // Para um trabalho académico, assumimos ASCII/ISO-8859-1
-            int index = str.charAt(i);
-            if (index < ALPHABET_SIZE) {
-                badChar[index] = i;
+    public static CompiledPattern compile(String padrao) {
+        return new Compiled(padrao);
+    }
+
+    /**
+     * Procura a primeira ocorrência do padrão no texto.
+     * Para pesquisar o mesmo padrão em vários textos, prefira compile(padrao).
+     * @param texto O texto onde pesquisar.
+     * @param padrao O termo a ser pesquisado.
+     * @return true se encontrar.
+     */
+    public static boolean search(String texto, String padrao) {
+        if (padrao == null || padrao.length() == 0) return false;
+        if (texto == null || padrao.length() > texto.length()) return false;
+        return compile(padrao).matches(texto);
+    }
+
+    /**
+     * Calcula a tabela Good Suffix (regra forte).
+     * shift[j + 1] é o salto quando há uma falha na posição j depois de
+     * P[j+1..m-1] ter coincidido; shift[0] é o salto após uma ocorrência completa.
+     * Caso 1: o sufixo coincidente reaparece no padrão, precedido de outro caractere.
+     * Caso 2: só uma parte do sufixo coincide com um prefixo do padrão.
+     */
+    private static int[] goodSuffixShifts(int m, PositionEquals eq) {
+        int[] shift = new int[m + 1];
+        int[] border = new int[m + 1]; // border[i]: início da maior borda de P[i..m-1]
+
+        // Caso 1
+        int i = m, j = m + 1;
+        border[i] = j;
+        while (i > 0) {
+            while (j <= m && !eq.test(i - 1, j - 1)) {
+                if (shift[j] == 0) shift[j] = j - i;
+                j = border[j];
             }
+            i--;
+            j--;
+            border[i] = j;
+        }
+
+        // Caso 2
+        j = border[0];
+        for (i = 0; i <= m; i++) {
+            if (shift[i] == 0) shift[i] = j;
+            if (i == j) j = border[j];
         }
+        return shift;
     }
-}
\ No newline at end of file
+}
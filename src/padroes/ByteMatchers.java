@@ -0,0 +1,167 @@
+package padroes;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Method;
+import java.nio.ByteOrder;
+
+/**
+ * Pesquisa em bytes (UTF-8 modificado, como gravado nos registos) pelo caminho mais
+ * rápido disponível.
+ *
+ * Se VectorSearch tiver sido compilado (está à parte, em src-vector, por depender do
+ * módulo incubado jdk.incubator.vector) e o módulo estiver presente, usa-o; caso contrário,
+ * recorre a um filtro SWAR (SIMD dentro de um long), que testa 8 posições de cada vez
+ * com a mesma ideia: primeiro e último byte do padrão e confirmação com CaseFolding.
+ * O resultado é sempre o mesmo de KMP/Boyer-Moore em modo bytes.
+ */
+public final class ByteMatchers {
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final Method VECTOR_COMPILE = loadVectorSearch();
+
+    private ByteMatchers() {}
+
+    /**
+     * Compila o padrão com o caminho vetorizado, se disponível.
+     * @param padrao O termo a ser pesquisado (não vazio).
+     * @return O padrão compilado; em texto (CharSequence) usa o algoritmo de Matchers.
+     */
+    public static CompiledPattern compile(String padrao) {
+        if (VECTOR_COMPILE != null) {
+            try {
+                return (CompiledPattern) VECTOR_COMPILE.invoke(null, padrao);
+            } catch (ReflectiveOperationException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw new IllegalStateException(e);
+            }
+        }
+        return new Swar(padrao);
+    }
+
+    /**
+     * @return Uma descrição do caminho usado por compile(), para mostrar ao utilizador.
+     */
+    public static String engine() {
+        if (VECTOR_COMPILE != null) {
+            try {
+                int lanes = (int) VECTOR_COMPILE.getDeclaringClass().getMethod("lanes").invoke(null);
+                return "Vector API (" + lanes + " bytes por instrução)";
+            } catch (ReflectiveOperationException e) {
+                return "Vector API";
+            }
+        }
+        return "SWAR (8 bytes por long; Vector API indisponível)";
+    }
+
+    /**
+     * Filtro SWAR: para cada bloco de 8 posições, marca as que têm o primeiro e o
+     * último byte do padrão (em qualquer caixa) e confirma só essas.
+     */
+    private static final class Swar implements CompiledPattern {
+        private final CompiledPattern chars;
+        private final byte[] bytes;
+        private final byte first, firstUpper, last, lastUpper;
+        private final long firstMask, firstUpperMask, lastMask, lastUpperMask;
+
+        Swar(String padrao) {
+            this.chars = Matchers.compile(padrao);
+            this.bytes = CaseFolding.foldedUtf8(padrao);
+            this.first = bytes[0];
+            this.firstUpper = upperVariant(first);
+            this.last = bytes[bytes.length - 1];
+            this.lastUpper = upperVariant(last);
+            this.firstMask = broadcast(first);
+            this.firstUpperMask = broadcast(firstUpper);
+            this.lastMask = broadcast(last);
+            this.lastUpperMask = broadcast(lastUpper);
+        }
+
+        @Override
+        public String pattern() {
+            return chars.pattern();
+        }
+
+        @Override
+        public int indexOf(CharSequence texto, int inicio) {
+            return chars.indexOf(texto, inicio);
+        }
+
+        @Override
+        public int indexOf(byte[] texto, int inicio, int fim) {
+            int m = bytes.length;
+            int i = inicio;
+            for (; i <= fim - m + 1 - Long.BYTES; i += Long.BYTES) {
+                long inicios = (long) LONG_VIEW.get(texto, i);
+                long finais = (long) LONG_VIEW.get(texto, i + m - 1);
+                long bits = (zeroBytes(inicios ^ firstMask) | zeroBytes(inicios ^ firstUpperMask))
+                        & (zeroBytes(finais ^ lastMask) | zeroBytes(finais ^ lastUpperMask));
+                while (bits != 0) {
+                    // Cada byte candidato tem o seu bit mais alto ligado: posição = bit / 8
+                    int s = i + (Long.numberOfTrailingZeros(bits) >>> 3);
+                    if (verify(texto, s, inicio, bytes)) return s;
+                    bits &= bits - 1;
+                }
+            }
+            for (; i <= fim - m; i++) {
+                byte b = texto[i];
+                if ((b == first || b == firstUpper) && verify(texto, i, inicio, bytes)) return i;
+            }
+            return -1;
+        }
+
+        private static long broadcast(byte b) {
+            return (b & 0xFFL) * ONES;
+        }
+
+        /**
+         * Liga o bit mais alto de cada byte nulo. Pode haver falsos positivos acima
+         * de um byte nulo (por causa do "empréstimo" da subtração), mas nunca falsos
+         * negativos; como todos os candidatos são confirmados, isso basta.
+         */
+        private static long zeroBytes(long v) {
+            return (v - ONES) & ~v & HIGHS;
+        }
+    }
+
+    /**
+     * Devolve a outra forma de um byte do padrão (já em minúsculas) que CaseFolding
+     * converte nele: a maiúscula ASCII, ou o segundo byte de À..Þ. Para os restantes
+     * bytes devolve o próprio byte.
+     */
+    static byte upperVariant(byte b) {
+        int u = b & 0xFF;
+        if (u >= 'a' && u <= 'z') return (byte) (u - 32);
+        if (u >= 0xA0 && u <= 0xBE && u != 0xB7) return (byte) (u - 0x20);
+        return b;
+    }
+
+    /**
+     * Confirma a ocorrência completa do padrão (já em minúsculas) na posição s.
+     */
+    static boolean verify(byte[] texto, int s, int inicio, byte[] padrao) {
+        for (int j = 0; j < padrao.length; j++) {
+            if (CaseFolding.foldAt(texto, s + j, inicio) != padrao[j]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Carrega VectorSearch por reflexão, para que a ausência da classe ou do módulo
+     * incubado só desative o caminho vetorizado em vez de impedir o arranque da aplicação.
+     */
+    private static Method loadVectorSearch() {
+        try {
+            Class<?> classe = Class.forName("padroes.VectorSearch");
+            Method compile = classe.getMethod("compile", String.class);
+            compile.invoke(null, "a"); // Força a inicialização das classes do módulo
+            return compile;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package padroes;
+
+/**
+ * Conversão para minúsculas diretamente sobre bytes em UTF-8 modificado
+ * (o formato gravado por DataOutputStream.writeUTF nos registos).
+ *
+ * Cobre o ASCII e as letras maiúsculas do Latin-1 (À..Þ, sequências 0xC3 0x80..0x9E),
+ * que é o que aparece nos nomes do cardápio. Como a conversão de cada byte só depende
+ * do byte anterior, pode ser feita durante a comparação, sem copiar o texto.
+ */
+public final class CaseFolding {
+
+    private CaseFolding() {}
+
+    /**
+     * Devolve o byte da posição i já em minúsculas.
+     * @param buf O buffer com o texto.
+     * @param i A posição do byte.
+     * @param start O início do texto no buffer (não se olha para trás dele).
+     */
+    public static byte foldAt(byte[] buf, int i, int start) {
+        byte b = buf[i];
+        if (b >= 'A' && b <= 'Z') {
+            return (byte) (b + 32);
+        }
+        int u = b & 0xFF;
+        // Segundo byte de À..Þ (exceto o sinal de multiplicação 0xD7 -> 0xC3 0x97)
+        if (u >= 0x80 && u <= 0x9E && u != 0x97 && i > start && buf[i - 1] == (byte) 0xC3) {
+            return (byte) (b + 0x20);
+        }
+        return b;
+    }
+
+    /**
+     * Codifica o texto em UTF-8 modificado (como writeUTF, sem o prefixo de tamanho)
+     * e converte o resultado para minúsculas com a mesma regra de foldAt.
+     * @param texto O texto a converter.
+     * @return Os bytes prontos para comparar com foldAt.
+     */
+    public static byte[] foldedUtf8(String texto) {
+        int n = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            n += (c >= 0x0001 && c <= 0x007F) ? 1 : (c <= 0x07FF) ? 2 : 3;
+        }
+        byte[] out = new byte[n];
+        int k = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                out[k++] = (byte) c;
+            } else if (c <= 0x07FF) {
+                out[k++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+                out[k++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                out[k++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+                out[k++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[k++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        // A conversão não altera o byte 0xC3, por isso pode ser feita no próprio array
+        for (int i = 0; i < out.length; i++) {
+            out[i] = foldAt(out, i, 0);
+        }
+        return out;
+    }
+}
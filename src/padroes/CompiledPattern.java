@@ -0,0 +1,104 @@
+package padroes;
+
+import java.util.Arrays;
+
+/**
+ * Padrão pré-processado (tabelas já calculadas), pronto a ser reutilizado em
+ * vários textos. As implementações são imutáveis e podem ser partilhadas entre threads.
+ *
+ * A comparação é case-insensitive. Em texto (CharSequence) cada caractere é convertido
+ * com Character.toLowerCase; em bytes (UTF-8 modificado, como gravado por writeUTF)
+ * a conversão segue as regras de CaseFolding. Nenhum dos modos copia o texto.
+ */
+public interface CompiledPattern {
+
+    /**
+     * @return O padrão original, tal como foi compilado.
+     */
+    String pattern();
+
+    /**
+     * Procura a primeira ocorrência a partir de uma posição.
+     * @param texto O texto onde pesquisar.
+     * @param inicio A posição a partir da qual pesquisar.
+     * @return A posição da ocorrência, ou -1.
+     */
+    int indexOf(CharSequence texto, int inicio);
+
+    /**
+     * Procura a primeira ocorrência nos bytes texto[inicio..fim).
+     * @return A posição (no array) da ocorrência, ou -1.
+     */
+    int indexOf(byte[] texto, int inicio, int fim);
+
+    default int indexOf(CharSequence texto) {
+        return indexOf(texto, 0);
+    }
+
+    default boolean matches(CharSequence texto) {
+        return texto != null && indexOf(texto, 0) >= 0;
+    }
+
+    default boolean matches(byte[] texto, int inicio, int fim) {
+        return indexOf(texto, inicio, fim) >= 0;
+    }
+
+    /**
+     * Conta as ocorrências (incluindo as sobrepostas).
+     */
+    default int count(CharSequence texto) {
+        if (texto == null) return 0;
+        int total = 0;
+        for (int pos = indexOf(texto, 0); pos >= 0; pos = indexOf(texto, pos + 1)) {
+            total++;
+        }
+        return total;
+    }
+
+    default int count(byte[] texto, int inicio, int fim) {
+        int total = 0;
+        for (int pos = indexOf(texto, inicio, fim); pos >= 0; pos = indexOf(texto, pos + 1, fim)) {
+            total++;
+        }
+        return total;
+    }
+
+    /**
+     * Devolve as posições de todas as ocorrências (incluindo as sobrepostas).
+     */
+    default int[] findAll(CharSequence texto) {
+        int[] posicoes = new int[4];
+        int total = 0;
+        if (texto == null) return new int[0];
+        for (int pos = indexOf(texto, 0); pos >= 0; pos = indexOf(texto, pos + 1)) {
+            if (total == posicoes.length) posicoes = Arrays.copyOf(posicoes, total * 2);
+            posicoes[total++] = pos;
+        }
+        return Arrays.copyOf(posicoes, total);
+    }
+
+    default int[] findAll(byte[] texto, int inicio, int fim) {
+        int[] posicoes = new int[4];
+        int total = 0;
+        for (int pos = indexOf(texto, inicio, fim); pos >= 0; pos = indexOf(texto, pos + 1, fim)) {
+            if (total == posicoes.length) posicoes = Arrays.copyOf(posicoes, total * 2);
+            posicoes[total++] = pos;
+        }
+        return Arrays.copyOf(posicoes, total);
+    }
+
+    /**
+     * Converte o padrão para minúsculas caractere a caractere, para que as posições
+     * coincidam com as do texto (String.toLowerCase pode mudar o comprimento).
+     */
+    static char[] lowerChars(String padrao) {
+        if (padrao == null || padrao.isEmpty()) {
+            throw new IllegalArgumentException("O padrão não pode ser vazio.");
+        }
+        char[] chars = new char[padrao.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(padrao.charAt(i));
+        }
+        return chars;
+    }
+}
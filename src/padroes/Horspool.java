@@ -0,0 +1,73 @@
+package padroes;
+
+/**
+ * Implementação do algoritmo de Boyer-Moore-Horspool.
+ * Usa só a tabela de saltos do caractere alinhado com o fim da janela, o que
+ * torna o pré-processamento e cada passo mais baratos do que no Boyer-Moore completo.
+ */
+public class Horspool {
+
+    private static final class Compiled implements CompiledPattern {
+        private final String original;
+        private final char[] chars;
+        private final ShiftTable last;  // Últimas posições em P[0..m-2]
+        private final byte[] bytes;
+        private final int[] lastByte;
+
+        Compiled(String padrao) {
+            this.original = padrao;
+            this.chars = CompiledPattern.lowerChars(padrao);
+            this.last = new ShiftTable(chars, chars.length - 1);
+            this.bytes = CaseFolding.foldedUtf8(padrao);
+            this.lastByte = ShiftTable.lastIndexOfBytes(bytes, bytes.length - 1);
+        }
+
+        @Override
+        public String pattern() {
+            return original;
+        }
+
+        @Override
+        public int indexOf(CharSequence texto, int inicio) {
+            int m = chars.length;
+            int n = texto.length();
+            int s = Math.max(inicio, 0);
+            while (s <= n - m) {
+                char c = Character.toLowerCase(texto.charAt(s + m - 1));
+                if (c == chars[m - 1]) {
+                    int j = m - 2;
+                    while (j >= 0 && chars[j] == Character.toLowerCase(texto.charAt(s + j))) j--;
+                    if (j < 0) return s;
+                }
+                // Salto: distância da última ocorrência de c (fora a última posição) ao fim do padrão
+                s += m - 1 - last.lastIndex(c);
+            }
+            return -1;
+        }
+
+        @Override
+        public int indexOf(byte[] texto, int inicio, int fim) {
+            int m = bytes.length;
+            int s = inicio;
+            while (s <= fim - m) {
+                byte c = CaseFolding.foldAt(texto, s + m - 1, inicio);
+                if (c == bytes[m - 1]) {
+                    int j = m - 2;
+                    while (j >= 0 && bytes[j] == CaseFolding.foldAt(texto, s + j, inicio)) j--;
+                    if (j < 0) return s;
+                }
+                s += m - 1 - lastByte[c & 0xFF];
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Pré-processa o padrão uma única vez, para reutilizar em vários textos.
+     * @param padrao O termo a ser pesquisado (não vazio).
+     * @return O padrão compilado, imutável e seguro para uso entre threads.
+     */
+    public static CompiledPattern compile(String padrao) {
+        return new Compiled(padrao);
+    }
+}
@@ -1,7 +1,6 @@
 package padroes;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Implementação do algoritmo Knuth-Morris-Pratt (KMP) para casamento de padrões.
@@ -9,44 +8,105 @@ import java.util.List;
 public class KMP {
 
     /**
-     * Procura todas as ocorrências do padrão no texto.
-     * @param texto O texto onde pesquisar (ex: nome do produto).
-     * @param padrao O termo a ser pesquisado.
-     * @return true se encontrar pelo menos uma ocorrência.
+     * Padrão KMP compilado: guarda a tabela LPS do padrão em caracteres e em bytes.
      */
-    public static boolean search(String texto, String padrao) {
-        if (padrao == null || padrao.length() == 0) return false;
-        if (texto == null || padrao.length() > texto.length()) return false;
+    private static final class Compiled implements CompiledPattern {
+        private final String original;
+        private final char[] chars;
+        private final int[] lps;
+        private final byte[] bytes;
+        private final int[] lpsBytes;
 
-        // Normaliza para minúsculas para busca case-insensitive (opcional, mas recomendável)
-        String T = texto.toLowerCase();
-        String P = padrao.toLowerCase();
+        Compiled(String padrao) {
+            this.original = padrao;
+            this.chars = CompiledPattern.lowerChars(padrao);
+            this.lps = computeLPSArray(chars);
+            this.bytes = CaseFolding.foldedUtf8(padrao);
+            this.lpsBytes = computeLPSArray(bytes);
+        }
 
-        int n = T.length();
-        int m = P.length();
+        @Override
+        public String pattern() {
+            return original;
+        }
 
-        int[] lps = computeLPSArray(P);
+        @Override
+        public int indexOf(CharSequence texto, int inicio) {
+            int m = chars.length;
+            int n = texto.length();
+            int j = 0;
+            for (int i = Math.max(inicio, 0); i < n; i++) {
+                char c = Character.toLowerCase(texto.charAt(i));
+                while (j > 0 && chars[j] != c) {
+                    j = lps[j - 1];
+                }
+                if (chars[j] == c) {
+                    j++;
+                    if (j == m) return i - m + 1;
+                }
+            }
+            return -1;
+        }
 
-        int i = 0; // índice para T
-        int j = 0; // índice para P
+        @Override
+        public int indexOf(byte[] texto, int inicio, int fim) {
+            return KMP.indexOf(texto, inicio, fim, bytes, lpsBytes);
+        }
 
-        while (i < n) {
-            if (P.charAt(j) == T.charAt(i)) {
-                j++;
-                i++;
-            }
-            if (j == m) {
-                return true; // Encontrou o padrão
-                // Se quiséssemos todas as ocorrências: j = lps[j - 1];
-            } else if (i < n && P.charAt(j) != T.charAt(i)) {
-                if (j != 0) {
+        /**
+         * Ao contrário da versão genérica, continua o autómato após cada ocorrência
+         * (j = lps[j - 1]), mantendo a contagem linear mesmo com sobreposições.
+         */
+        @Override
+        public int[] findAll(CharSequence texto) {
+            if (texto == null) return new int[0];
+            int[] posicoes = new int[4];
+            int total = 0;
+            int m = chars.length;
+            int j = 0;
+            for (int i = 0; i < texto.length(); i++) {
+                char c = Character.toLowerCase(texto.charAt(i));
+                while (j > 0 && chars[j] != c) {
                     j = lps[j - 1];
-                } else {
-                    i = i + 1;
+                }
+                if (chars[j] == c) {
+                    j++;
+                    if (j == m) {
+                        if (total == posicoes.length) posicoes = Arrays.copyOf(posicoes, total * 2);
+                        posicoes[total++] = i - m + 1;
+                        j = lps[j - 1];
+                    }
                 }
             }
+            return Arrays.copyOf(posicoes, total);
+        }
+
+        @Override
+        public int count(CharSequence texto) {
+            return findAll(texto).length;
         }
-        return false;
+    }
+
+    /**
+     * Pré-processa o padrão uma única vez, para reutilizar em vários textos.
+     * @param padrao O termo a ser pesquisado (não vazio).
+     * @return O padrão compilado, imutável e seguro para uso entre threads.
+     */
+    public static CompiledPattern compile(String padrao) {
+        return new Compiled(padrao);
+    }
+
+    /**
+     * Procura o padrão no texto.
+     * Para pesquisar o mesmo padrão em vários textos, prefira compile(padrao).
+     * @param texto O texto onde pesquisar (ex: nome do produto).
+     * @param padrao O termo a ser pesquisado.
+     * @return true se encontrar pelo menos uma ocorrência.
+     */
+    public static boolean search(String texto, String padrao) {
+        if (padrao == null || padrao.length() == 0) return false;
+        if (texto == null || padrao.length() > texto.length()) return false;
+        return compile(padrao).matches(texto);
     }
 
     /**
@@ -54,15 +114,15 @@ public class KMP {
      * LPS[i] guarda o comprimento do maior prefixo próprio de P[0..i]
      * que é também sufixo de P[0..i].
      */
-    private static int[] computeLPSArray(String pat) {
-        int m = pat.length();
+    private static int[] computeLPSArray(char[] pat) {
+        int m = pat.length;
         int[] lps = new int[m];
         int len = 0; // comprimento do prefixo anterior mais longo
         int i = 1;
         lps[0] = 0; // lps[0] é sempre 0
 
         while (i < m) {
-            if (pat.charAt(i) == pat.charAt(len)) {
+            if (pat[i] == pat[len]) {
                 len++;
                 lps[i] = len;
                 i++;
@@ -77,4 +137,51 @@ public class KMP {
         }
         return lps;
     }
-}
\ No newline at end of file
+
+    /**
+     * Procura o padrão (já convertido por CaseFolding.foldedUtf8) diretamente
+     * nos bytes de um texto em UTF-8 modificado, convertendo o texto durante a comparação.
+     * @param texto O buffer com o texto.
+     * @param inicio A posição do primeiro byte do texto.
+     * @param fim A posição logo após o último byte do texto.
+     * @param padrao O padrão em bytes, em minúsculas.
+     * @param lps A tabela LPS do padrão (ver computeLPSArray(byte[])).
+     * @return A posição da primeira ocorrência no buffer, ou -1.
+     */
+    public static int indexOf(byte[] texto, int inicio, int fim, byte[] padrao, int[] lps) {
+        int m = padrao.length;
+        if (m == 0 || fim - inicio < m) return -1;
+
+        int j = 0;
+        for (int i = inicio; i < fim; i++) {
+            byte c = CaseFolding.foldAt(texto, i, inicio);
+            while (j > 0 && padrao[j] != c) {
+                j = lps[j - 1];
+            }
+            if (padrao[j] == c) {
+                j++;
+                if (j == m) return i - m + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Calcula o array LPS de um padrão em bytes.
+     */
+    public static int[] computeLPSArray(byte[] pat) {
+        int m = pat.length;
+        int[] lps = new int[m];
+        int len = 0;
+        for (int i = 1; i < m; i++) {
+            while (len > 0 && pat[i] != pat[len]) {
+                len = lps[len - 1];
+            }
+            if (pat[i] == pat[len]) {
+                len++;
+            }
+            lps[i] = len;
+        }
+        return lps;
+    }
+}
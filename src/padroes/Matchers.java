@@ -0,0 +1,46 @@
+package padroes;
+
+/**
+ * Escolha automática do algoritmo de casamento de padrões pelo tamanho do padrão.
+ *
+ * Os limiares são heurísticos (não há benchmark no projeto) e seguem o
+ * comportamento conhecido de cada algoritmo em texto curto de produtos:
+ * - m = 1: nenhum salto compensa o custo por janela; KMP (varredura linear) vence.
+ * - 2 a 7: Sunday, que salta até m + 1 posições olhando o caractere após a janela.
+ * - 8 a 31: Horspool, com o ciclo interno mais barato quando os saltos já são longos.
+ * - 32 ou mais: Boyer-Moore completo. O pior caso de Horspool/Sunday é O(n·m), e
+ *   a regra Good Suffix só compensa a sua tabela O(m) quando m é grande; 32
+ *   fica acima dos termos que se digitam numa pesquisa normal, reservando
+ *   Boyer-Moore para padrões longos e repetitivos, onde esse pior caso aparece.
+ */
+public final class Matchers {
+
+    static final int SUNDAY_MIN_LENGTH = 2;
+    static final int HORSPOOL_MIN_LENGTH = 8;
+    static final int BOYER_MOORE_MIN_LENGTH = 32;
+
+    private Matchers() {}
+
+    /**
+     * Compila o padrão com o algoritmo mais adequado ao seu tamanho.
+     * @param padrao O termo a ser pesquisado (não vazio).
+     * @return O padrão compilado.
+     */
+    public static CompiledPattern compile(String padrao) {
+        int m = (padrao == null) ? 0 : padrao.length();
+        if (m >= BOYER_MOORE_MIN_LENGTH) return BoyerMoore.compile(padrao);
+        if (m >= HORSPOOL_MIN_LENGTH) return Horspool.compile(padrao);
+        if (m >= SUNDAY_MIN_LENGTH) return Sunday.compile(padrao);
+        return KMP.compile(padrao);
+    }
+
+    /**
+     * @return O nome do algoritmo que compile() escolhe para um padrão de tamanho m.
+     */
+    public static String algorithmFor(int m) {
+        if (m >= BOYER_MOORE_MIN_LENGTH) return "Boyer-Moore";
+        if (m >= HORSPOOL_MIN_LENGTH) return "Horspool";
+        if (m >= SUNDAY_MIN_LENGTH) return "Sunday";
+        return "KMP";
+    }
+}
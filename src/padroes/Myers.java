@@ -0,0 +1,148 @@
+package padroes;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Casamento aproximado (tolerante a erros de digitação) com o algoritmo
+ * bit-paralelo de Myers.
+ *
+ * Calcula a menor distância de edição (inserções, remoções e substituições)
+ * entre o padrão e qualquer substring do texto, processando uma coluna inteira
+ * da matriz de programação dinâmica por operação em long. Padrões com até 64
+ * caracteres usam o caminho bit-paralelo; acima disso recorre-se à programação
+ * dinâmica clássica (Sellers), coluna a coluna.
+ */
+public class Myers {
+
+    private static final int WORD_SIZE = 64;
+
+    /**
+     * Padrão aproximado compilado. Imutável e seguro para uso entre threads.
+     */
+    public static final class Compiled {
+        private final String original;
+        private final char[] chars;
+        private final int maxErros;
+        private final long[] peqLatin = new long[256];   // Máscara de posições de cada caractere
+        private final Map<Character, Long> peqWide = new HashMap<>();
+
+        Compiled(String padrao, int maxErros) {
+            if (maxErros < 0) {
+                throw new IllegalArgumentException("O número máximo de erros não pode ser negativo.");
+            }
+            this.original = padrao;
+            this.chars = CompiledPattern.lowerChars(padrao);
+            this.maxErros = maxErros;
+            if (chars.length <= WORD_SIZE) {
+                for (int i = 0; i < chars.length; i++) {
+                    char c = chars[i];
+                    if (c < 256) {
+                        peqLatin[c] |= 1L << i;
+                    } else {
+                        peqWide.merge(c, 1L << i, (a, b) -> a | b);
+                    }
+                }
+            }
+        }
+
+        public String pattern() {
+            return original;
+        }
+
+        public int maxErrors() {
+            return maxErros;
+        }
+
+        /**
+         * @return true se alguma substring do texto está a no máximo maxErros edições do padrão.
+         */
+        public boolean matches(CharSequence texto) {
+            return distance(texto) <= maxErros;
+        }
+
+        /**
+         * Calcula a menor distância de edição entre o padrão e uma substring do texto.
+         * A varredura termina cedo ao encontrar uma ocorrência exata.
+         * @param texto O texto onde pesquisar.
+         * @return A distância (0 = ocorrência exata); no máximo o tamanho do padrão.
+         */
+        public int distance(CharSequence texto) {
+            if (texto == null) return chars.length;
+            return (chars.length <= WORD_SIZE) ? bitParallel(texto) : dynamicProgramming(texto);
+        }
+
+        private int bitParallel(CharSequence texto) {
+            int m = chars.length;
+            long high = 1L << (m - 1);
+            long pv = -1L;  // Diferenças verticais +1
+            long mv = 0L;   // Diferenças verticais -1
+            int score = m;
+            int best = m;
+
+            for (int i = 0; i < texto.length(); i++) {
+                long eq = peq(Character.toLowerCase(texto.charAt(i)));
+                long xv = eq | mv;
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+
+                if ((ph & high) != 0) {
+                    score++;
+                } else if ((mh & high) != 0) {
+                    score--;
+                }
+                if (score < best) {
+                    best = score;
+                    if (best == 0) return 0;
+                }
+
+                // Sem o "| 1" em ph: a linha 0 é sempre zero (o padrão pode começar em qualquer posição)
+                ph <<= 1;
+                mh <<= 1;
+                pv = mh | ~(xv | ph);
+                mv = ph & xv;
+            }
+            return best;
+        }
+
+        private int dynamicProgramming(CharSequence texto) {
+            int m = chars.length;
+            int[] col = new int[m + 1];
+            for (int j = 0; j <= m; j++) col[j] = j;
+            int best = m;
+
+            for (int i = 0; i < texto.length(); i++) {
+                char c = Character.toLowerCase(texto.charAt(i));
+                int diagonal = 0; // Linha 0 é sempre zero
+                for (int j = 1; j <= m; j++) {
+                    int anterior = col[j];
+                    int custo = (chars[j - 1] == c) ? 0 : 1;
+                    col[j] = Math.min(Math.min(col[j] + 1, col[j - 1] + 1), diagonal + custo);
+                    diagonal = anterior;
+                }
+                if (col[m] < best) {
+                    best = col[m];
+                    if (best == 0) return 0;
+                }
+            }
+            return best;
+        }
+
+        private long peq(char c) {
+            if (c < 256) return peqLatin[c];
+            Long mask = peqWide.get(c);
+            return (mask == null) ? 0L : mask;
+        }
+    }
+
+    /**
+     * Pré-processa o padrão para pesquisas aproximadas.
+     * @param padrao O termo a ser pesquisado (não vazio).
+     * @param maxErros O número máximo de edições aceites.
+     * @return O padrão compilado.
+     */
+    public static Compiled compile(String padrao, int maxErros) {
+        return new Compiled(padrao, maxErros);
+    }
+}
@@ -0,0 +1,79 @@
+package padroes;
+
+import java.util.Arrays;
+
+/**
+ * Tabela "última posição de cada caractere" de um padrão, usada pelas heurísticas
+ * de salto (Bad Character, Horspool e Sunday).
+ *
+ * Caracteres até 255 ficam num array direto; os restantes (acentos fora do Latin-1,
+ * emoji em pares surrogate, etc.) ficam numa pequena tabela hash de endereçamento
+ * aberto, dimensionada pelo número de caracteres largos do padrão.
+ * Assim nenhum caractere perde a sua distância de salto. A tabela é imutável.
+ */
+final class ShiftTable {
+
+    private static final int LATIN_SIZE = 256;
+
+    private final int[] latin = new int[LATIN_SIZE];
+    private final char[] wideKeys;   // 0 marca posição livre (0 nunca é largo)
+    private final int[] wideValues;
+    private final int mask;
+
+    /**
+     * @param padrao O padrão (já em minúsculas).
+     * @param limite Só as posições [0, limite) são consideradas.
+     */
+    ShiftTable(char[] padrao, int limite) {
+        Arrays.fill(latin, -1);
+        int wide = 0;
+        for (int i = 0; i < limite; i++) {
+            if (padrao[i] >= LATIN_SIZE) wide++;
+        }
+        int capacity = Integer.highestOneBit(Math.max(1, wide) * 2) << 1;
+        this.wideKeys = new char[wide == 0 ? 0 : capacity];
+        this.wideValues = new int[wideKeys.length];
+        this.mask = wideKeys.length - 1;
+
+        for (int i = 0; i < limite; i++) {
+            char c = padrao[i];
+            if (c < LATIN_SIZE) {
+                latin[c] = i;
+            } else {
+                int slot = slotOf(c);
+                wideKeys[slot] = c;
+                wideValues[slot] = i;
+            }
+        }
+    }
+
+    /**
+     * @return A última posição do caractere no padrão, ou -1 se não aparece.
+     */
+    int lastIndex(char c) {
+        if (c < LATIN_SIZE) return latin[c];
+        if (wideKeys.length == 0) return -1;
+        int slot = slotOf(c);
+        return (wideKeys[slot] == c) ? wideValues[slot] : -1;
+    }
+
+    private int slotOf(char c) {
+        int slot = ((c * 0x9E3779B1) >>> 16) & mask;
+        while (wideKeys[slot] != 0 && wideKeys[slot] != c) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Versão para bytes: a última posição de cada valor de byte em padrao[0, limite).
+     */
+    static int[] lastIndexOfBytes(byte[] padrao, int limite) {
+        int[] table = new int[LATIN_SIZE];
+        Arrays.fill(table, -1);
+        for (int i = 0; i < limite; i++) {
+            table[padrao[i] & 0xFF] = i;
+        }
+        return table;
+    }
+}
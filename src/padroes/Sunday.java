@@ -0,0 +1,68 @@
+package padroes;
+
+/**
+ * Implementação do algoritmo de Sunday (Quick Search).
+ * O salto é decidido pelo caractere logo a seguir à janela, o que permite
+ * saltar até m + 1 posições de cada vez.
+ */
+public class Sunday {
+
+    private static final class Compiled implements CompiledPattern {
+        private final String original;
+        private final char[] chars;
+        private final ShiftTable last;  // Últimas posições em P[0..m-1]
+        private final byte[] bytes;
+        private final int[] lastByte;
+
+        Compiled(String padrao) {
+            this.original = padrao;
+            this.chars = CompiledPattern.lowerChars(padrao);
+            this.last = new ShiftTable(chars, chars.length);
+            this.bytes = CaseFolding.foldedUtf8(padrao);
+            this.lastByte = ShiftTable.lastIndexOfBytes(bytes, bytes.length);
+        }
+
+        @Override
+        public String pattern() {
+            return original;
+        }
+
+        @Override
+        public int indexOf(CharSequence texto, int inicio) {
+            int m = chars.length;
+            int n = texto.length();
+            int s = Math.max(inicio, 0);
+            while (s <= n - m) {
+                int j = 0;
+                while (j < m && chars[j] == Character.toLowerCase(texto.charAt(s + j))) j++;
+                if (j == m) return s;
+                if (s + m >= n) break;
+                s += m - last.lastIndex(Character.toLowerCase(texto.charAt(s + m)));
+            }
+            return -1;
+        }
+
+        @Override
+        public int indexOf(byte[] texto, int inicio, int fim) {
+            int m = bytes.length;
+            int s = inicio;
+            while (s <= fim - m) {
+                int j = 0;
+                while (j < m && bytes[j] == CaseFolding.foldAt(texto, s + j, inicio)) j++;
+                if (j == m) return s;
+                if (s + m >= fim) break;
+                s += m - lastByte[CaseFolding.foldAt(texto, s + m, inicio) & 0xFF];
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Pré-processa o padrão uma única vez, para reutilizar em vários textos.
+     * @param padrao O termo a ser pesquisado (não vazio).
+     * @return O padrão compilado, imutável e seguro para uso entre threads.
+     */
+    public static CompiledPattern compile(String padrao) {
+        return new Compiled(padrao);
+    }
+}
@@ -0,0 +1,266 @@
+package seguranca;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Cifra por envelope para campos sensíveis.
+ *
+ * Cifrar cada campo com RSA é lento (uma exponenciação de 1024 bits por campo) e gera um
+ * número decimal de mais de 300 caracteres. Aqui o RSA só cifra uma chave de dados AES
+ * de 256 bits por época; os campos são cifrados com essa chave em AES-GCM, que também
+ * deteta qualquer alteração ao texto cifrado.
+ *
+ * As chaves de dados ficam em data.key, uma linha por época: [época] [chave cifrada com
+ * RSA, em decimal] [verificação, em hexadecimal]. A última é a atual, usada para cifrar;
+ * as anteriores continuam a servir para decifrar os campos gravados com elas.
+ *
+ * A cifra RSA da chave não deteta erros: com uma private.key que não é a do par usado
+ * (ex: regenerada, ou reposta sozinha de um backup), a decifra dá bytes ao acaso sem
+ * falhar. Por isso cada linha guarda também 8 bytes de um HMAC de uma constante com a
+ * chave de dados; se não coincidir, as chaves não são carregadas, em vez de se continuar
+ * com uma chave errada que faria falhar todos os campos e mudaria o índice cego.
+ *
+ * Campo cifrado: "E1:" + base64([época (1 byte)][IV (12 bytes)][texto cifrado + tag (16 bytes)])
+ * Um CNPJ passa de ~310 caracteres para 64.
+ *
+ * Como a cifra é aleatória, o mesmo valor nunca dá o mesmo texto cifrado. Para procurar
+ * por igualdade há blindIndex: um HMAC-SHA256 determinístico, com uma chave derivada da
+ * chave da época 0 (não muda quando se roda a chave de dados).
+ */
+public class Envelope {
+
+    public static final String PREFIX = "E1:";
+    private static final String KEY_FILE = "data.key";
+    private static final int KEY_BYTES = 32;
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+    private static final int CHECK_BYTES = 8;
+
+    private final RSA rsa;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<Integer, SecretKeySpec> keys = new HashMap<>();
+    private int currentEpoch = -1;
+    private SecretKeySpec blindKey;
+    private final ThreadLocal<Mac> blindMac = new ThreadLocal<>(); // Mac também não é thread-safe
+
+    // Cipher não é thread-safe: uma instância por thread
+    private static final ThreadLocal<Cipher> CIPHER = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM não disponível.", e);
+        }
+    });
+
+    /**
+     * Carrega as chaves de dados de data.key, decifrando-as com a chave privada do RSA.
+     * Se o ficheiro não existir, gera a primeira época.
+     */
+    public Envelope(RSA rsa) {
+        this.rsa = rsa;
+        File f = new File(KEY_FILE);
+        try {
+            if (f.exists()) {
+                loadKeys(f);
+            }
+            if (currentEpoch < 0) {
+                rotate();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erro ao carregar " + KEY_FILE + ": " + e.getMessage(), e);
+        }
+    }
+
+    public RSA getRsa() {
+        return rsa;
+    }
+
+    /**
+     * @return true se o valor foi cifrado por esta classe (e não diretamente com RSA).
+     */
+    public static boolean isEnvelope(String cifrado) {
+        return cifrado != null && cifrado.startsWith(PREFIX);
+    }
+
+    /**
+     * Gera uma nova chave de dados e passa a usá-la para cifrar. Os campos já gravados
+     * continuam a decifrar-se com a chave da sua época.
+     */
+    public synchronized void rotate() throws IOException {
+        if (currentEpoch >= 255) {
+            throw new IOException("Número máximo de épocas atingido.");
+        }
+        byte[] key = new byte[KEY_BYTES];
+        random.nextBytes(key);
+        int epoch = currentEpoch + 1;
+        keys.put(epoch, new SecretKeySpec(key, "AES"));
+        currentEpoch = epoch;
+        saveKeys();
+    }
+
+    public String encrypt(String texto) {
+        int epoch;
+        SecretKeySpec key;
+        synchronized (this) {
+            epoch = currentEpoch;
+            key = keys.get(epoch);
+        }
+        byte[] iv = new byte[IV_BYTES];
+        random.nextBytes(iv);
+        try {
+            Cipher c = CIPHER.get();
+            c.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            c.updateAAD(new byte[]{(byte) epoch});
+            byte[] cifrado = c.doFinal(texto.getBytes(StandardCharsets.UTF_8));
+            ByteBuffer out = ByteBuffer.allocate(1 + IV_BYTES + cifrado.length);
+            out.put((byte) epoch).put(iv).put(cifrado);
+            return PREFIX + Base64.getEncoder().encodeToString(out.array());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Erro ao cifrar.", e);
+        }
+    }
+
+    /**
+     * @throws GeneralSecurityException Se o valor estiver corrompido, tiver sido alterado
+     *                                  ou for de uma época desconhecida.
+     */
+    public String decrypt(String cifrado) throws GeneralSecurityException {
+        if (!isEnvelope(cifrado)) {
+            throw new GeneralSecurityException("Valor não cifrado por envelope.");
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getDecoder().decode(cifrado.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException("Base64 inválido.", e);
+        }
+        if (bytes.length < 1 + IV_BYTES + TAG_BITS / 8) {
+            throw new GeneralSecurityException("Valor cifrado truncado.");
+        }
+        int epoch = bytes[0] & 0xFF;
+        SecretKeySpec key;
+        synchronized (this) {
+            key = keys.get(epoch);
+        }
+        if (key == null) {
+            throw new GeneralSecurityException("Época " + epoch + " sem chave em " + KEY_FILE + ".");
+        }
+        Cipher c = CIPHER.get();
+        c.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, bytes, 1, IV_BYTES));
+        c.updateAAD(bytes, 0, 1);
+        byte[] texto = c.doFinal(bytes, 1 + IV_BYTES, bytes.length - 1 - IV_BYTES);
+        return new String(texto, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return O token do índice cego para o valor: HMAC-SHA256 (32 bytes), igual sempre
+     * que o valor for igual.
+     */
+    public byte[] blindIndex(String valor) {
+        try {
+            Mac mac = blindMac.get();
+            if (mac == null) {
+                mac = Mac.getInstance("HmacSHA256");
+                mac.init(blindKey());
+                blindMac.set(mac);
+            }
+            return mac.doFinal(valor.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 não disponível.", e);
+        }
+    }
+
+    /**
+     * Deriva a chave do índice cego da chave da época 0, para não a usar diretamente
+     * em dois algoritmos.
+     */
+    private synchronized SecretKeySpec blindKey() throws GeneralSecurityException {
+        if (blindKey == null) {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(keys.get(0).getEncoded(), "HmacSHA256"));
+            blindKey = new SecretKeySpec(mac.doFinal("blind-index".getBytes(StandardCharsets.UTF_8)), "HmacSHA256");
+        }
+        return blindKey;
+    }
+
+    // --- Persistência das Chaves ---
+
+    /**
+     * @throws IOException Se o ficheiro estiver mal formado ou se alguma chave não passar a
+     *                     verificação (a private.key não é a que cifrou data.key).
+     */
+    private void loadKeys(File f) throws IOException {
+        boolean semVerificacao = false;
+        try (BufferedReader in = new BufferedReader(new FileReader(f))) {
+            String linha;
+            while ((linha = in.readLine()) != null) {
+                linha = linha.trim();
+                if (linha.isEmpty()) continue;
+                String[] partes = linha.split(" ");
+                if (partes.length != 2 && partes.length != 3) {
+                    throw new IOException("Linha inválida em " + KEY_FILE + ".");
+                }
+                int epoch = Integer.parseInt(partes[0]);
+                SecretKeySpec key = new SecretKeySpec(rsa.unwrapKey(partes[1], KEY_BYTES), "AES");
+                if (partes.length == 2) {
+                    // Gravado antes de haver verificação: é aceite e regravado com ela
+                    semVerificacao = true;
+                } else if (!MessageDigest.isEqual(keyCheck(key), HexFormat.of().parseHex(partes[2]))) {
+                    throw new IOException("A chave de dados da época " + epoch + " não corresponde à chave privada; "
+                            + "private.key e " + KEY_FILE + " não são do mesmo par.");
+                }
+                keys.put(epoch, key);
+                currentEpoch = Math.max(currentEpoch, epoch);
+            }
+        } catch (IllegalArgumentException e) { // Inclui NumberFormatException
+            throw new IOException("Época ou verificação inválida em " + KEY_FILE + ".", e);
+        }
+        if (semVerificacao) {
+            saveKeys();
+        }
+    }
+
+    /**
+     * @return Os primeiros CHECK_BYTES de HMAC-SHA256("data-key-check") com a chave de dados.
+     */
+    private static byte[] keyCheck(SecretKeySpec key) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key.getEncoded(), "HmacSHA256"));
+            return Arrays.copyOf(mac.doFinal("data-key-check".getBytes(StandardCharsets.UTF_8)), CHECK_BYTES);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 não disponível.", e);
+        }
+    }
+
+    /**
+     * Regrava data.key com todas as épocas, através de um temporário.
+     */
+    private void saveKeys() throws IOException {
+        File tmp = new File(KEY_FILE + ".tmp");
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(tmp))) {
+            for (int epoch = 0; epoch <= currentEpoch; epoch++) {
+                SecretKeySpec key = keys.get(epoch);
+                if (key == null) continue;
+                out.write(epoch + " " + rsa.wrapKey(key.getEncoded()) + " " + HexFormat.of().formatHex(keyCheck(key)) + "\n");
+            }
+        }
+        Files.move(tmp.toPath(), new File(KEY_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,75 @@
+package seguranca;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Carrega as chaves (RSA e chaves de dados do Envelope) numa thread à parte.
+ *
+ * Gerar um par RSA de 1024 bits demora centenas de milissegundos, e mesmo carregar as
+ * chaves obriga a decifrar as chaves de dados. Com start() isto começa logo no arranque,
+ * sem atrasar o menu; quem precisa das chaves chama envelope() ou rsa(), que só esperam
+ * se o carregamento ainda não acabou.
+ */
+public final class KeyRing {
+
+    private static CompletableFuture<Envelope> ready;
+
+    private KeyRing() {
+    }
+
+    /**
+     * Começa a carregar (ou a gerar) as chaves, se ainda não tiver começado.
+     * @return O futuro que fica completo quando as chaves estiverem prontas.
+     */
+    public static synchronized CompletableFuture<Envelope> start() {
+        if (ready == null) {
+            CompletableFuture<Envelope> futuro = new CompletableFuture<>();
+            // Não é daemon: se as chaves estiverem a ser geradas ao sair, os ficheiros ficam completos
+            Thread t = new Thread(() -> {
+                try {
+                    futuro.complete(new Envelope(new RSA()));
+                } catch (Throwable e) {
+                    futuro.completeExceptionally(e);
+                }
+            }, "key-bootstrap");
+            t.start();
+            ready = futuro;
+        }
+        return ready;
+    }
+
+    /**
+     * Espera que um carregamento em curso termine e esquece as chaves, para que o
+     * próximo uso as leia de novo (ex: depois de repor um backup ou apagar as chaves).
+     */
+    public static void stop() {
+        CompletableFuture<Envelope> atual;
+        synchronized (KeyRing.class) {
+            atual = ready;
+            ready = null;
+        }
+        if (atual != null) {
+            try {
+                atual.join();
+            } catch (CompletionException e) {
+                // Falhou a carregar: não há nada a esperar
+            }
+        }
+    }
+
+    /**
+     * @return O Envelope, esperando pelas chaves se for preciso.
+     */
+    public static Envelope envelope() {
+        try {
+            return start().join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Erro ao carregar as chaves.", e.getCause());
+        }
+    }
+
+    public static RSA rsa() {
+        return envelope().getRsa();
+    }
+}
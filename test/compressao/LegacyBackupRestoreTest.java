@@ -0,0 +1,244 @@
+package compressao;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Repõe backups gravados pelo BackupManager original (backup_vN.lzw e backup_vN.huff,
+ * um único fluxo com todo o arquivo) e confirma que os ficheiros voltam iguais.
+ *
+ * O compressor original já não existe no código, por isso está copiado aqui tal como
+ * era (BaselineWriter). Os dados incluem um ficheiro de ~400 KB, que obriga o LZW antigo
+ * a usar bem mais de 65536 códigos.
+ *
+ * Como o BackupManager trabalha na pasta atual, o teste deve ser executado numa pasta
+ * sem ficheiros da base de dados:
+ *   javac -d out $(find src test -name "*.java")
+ *   mkdir /tmp/teste && cd /tmp/teste && java -cp <projeto>/out compressao.LegacyBackupRestoreTest
+ */
+public class LegacyBackupRestoreTest {
+
+    private static final String[] FILES = {"empresas.db", "produtos.db", "categorias.db", "public.key"};
+
+    public static void main(String[] args) throws Exception {
+        for (String name : FILES) {
+            if (new File(name).exists()) {
+                throw new IllegalStateException("A pasta atual já tem " + name + "; execute o teste numa pasta vazia.");
+            }
+        }
+
+        Map<String, byte[]> originais = new LinkedHashMap<>();
+        Random r = new Random(42);
+        originais.put("empresas.db", texto(r, 20 * 1024));
+        originais.put("produtos.db", texto(r, 400 * 1024));
+        originais.put("categorias.db", new byte[]{0, 0, 0, 3});
+        originais.put("public.key", "65537\n123456789".getBytes("ISO-8859-1"));
+
+        try {
+            for (Map.Entry<String, byte[]> e : originais.entrySet()) {
+                Files.write(new File(e.getKey()).toPath(), e.getValue());
+            }
+            byte[] arquivo = BaselineWriter.archive(FILES);
+            Files.write(new File("backup_v1.lzw").toPath(), BaselineWriter.lzw(arquivo));
+            Files.write(new File("backup_v1.huff").toPath(), BaselineWriter.huffman(arquivo));
+
+            // Um arquivo pequeno, só com um ficheiro, também em Huffman
+            Files.write(new File("backup_v2.huff").toPath(), BaselineWriter.huffman(BaselineWriter.archive(new String[]{"empresas.db"})));
+
+            for (String backup : new String[]{"backup_v1.lzw", "backup_v1.huff"}) {
+                apagar(originais.keySet());
+                check(BackupManager.restoreBackup(backup, null), backup + ": a reposição falhou");
+                for (Map.Entry<String, byte[]> e : originais.entrySet()) {
+                    check(Arrays.equals(Files.readAllBytes(new File(e.getKey()).toPath()), e.getValue()),
+                            backup + ": " + e.getKey() + " diferente do original");
+                }
+            }
+
+            apagar(originais.keySet());
+            check(BackupManager.restoreBackup("backup_v1.lzw", "produtos.db"), "reposição só de produtos.db falhou");
+            check(Arrays.equals(Files.readAllBytes(new File("produtos.db").toPath()), originais.get("produtos.db")),
+                    "produtos.db diferente do original");
+            check(!new File("empresas.db").exists(), "empresas.db não devia ter sido reposto");
+
+            apagar(originais.keySet());
+            check(BackupManager.restoreBackup("backup_v2.huff", null), "backup_v2.huff: a reposição falhou");
+            check(Arrays.equals(Files.readAllBytes(new File("empresas.db").toPath()), originais.get("empresas.db")),
+                    "backup_v2.huff: empresas.db diferente do original");
+
+            System.out.println("\nOK: backups do formato original repostos corretamente.");
+        } finally {
+            apagar(originais.keySet());
+            apagar(Arrays.asList("backup_v1.lzw", "backup_v1.huff", "backup_v2.huff"));
+        }
+    }
+
+    /**
+     * Texto com um vocabulário grande, parecido com registos de produtos.
+     */
+    private static byte[] texto(Random r, int tamanho) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(tamanho);
+        while (out.size() < tamanho) {
+            out.write(("Produto " + r.nextInt(100000) + " - " + Long.toString(r.nextLong(), 36) + ";")
+                    .getBytes("ISO-8859-1"));
+            out.write(r.nextInt(256));
+        }
+        return Arrays.copyOf(out.toByteArray(), tamanho);
+    }
+
+    private static void apagar(Collection<String> nomes) {
+        for (String nome : nomes) {
+            new File(nome).delete();
+        }
+    }
+
+    private static void check(boolean condicao, String mensagem) {
+        if (!condicao) throw new AssertionError(mensagem);
+    }
+
+    /**
+     * O arquivo e os compressores do BackupManager original, sem alterações.
+     */
+    private static final class BaselineWriter {
+
+        static byte[] archive(String[] files) throws IOException {
+            ByteArrayOutputStream archiveStream = new ByteArrayOutputStream();
+            DataOutputStream archiveDos = new DataOutputStream(archiveStream);
+            for (String fileName : files) {
+                File f = new File(fileName);
+                if (f.exists()) {
+                    byte[] fileContent = Files.readAllBytes(f.toPath());
+                    // Escreve: [Nome do Arquivo] [Tamanho] [Conteúdo]
+                    archiveDos.writeUTF(fileName);
+                    archiveDos.writeInt(fileContent.length);
+                    archiveDos.write(fileContent);
+                }
+            }
+            return archiveStream.toByteArray();
+        }
+
+        static byte[] lzw(byte[] input) throws IOException {
+            Map<String, Integer> dictionary = new HashMap<>();
+            for (int i = 0; i < 256; i++) {
+                dictionary.put("" + (char) i, i);
+            }
+
+            String w = "";
+            List<Integer> result = new ArrayList<>();
+            int dictSize = 256;
+
+            for (byte b : input) {
+                char c = (char) (b & 0xFF);
+                String wc = w + c;
+
+                if (dictionary.containsKey(wc)) {
+                    w = wc;
+                } else {
+                    result.add(dictionary.get(w));
+                    dictionary.put(wc, dictSize++);
+                    w = "" + c;
+                }
+            }
+
+            if (!w.isEmpty()) {
+                result.add(dictionary.get(w));
+            }
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(baos);
+            for (int code : result) {
+                dos.writeInt(code);
+            }
+            return baos.toByteArray();
+        }
+
+        private static class Node implements Comparable<Node> {
+            byte data;
+            int frequency;
+            Node left, right;
+
+            Node(byte data, int frequency) {
+                this.data = data;
+                this.frequency = frequency;
+            }
+
+            Node(Node left, Node right) {
+                this.left = left;
+                this.right = right;
+                this.frequency = left.frequency + right.frequency;
+            }
+
+            public boolean isLeaf() {
+                return left == null && right == null;
+            }
+
+            @Override
+            public int compareTo(Node other) {
+                return this.frequency - other.frequency;
+            }
+        }
+
+        static byte[] huffman(byte[] input) throws IOException {
+            if (input.length == 0) return new byte[0];
+
+            Map<Byte, Integer> freqMap = new HashMap<>();
+            for (byte b : input) {
+                freqMap.put(b, freqMap.getOrDefault(b, 0) + 1);
+            }
+
+            PriorityQueue<Node> queue = new PriorityQueue<>();
+            for (Map.Entry<Byte, Integer> entry : freqMap.entrySet()) {
+                queue.add(new Node(entry.getKey(), entry.getValue()));
+            }
+
+            while (queue.size() > 1) {
+                Node left = queue.poll();
+                Node right = queue.poll();
+                queue.add(new Node(left, right));
+            }
+            Node root = queue.poll();
+
+            Map<Byte, String> huffmanCodes = new HashMap<>();
+            generateCodes(root, "", huffmanCodes);
+
+            StringBuilder sb = new StringBuilder();
+            for (byte b : input) {
+                sb.append(huffmanCodes.get(b));
+            }
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(baos);
+
+            dos.writeInt(freqMap.size());
+            for (Map.Entry<Byte, Integer> entry : freqMap.entrySet()) {
+                dos.writeByte(entry.getKey());
+                dos.writeInt(entry.getValue());
+            }
+
+            int bitLength = sb.length();
+            dos.writeInt(bitLength);
+
+            BitSet bitSet = new BitSet(bitLength);
+            for (int i = 0; i < bitLength; i++) {
+                if (sb.charAt(i) == '1') {
+                    bitSet.set(i);
+                }
+            }
+
+            byte[] compressedBytes = bitSet.toByteArray();
+            dos.writeInt(compressedBytes.length);
+            dos.write(compressedBytes);
+
+            return baos.toByteArray();
+        }
+
+        private static void generateCodes(Node node, String code, Map<Byte, String> huffmanCodes) {
+            if (node.isLeaf()) {
+                huffmanCodes.put(node.data, code);
+                return;
+            }
+            generateCodes(node.left, code + "0", huffmanCodes);
+            generateCodes(node.right, code + "1", huffmanCodes);
+        }
+    }
+}